@@ -15,13 +15,17 @@
 package com.gargoylesoftware.htmlunit;
 
 import java.io.Serializable;
-import java.util.Collections;
 import java.util.Date;
-import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import net.sourceforge.htmlunit.corejs.javascript.Script;
+
 import org.apache.http.impl.cookie.DateParseException;
 import org.apache.http.impl.cookie.DateUtils;
 import org.w3c.dom.css.CSSStyleSheet;
@@ -31,58 +35,99 @@ import org.w3c.dom.css.CSSStyleSheet;
  * compiled JavaScript files avoids unnecessary web requests and additional compilation overhead, while
  * caching parsed CSS snippets avoids very expensive CSS parsing.</p>
  *
+ * <p>The cache is bounded both by the number of entries (see {@link #setMaxSize(int)}) and by the
+ * estimated memory weight of the entries (see {@link #setMaxWeight(long)}); least recently used
+ * entries are evicted first. Entries are spread over independently locked segments, so that a cache
+ * instance can be shared by many {@link WebClient}s used from different threads.</p>
+ *
+ * <p>An optional {@link DiskCache} can be configured as persistent second tier.</p>
+ *
  * @version $Revision$
  * @author Marc Guillemot
  * @author Daniel Gredler
  */
 public class Cache implements Serializable {
 
+    /**
+     * The kind of the cached objects, used to account their weight separately.
+     */
+    public enum Kind {
+        /** Compiled JavaScript. */
+        SCRIPT,
+        /** Web response. */
+        RESPONSE,
+        /** Parsed style sheet. */
+        STYLESHEET,
+        /** Anything else. */
+        OTHER
+    }
+
+    /** The number of segments, has to be a power of two. */
+    private static final int SEGMENTS = 16;
+
     /** The maximum size of the cache. */
     private int maxSize_ = 40;
 
+    /** The maximum weight of the cache, in bytes. */
+    private long maxWeight_ = Long.MAX_VALUE;
+
+    /** The optional persistent second tier. */
+    private DiskCache diskCache_;
+
     private static final Pattern DATE_HEADER_PATTERN = Pattern.compile("-?\\d+");
 
     /**
-     * The map which holds the cached responses. Note that when keying on URLs, we key on the string version
+     * The segments which hold the cached responses. Note that when keying on URLs, we key on the string version
      * of the URLs, rather than on the URLs themselves. This is done for performance, because a) the
      * {@link java.net.URL#hashCode()} method is synchronized, and b) the {@link java.net.URL#hashCode()}
      * method triggers DNS lookups of the URL hostnames' IPs. As of this writing, the HtmlUnit unit tests
      * run ~20% faster whey keying on strings rather than on {@link java.net.URL} instances.
      */
-    private final Map<String, Entry> entries_ = Collections.synchronizedMap(new HashMap<String, Entry>(maxSize_));
+    private final Segment[] segments_ = new Segment[SEGMENTS];
+
+    /** Global access counter, used to find the least recently used entry over all segments. */
+    private final AtomicLong clock_ = new AtomicLong();
+    private final AtomicInteger size_ = new AtomicInteger();
+    private final AtomicLong[] weights_ = new AtomicLong[Kind.values().length];
+    private final AtomicLong hitCount_ = new AtomicLong();
+    private final AtomicLong missCount_ = new AtomicLong();
+    private final AtomicLong evictionCount_ = new AtomicLong();
 
     /**
      * A cache entry.
      */
-    private static class Entry implements Comparable<Entry>, Serializable {
+    private static class Entry implements Serializable {
         private final String key_;
         private final Object value_;
-        private long lastAccess_;
+        private final Kind kind_;
+        private final long weight_;
+        private volatile long lastAccess_;
 
-        Entry(final String key, final Object value) {
+        Entry(final String key, final Object value, final Kind kind, final long weight) {
             key_ = key;
             value_ = value;
-            lastAccess_ = System.currentTimeMillis();
+            kind_ = kind;
+            weight_ = weight;
         }
+    }
 
-        /**
-         * {@inheritDoc}
-         */
-        public int compareTo(final Entry other) {
-            if (lastAccess_ < other.lastAccess_) {
-                return -1;
-            }
-            if (lastAccess_ == other.lastAccess_) {
-                return -0;
-            }
-            return 1;
-        }
+    /**
+     * A part of the cache, with its own lock. The map is kept in access order, which means that
+     * the least recently used entry of the segment is always the first one.
+     */
+    private static class Segment implements Serializable {
+        private final Map<String, Entry> entries_ = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    }
 
-        /**
-         * Updates the last access date.
-         */
-        public void touch() {
-            lastAccess_ = System.currentTimeMillis();
+    /**
+     * Creates a new cache.
+     */
+    public Cache() {
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments_[i] = new Segment();
+        }
+        for (int i = 0; i < weights_.length; i++) {
+            weights_[i] = new AtomicLong();
         }
     }
 
@@ -93,14 +138,18 @@ public class Cache implements Serializable {
      * @param request the request corresponding to the specified compiled script
      * @param response the response corresponding to the specified compiled script
      * @param toCache the object that is to be cached, if possible (may be for instance a compiled script or
-     * simply a WebResponse)
+     * simply a WebResponse); cached web responses are retained by the cache and released when they are removed
+     * from it, their content being cleaned up once the pages using them have released them as well
      */
     public void cacheIfPossible(final WebRequest request, final WebResponse response, final Object toCache) {
         if (isCacheable(request, response)) {
+            if (toCache instanceof WebResponse && !((WebResponse) toCache).retain()) {
+                // already cleaned up
+                return;
+            }
             final String url = response.getWebRequest().getUrl().toString();
-            final Entry entry = new Entry(url, toCache);
-            entries_.put(entry.key_, entry);
-            deleteOverflow();
+            final Kind kind = getKind(toCache);
+            put(new Entry(url, toCache, kind, estimateWeight(kind, response.getContentLength())));
         }
     }
 
@@ -116,20 +165,127 @@ public class Cache implements Serializable {
      * @param styleSheet the parsed version of <tt>css</tt>
      */
     public void cache(final String css, final CSSStyleSheet styleSheet) {
-        final Entry entry = new Entry(css, styleSheet);
-        entries_.put(entry.key_, entry);
+        put(new Entry(css, styleSheet, Kind.STYLESHEET, estimateWeight(Kind.STYLESHEET, 2L * css.length())));
+    }
+
+    private void put(final Entry entry) {
+        entry.lastAccess_ = clock_.incrementAndGet();
+        final Segment segment = segmentFor(entry.key_);
+        final Entry previous;
+        synchronized (segment) {
+            previous = segment.entries_.put(entry.key_, entry);
+        }
+        if (previous == null) {
+            size_.incrementAndGet();
+        }
+        else {
+            weights_[previous.kind_.ordinal()].addAndGet(-previous.weight_);
+            // releases the previous entry, even if it holds the same response which has been retained again
+            cleanUp(previous);
+        }
+        weights_[entry.kind_.ordinal()].addAndGet(entry.weight_);
         deleteOverflow();
     }
 
+    private Entry get(final String key) {
+        final Segment segment = segmentFor(key);
+        final Entry entry;
+        synchronized (segment) {
+            entry = segment.entries_.get(key);
+        }
+        if (entry == null) {
+            missCount_.incrementAndGet();
+            return null;
+        }
+        entry.lastAccess_ = clock_.incrementAndGet();
+        hitCount_.incrementAndGet();
+        return entry;
+    }
+
+    private Segment segmentFor(final String key) {
+        int h = key.hashCode();
+        h ^= (h >>> 20) ^ (h >>> 12);
+        h ^= (h >>> 7) ^ (h >>> 4);
+        return segments_[h & (SEGMENTS - 1)];
+    }
+
+    /**
+     * Returns the kind of the specified object to be cached.
+     * @param value the object to be cached
+     * @return the kind
+     */
+    protected Kind getKind(final Object value) {
+        if (value instanceof Script) {
+            return Kind.SCRIPT;
+        }
+        if (value instanceof WebResponse) {
+            return Kind.RESPONSE;
+        }
+        if (value instanceof CSSStyleSheet) {
+            return Kind.STYLESHEET;
+        }
+        return Kind.OTHER;
+    }
+
+    /**
+     * Estimates the memory weight of an object to be cached. The default implementation
+     * uses the size of the source the object has been built from.
+     * @param kind the kind of the object to be cached
+     * @param sourceLength the length in bytes of the source the object has been built from
+     * @return the estimated weight in bytes
+     */
+    protected long estimateWeight(final Kind kind, final long sourceLength) {
+        return sourceLength;
+    }
+
     /**
-     * Truncates the cache to the maximal number of entries.
+     * Truncates the cache to the maximal number of entries and to the maximal weight,
+     * removing the least recently used entries first.
      */
     protected void deleteOverflow() {
-        synchronized (entries_) {
-            while (entries_.size() > maxSize_) {
-                final Entry oldestEntry = Collections.min(entries_.values());
-                entries_.remove(oldestEntry.key_);
+        // most additions don't overflow: the lock is only taken when there is something to evict
+        if (!isOverflowing()) {
+            return;
+        }
+        // only one thread evicts at a time, the segments stay available to the other ones
+        synchronized (segments_) {
+            deleteOverflowLocked();
+        }
+    }
+
+    private boolean isOverflowing() {
+        return size_.get() > maxSize_ || getWeight() > maxWeight_;
+    }
+
+    private void deleteOverflowLocked() {
+        while (isOverflowing()) {
+            Segment eldestSegment = null;
+            Entry eldest = null;
+            for (final Segment segment : segments_) {
+                synchronized (segment) {
+                    final Iterator<Entry> iterator = segment.entries_.values().iterator();
+                    if (iterator.hasNext()) {
+                        final Entry candidate = iterator.next();
+                        if (eldest == null || candidate.lastAccess_ < eldest.lastAccess_) {
+                            eldest = candidate;
+                            eldestSegment = segment;
+                        }
+                    }
+                }
+            }
+            if (eldest == null) {
+                return;
+            }
+            synchronized (eldestSegment) {
+                // the entry may have been accessed, replaced or removed in the meantime
+                final Iterator<Entry> iterator = eldestSegment.entries_.values().iterator();
+                if (!iterator.hasNext() || iterator.next() != eldest) {
+                    continue;
+                }
+                iterator.remove();
             }
+            remove(eldest);
+            evictionCount_.incrementAndGet();
         }
     }
 
@@ -218,16 +374,32 @@ public class Cache implements Serializable {
         if (HttpMethod.GET != request.getHttpMethod()) {
             return null;
         }
-        final Entry cachedEntry = entries_.get(request.getUrl().toString());
+        final Entry cachedEntry = get(request.getUrl().toString());
         if (cachedEntry == null) {
             return null;
         }
-        synchronized (entries_) {
-            cachedEntry.touch();
-        }
         return cachedEntry.value_;
     }
 
+    /**
+     * Indicates whether an object is cached for the specified request. Contrary to
+     * {@link #getCachedObject(WebRequest)}, this is neither counted as a hit or a miss
+     * nor taken into account to evict the least recently used entries.
+     *
+     * @param request the request
+     * @return whether an object is cached for the request
+     */
+    public boolean isCached(final WebRequest request) {
+        if (HttpMethod.GET != request.getHttpMethod()) {
+            return false;
+        }
+        final String key = request.getUrl().toString();
+        final Segment segment = segmentFor(key);
+        synchronized (segment) {
+            return segment.entries_.containsKey(key);
+        }
+    }
+
     /**
      * Returns the cached parsed version of the specified CSS snippet. If there is no
      * corresponding cached stylesheet, this method returns <tt>null</tt>.
@@ -236,13 +408,10 @@ public class Cache implements Serializable {
      * @return the cached stylesheet corresponding to the specified CSS snippet
      */
     public CSSStyleSheet getCachedStyleSheet(final String css) {
-        final Entry cachedEntry = entries_.get(css);
+        final Entry cachedEntry = get(css);
         if (cachedEntry == null) {
             return null;
         }
-        synchronized (entries_) {
-            cachedEntry.touch();
-        }
         return (CSSStyleSheet) cachedEntry.value_;
     }
 
@@ -276,15 +445,130 @@ public class Cache implements Serializable {
      * @return the number of entries in the cache
      */
     public int getSize() {
-        return entries_.size();
+        return size_.get();
+    }
+
+    /**
+     * Returns the persistent second tier of this cache, if any.
+     *
+     * @return the disk cache or <tt>null</tt>
+     */
+    public DiskCache getDiskCache() {
+        return diskCache_;
+    }
+
+    /**
+     * Sets the persistent second tier of this cache. When set, the responses which can't be
+     * served from the memory are looked up (and possibly revalidated) in the disk cache before
+     * being requested from the server. The default is <tt>null</tt>.
+     *
+     * @param diskCache the disk cache, or <tt>null</tt> to disable it
+     */
+    public void setDiskCache(final DiskCache diskCache) {
+        diskCache_ = diskCache;
+    }
+
+    /**
+     * Returns the cache's maximum weight, in bytes. The default is {@link Long#MAX_VALUE},
+     * i.e. the cache is only bounded by its maximum size.
+     *
+     * @return the cache's maximum weight
+     */
+    public long getMaxWeight() {
+        return maxWeight_;
+    }
+
+    /**
+     * Sets the cache's maximum weight, in bytes. This is an estimation of the memory used
+     * by the cached objects (see {@link #estimateWeight(Kind, long)}).
+     *
+     * @param maxWeight the cache's maximum weight (must be &gt;= 0)
+     */
+    public void setMaxWeight(final long maxWeight) {
+        if (maxWeight < 0) {
+            throw new IllegalArgumentException("Illegal value for maxWeight: " + maxWeight);
+        }
+        maxWeight_ = maxWeight;
+        deleteOverflow();
+    }
+
+    /**
+     * Returns the estimated weight of all entries in the cache, in bytes.
+     *
+     * @return the weight of the cache
+     */
+    public long getWeight() {
+        long weight = 0;
+        for (final AtomicLong w : weights_) {
+            weight += w.get();
+        }
+        return weight;
+    }
+
+    /**
+     * Returns the estimated weight of the entries of the specified kind, in bytes.
+     *
+     * @param kind the kind of the entries
+     * @return the weight of these entries
+     */
+    public long getWeight(final Kind kind) {
+        return weights_[kind.ordinal()].get();
+    }
+
+    /**
+     * Returns the number of lookups that have found an entry.
+     *
+     * @return the hit count
+     */
+    public long getHitCount() {
+        return hitCount_.get();
+    }
+
+    /**
+     * Returns the number of lookups that have not found an entry.
+     *
+     * @return the miss count
+     */
+    public long getMissCount() {
+        return missCount_.get();
+    }
+
+    /**
+     * Returns the number of entries that have been removed to respect the size or weight limits.
+     *
+     * @return the eviction count
+     */
+    public long getEvictionCount() {
+        return evictionCount_.get();
     }
 
     /**
      * Clears the cache.
      */
     public void clear() {
-        synchronized (entries_) {
-            entries_.clear();
+        for (final Segment segment : segments_) {
+            synchronized (segment) {
+                for (final Entry entry : segment.entries_.values()) {
+                    remove(entry);
+                }
+                segment.entries_.clear();
+            }
+        }
+    }
+
+    private void remove(final Entry entry) {
+        size_.decrementAndGet();
+        weights_[entry.kind_.ordinal()].addAndGet(-entry.weight_);
+        cleanUp(entry);
+    }
+
+    /**
+     * Releases the response held by the specified entry, if any: its content is cleaned up
+     * only if no page uses it anymore.
+     */
+    private static void cleanUp(final Entry entry) {
+        if (entry.value_ instanceof WebResponse) {
+            ((WebResponse) entry.value_).release();
         }
     }
 
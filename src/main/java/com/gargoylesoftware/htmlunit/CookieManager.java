@@ -17,12 +17,16 @@ package com.gargoylesoftware.htmlunit;
 import java.io.Serializable;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.collections.set.ListOrderedSet;
 import org.apache.commons.lang3.StringUtils;
@@ -37,10 +41,15 @@ import com.gargoylesoftware.htmlunit.util.Cookie;
 /**
  * Manages cookies for a {@link WebClient}. This class is thread-safe.
  *
+ * <p>The modifications are synchronized, whereas the readers use an immutable snapshot of the cookies,
+ * indexed by domain, which is rebuilt after each modification. The cookies applicable to an URL are cached
+ * per origin in the snapshot.</p>
+ *
  * @version $Revision$
  * @author Daniel Gredler
  * @author Ahmed Ashour
  * @author Nicolas Belisle
+ * @author <a href="mailto:agent@local">agent</a>
  */
 public class CookieManager implements Serializable {
 
@@ -51,8 +60,11 @@ public class CookieManager implements Serializable {
      */
     public static final String HTMLUNIT_COOKIE_POLICY = CookiePolicy.BROWSER_COMPATIBILITY;
 
+    /** The maximum number of origins for which the applicable cookies are cached in a snapshot. */
+    private static final int MAX_CACHED_ORIGINS = 100;
+
     /** Whether or not cookies are enabled. */
-    private boolean cookiesEnabled_;
+    private volatile boolean cookiesEnabled_;
 
     /** The cookies added to this cookie manager. */
     @SuppressWarnings("unchecked")
@@ -61,6 +73,86 @@ public class CookieManager implements Serializable {
     /** The cookies spec registry */
     private final transient CookieSpecRegistry registry_ = new DefaultHttpClient().getCookieSpecs();
 
+    /** The snapshot of the cookies used by the readers, <tt>null</tt> if it has to be rebuilt. */
+    private transient volatile Snapshot snapshot_;
+
+    /**
+     * An immutable state of the cookies, indexed by domain.
+     */
+    private static final class Snapshot {
+        private final Cookie[] cookies_;
+        private final org.apache.http.cookie.Cookie[] httpClientCookies_;
+        private final Set<Cookie> cookiesSet_;
+        /** The positions of the cookies, per domain in lower case without leading dot. */
+        private final Map<String, List<Integer>> byDomain_ = new HashMap<String, List<Integer>>();
+        /** The positions of the cookies without domain. */
+        private final List<Integer> withoutDomain_ = new ArrayList<Integer>();
+        /** The earliest expiration date of the cookies, in milliseconds. */
+        private final long nextExpiration_;
+        private final Map<String, Set<Cookie>> matches_ = new ConcurrentHashMap<String, Set<Cookie>>();
+
+        private Snapshot(final Set<Cookie> cookies) {
+            cookies_ = cookies.toArray(new Cookie[cookies.size()]);
+            httpClientCookies_ = Cookie.toHttpClient(cookies);
+            cookiesSet_ = Collections.unmodifiableSet(new LinkedHashSet<Cookie>(cookies));
+
+            long nextExpiration = Long.MAX_VALUE;
+            for (int i = 0; i < cookies_.length; i++) {
+                final Cookie cookie = cookies_[i];
+                final String domain = cookie.getDomain();
+                if (domain == null) {
+                    withoutDomain_.add(Integer.valueOf(i));
+                }
+                else {
+                    final String key = StringUtils.removeStart(domain.toLowerCase(), ".");
+                    List<Integer> positions = byDomain_.get(key);
+                    if (positions == null) {
+                        positions = new ArrayList<Integer>();
+                        byDomain_.put(key, positions);
+                    }
+                    positions.add(Integer.valueOf(i));
+                }
+                if (cookie.getExpires() != null) {
+                    nextExpiration = Math.min(nextExpiration, cookie.getExpires().getTime());
+                }
+            }
+            nextExpiration_ = nextExpiration;
+        }
+
+        /**
+         * Returns the cookies matching the specified origin, in the order of addition. Only the cookies
+         * whose domain is the host or one of its parent domains are checked against the cookie spec.
+         */
+        private Set<Cookie> match(final CookieOrigin origin, final CookieSpec spec) {
+            final List<Integer> candidates = new ArrayList<Integer>(withoutDomain_);
+            String domain = origin.getHost().toLowerCase();
+            while (true) {
+                final List<Integer> positions = byDomain_.get(domain);
+                if (positions != null) {
+                    candidates.addAll(positions);
+                }
+                final int dot = domain.indexOf('.');
+                if (dot == -1) {
+                    break;
+                }
+                domain = domain.substring(dot + 1);
+            }
+            if (candidates.isEmpty()) {
+                return Collections.emptySet();
+            }
+            Collections.sort(candidates);
+
+            final Set<Cookie> matches = new LinkedHashSet<Cookie>();
+            for (final Integer position : candidates) {
+                final int i = position.intValue();
+                if (spec.match(httpClientCookies_[i], origin)) {
+                    matches.add(cookies_[i]);
+                }
+            }
+            return Collections.unmodifiableSet(matches);
+        }
+    }
+
     /**
      * Creates a new instance.
      */
@@ -72,7 +164,7 @@ public class CookieManager implements Serializable {
      * Enables/disables cookie support. Cookies are enabled by default.
      * @param enabled <tt>true</tt> to enable cookie support, <tt>false</tt> otherwise
      */
-    public synchronized void setCookiesEnabled(final boolean enabled) {
+    public void setCookiesEnabled(final boolean enabled) {
         cookiesEnabled_ = enabled;
     }
 
@@ -80,7 +172,7 @@ public class CookieManager implements Serializable {
      * Returns <tt>true</tt> if cookies are enabled. Cookies are enabled by default.
      * @return <tt>true</tt> if cookies are enabled, <tt>false</tt> otherwise
      */
-    public synchronized boolean isCookiesEnabled() {
+    public boolean isCookiesEnabled() {
         return cookiesEnabled_;
     }
 
@@ -88,8 +180,34 @@ public class CookieManager implements Serializable {
      * Returns the currently configured cookies, in an unmodifiable set.
      * @return the currently configured cookies, in an unmodifiable set
      */
-    public synchronized Set<Cookie> getCookies() {
-        return Collections.unmodifiableSet(cookies_);
+    public Set<Cookie> getCookies() {
+        return getSnapshot().cookiesSet_;
+    }
+
+    /**
+     * Returns the currently configured cookies converted to HttpClient cookies, in an unmodifiable list.
+     * @return the currently configured cookies converted to HttpClient cookies
+     */
+    List<org.apache.http.cookie.Cookie> getHttpClientCookies() {
+        return Collections.unmodifiableList(Arrays.asList(getSnapshot().httpClientCookies_));
+    }
+
+    /**
+     * Returns the current snapshot of the cookies, building it if needed.
+     * @return the snapshot
+     */
+    private Snapshot getSnapshot() {
+        Snapshot snapshot = snapshot_;
+        if (snapshot == null) {
+            synchronized (this) {
+                snapshot = snapshot_;
+                if (snapshot == null) {
+                    snapshot = new Snapshot(cookies_);
+                    snapshot_ = snapshot;
+                }
+            }
+        }
+        return snapshot;
     }
 
     /**
@@ -97,7 +215,7 @@ public class CookieManager implements Serializable {
      * @param url the URL on which to filter the returned cookies
      * @return the currently configured cookies applicable to the specified URL, in an unmodifiable set
      */
-    public synchronized Set<Cookie> getCookies(final URL url) {
+    public Set<Cookie> getCookies(final URL url) {
         final String host = url.getHost();
         final String path = url.getPath();
         final String protocol = url.getProtocol();
@@ -112,21 +230,24 @@ public class CookieManager implements Serializable {
         final int port = getPort(url);
 
         // discard expired cookies
-        clearExpired(new Date());
-
-        final CookieSpec spec = registry_.getCookieSpec(HTMLUNIT_COOKIE_POLICY);
-        final org.apache.http.cookie.Cookie[] all = Cookie.toHttpClient(cookies_);
-        final CookieOrigin cookieOrigin = new CookieOrigin(host, port, path, secure);
-        final List<org.apache.http.cookie.Cookie> matches = new ArrayList<org.apache.http.cookie.Cookie>();
-        for (final org.apache.http.cookie.Cookie cookie : all) {
-            if (spec.match(cookie, cookieOrigin)) {
-                matches.add(cookie);
-            }
+        final long now = System.currentTimeMillis();
+        Snapshot snapshot = getSnapshot();
+        if (snapshot.nextExpiration_ < now) {
+            clearExpired(new Date(now));
+            snapshot = getSnapshot();
         }
 
-        final Set<Cookie> cookies = new LinkedHashSet<Cookie>();
-        cookies.addAll(Cookie.fromHttpClient(matches));
-        return Collections.unmodifiableSet(cookies);
+        final String key = host + ':' + port + (secure ? 's' : ' ') + path;
+        Set<Cookie> matches = snapshot.matches_.get(key);
+        if (matches == null) {
+            final CookieSpec spec = registry_.getCookieSpec(HTMLUNIT_COOKIE_POLICY);
+            matches = snapshot.match(new CookieOrigin(host, port, path, secure), spec);
+            if (snapshot.matches_.size() >= MAX_CACHED_ORIGINS) {
+                snapshot.matches_.clear();
+            }
+            snapshot.matches_.put(key, matches);
+        }
+        return matches;
     }
 
     /**
@@ -147,6 +268,9 @@ public class CookieManager implements Serializable {
                 foundExpired = true;
             }
         }
+        if (foundExpired) {
+            snapshot_ = null;
+        }
         return foundExpired;
     }
 
@@ -170,8 +294,8 @@ public class CookieManager implements Serializable {
      * @param name the name of the cookie to return
      * @return the currently configured cookie with the specified name, or <tt>null</tt> if one does not exist
      */
-    public synchronized Cookie getCookie(final String name) {
-        for (Cookie cookie : cookies_) {
+    public Cookie getCookie(final String name) {
+        for (Cookie cookie : getSnapshot().cookies_) {
             if (StringUtils.equals(cookie.getName(), name)) {
                 return cookie;
             }
@@ -190,6 +314,7 @@ public class CookieManager implements Serializable {
         if (cookie.getExpires() == null || cookie.getExpires().after(new Date())) {
             cookies_.add(cookie);
         }
+        snapshot_ = null;
     }
 
     /**
@@ -197,7 +322,9 @@ public class CookieManager implements Serializable {
      * @param cookie the cookie to remove
      */
     public synchronized void removeCookie(final Cookie cookie) {
-        cookies_.remove(cookie);
+        if (cookies_.remove(cookie)) {
+            snapshot_ = null;
+        }
     }
 
     /**
@@ -205,6 +332,7 @@ public class CookieManager implements Serializable {
      */
     public synchronized void clearCookies() {
         cookies_.clear();
+        snapshot_ = null;
     }
 
 }
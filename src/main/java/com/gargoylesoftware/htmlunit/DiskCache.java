@@ -0,0 +1,806 @@
+/*
+ * Copyright (c) 2002-2012 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.HttpStatus;
+
+import com.gargoylesoftware.htmlunit.util.NameValuePair;
+
+/**
+ * <p>Persistent second tier of the {@link Cache}, storing the bodies of cacheable responses in a local
+ * directory so that they survive the eviction from the memory cache and the restart of the JVM.</p>
+ *
+ * <p>Bodies are stored decoded, in files named after the SHA-1 digest of their content (identical
+ * resources served from different URLs are stored only once). An index file maps the URLs to the
+ * stored status, headers and content; changes are appended to a journal which is merged into the index
+ * file once it has grown as large as the index itself. The total size of the stored bodies is bounded
+ * (see {@link #setMaxSize(long)}), the least recently stored entries being removed first. A body file
+ * still read by a response returned by this cache is deleted only once this response has been
+ * cleaned up.</p>
+ *
+ * <p>Stale entries are revalidated with <tt>If-None-Match</tt> and <tt>If-Modified-Since</tt>.
+ * The <tt>Cache-Control</tt> directives <tt>max-age</tt>, <tt>no-store</tt>, <tt>no-cache</tt> and
+ * <tt>must-revalidate</tt> as well as the <tt>Expires</tt> header are honored. Responses varying on other
+ * request headers than <tt>Accept-Encoding</tt> and requests with credentials are not cached.</p>
+ *
+ * @see Cache#setDiskCache(DiskCache)
+ * @see <a href="http://www.w3.org/Protocols/rfc2616/rfc2616-sec13.html">RFC 2616</a>
+ * @version $Revision$
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class DiskCache implements Serializable {
+
+    private static final Log LOG = LogFactory.getLog(DiskCache.class);
+
+    private static final String INDEX_FILE_NAME = "index";
+    private static final String JOURNAL_FILE_NAME = "journal";
+
+    /** The default maximum size of the stored bodies: 50 MB. */
+    public static final long DEFAULT_MAX_SIZE = 50L * 1024 * 1024;
+
+    /** The minimum number of journal records before the journal is merged into the index file. */
+    private static final int MIN_JOURNAL_LENGTH = 100;
+
+    /** Headers which are describing the encoded body and which are therefore not stored. */
+    private static final String[] DROPPED_HEADERS = {"Content-Encoding", "Content-Length", "Transfer-Encoding"};
+
+    /** Headers which are updated from a <tt>304 Not Modified</tt> response. */
+    private static final String[] UPDATED_HEADERS = {"Date", "Expires", "Cache-Control", "ETag", "Last-Modified"};
+
+    private final File directory_;
+
+    /** The stored entries, from the least recently stored to the most recently stored one. */
+    private final LinkedHashMap<String, Entry> index_;
+
+    /** The number of entries of the index per body file digest. */
+    private final Map<String, Integer> digestUsers_ = new HashMap<String, Integer>();
+
+    /** The number of responses returned by this cache which have not been cleaned up yet, per digest. */
+    private final Map<String, Integer> openContents_ = new HashMap<String, Integer>();
+
+    private long size_;
+    private long maxSize_ = DEFAULT_MAX_SIZE;
+    private int journalLength_;
+
+    /**
+     * A stored response.
+     */
+    private static class Entry implements Serializable {
+        private final int statusCode_;
+        private final String statusMessage_;
+        private List<NameValuePair> headers_;
+        private final String digest_;
+        private final long length_;
+        private long storedAt_;
+
+        Entry(final int statusCode, final String statusMessage, final List<NameValuePair> headers,
+                final String digest, final long length, final long storedAt) {
+            statusCode_ = statusCode;
+            statusMessage_ = statusMessage;
+            headers_ = headers;
+            digest_ = digest;
+            length_ = length;
+            storedAt_ = storedAt;
+        }
+
+        String getHeader(final String name) {
+            for (final NameValuePair header : headers_) {
+                if (header.getName().equalsIgnoreCase(name)) {
+                    return header.getValue();
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * The content of a stored body file, which is kept on the disk as long as it is used.
+     */
+    private final class StoredContent extends DownloadedContent.OnFile {
+        private final String digest_;
+        private final AtomicBoolean released_ = new AtomicBoolean();
+
+        StoredContent(final File file, final String digest) {
+            super(file, false);
+            digest_ = digest;
+        }
+
+        @Override
+        public void cleanUp() {
+            if (released_.compareAndSet(false, true)) {
+                release(digest_);
+            }
+        }
+    }
+
+    /**
+     * Creates a new disk cache storing its content in the specified directory, which is
+     * created if needed. Content stored in this directory by a previous instance is reused.
+     *
+     * @param directory the directory where the content is stored
+     * @throws IOException if the directory can't be created
+     */
+    public DiskCache(final File directory) throws IOException {
+        WebAssert.notNull("directory", directory);
+        FileUtils.forceMkdir(directory);
+        directory_ = directory;
+        index_ = loadIndex();
+        for (final Entry entry : index_.values()) {
+            addUser(entry);
+        }
+        deleteUnreferencedFiles(true);
+    }
+
+    /**
+     * Returns the directory where the content is stored.
+     * @return the directory
+     */
+    public File getDirectory() {
+        return directory_;
+    }
+
+    /**
+     * Returns the maximum size of the stored bodies.
+     * @return the maximum size in bytes
+     */
+    public synchronized long getMaxSize() {
+        return maxSize_;
+    }
+
+    /**
+     * Sets the maximum size of the stored bodies. The least recently stored entries are removed
+     * when this size is exceeded. Default is {@link #DEFAULT_MAX_SIZE}.
+     * @param maxSize the maximum size in bytes
+     */
+    public synchronized void setMaxSize(final long maxSize) {
+        maxSize_ = maxSize;
+        trim();
+    }
+
+    /**
+     * Returns the response for the specified request, either from the disk, from the server after a
+     * successful revalidation of the stored content or (in all other cases) from the server.
+     * Responses received from the server are stored if they are cacheable.
+     *
+     * @param request the request
+     * @param connection the connection to use to contact the server
+     * @return the response
+     * @throws IOException if an IO problem occurs
+     */
+    public WebResponse getResponse(final WebRequest request, final WebConnection connection) throws IOException {
+        if (HttpMethod.GET != request.getHttpMethod() || hasCredentials(request)) {
+            return connection.getResponse(request);
+        }
+
+        final String url = request.getUrl().toString();
+        final Entry entry;
+        synchronized (this) {
+            entry = index_.get(url);
+        }
+        if (entry == null) {
+            return storeIfPossible(url, connection.getResponse(request));
+        }
+
+        if (isFresh(entry)) {
+            final WebResponse cached = createResponse(entry, request);
+            if (cached != null) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Using fresh content from disk cache for " + url);
+                }
+                return cached;
+            }
+        }
+
+        // user provided validators: let the user handle the 304
+        if (request.isAdditionalHeader("If-None-Match") || request.isAdditionalHeader("If-Modified-Since")) {
+            return storeIfPossible(url, connection.getResponse(request));
+        }
+
+        final String etag = entry.getHeader("ETag");
+        final String lastModified = entry.getHeader("Last-Modified");
+        if (etag != null) {
+            request.setAdditionalHeader("If-None-Match", etag);
+        }
+        if (lastModified != null) {
+            request.setAdditionalHeader("If-Modified-Since", lastModified);
+        }
+
+        final WebResponse response;
+        try {
+            response = connection.getResponse(request);
+        }
+        catch (final IOException e) {
+            if (hasDirective(entry.getHeader("Cache-Control"), "must-revalidate")) {
+                throw e;
+            }
+            final WebResponse cached = createResponse(entry, request);
+            if (cached == null) {
+                throw e;
+            }
+            LOG.info("Revalidation of " + url + " failed, using stale content from disk cache", e);
+            return cached;
+        }
+        finally {
+            request.removeAdditionalHeader("If-None-Match");
+            request.removeAdditionalHeader("If-Modified-Since");
+        }
+
+        if (response.getStatusCode() == HttpStatus.SC_NOT_MODIFIED) {
+            final WebResponse cached = createResponse(entry, request);
+            if (cached == null) {
+                // the stored body has been removed in the meantime
+                response.cleanUp();
+                return storeIfPossible(url, connection.getResponse(request));
+            }
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Content from disk cache revalidated for " + url);
+            }
+            revalidated(url, entry, response);
+            response.cleanUp();
+            return cached;
+        }
+        return storeIfPossible(url, response);
+    }
+
+    /**
+     * Stores the response if it can be cached.
+     * @param url the URL used as key
+     * @param response the response
+     * @return the response to use
+     */
+    private WebResponse storeIfPossible(final String url, final WebResponse response) {
+        if (!isStorable(response)) {
+            return response;
+        }
+        try {
+            store(url, response);
+        }
+        catch (final IOException e) {
+            LOG.warn("Could not store " + url + " in disk cache", e);
+        }
+        return response;
+    }
+
+    /**
+     * Determines if the specified response can be stored.
+     *
+     * @param response the received response
+     * @return <code>true</code> if the response can be stored
+     */
+    protected boolean isStorable(final WebResponse response) {
+        final WebRequest request = response.getWebRequest();
+        if (HttpMethod.GET != request.getHttpMethod() || hasCredentials(request)
+                || response.getStatusCode() != HttpStatus.SC_OK) {
+            return false;
+        }
+        final String cacheControl = response.getResponseHeaderValue("Cache-Control");
+        if (hasDirective(cacheControl, "no-store") || hasDirective(cacheControl, "private")) {
+            return false;
+        }
+        // bodies are stored decoded, only a variation on the encoding doesn't matter
+        final String vary = response.getResponseHeaderValue("Vary");
+        if (vary != null) {
+            for (final String header : StringUtils.split(vary, ',')) {
+                if (!"Accept-Encoding".equalsIgnoreCase(header.trim())) {
+                    return false;
+                }
+            }
+        }
+        return response.getResponseHeaderValue("ETag") != null
+            || response.getResponseHeaderValue("Last-Modified") != null
+            || getFreshnessLifetime(response.getResponseHeaders(), getCurrentTimestamp()) > 0;
+    }
+
+    /**
+     * Indicates if the request is sent with credentials, in which case its response is specific to a user.
+     * @param request the request
+     * @return <code>true</code> if the request has credentials
+     */
+    private static boolean hasCredentials(final WebRequest request) {
+        return request.getCredentials() != null || request.getUrlCredentials() != null
+            || request.isAdditionalHeader("Authorization");
+    }
+
+    private void store(final String url, final WebResponse response) throws IOException {
+        final File tmp = File.createTempFile("htmlunit", ".tmp", directory_);
+        final String digest;
+        final long length;
+        final InputStream in = response.getContentAsStream();
+        try {
+            final DigestOutputStream out = new DigestOutputStream(new FileOutputStream(tmp), newDigest());
+            try {
+                if (in != null) {
+                    length = IOUtils.copyLarge(in, out);
+                }
+                else {
+                    length = 0;
+                }
+            }
+            finally {
+                out.close();
+            }
+            digest = Hex.encodeHexString(out.getMessageDigest().digest());
+        }
+        finally {
+            IOUtils.closeQuietly(in);
+        }
+
+        final List<NameValuePair> headers = new ArrayList<NameValuePair>();
+        for (final NameValuePair header : response.getResponseHeaders()) {
+            if (!isDroppedHeader(header.getName())) {
+                headers.add(header);
+            }
+        }
+        final Entry entry = new Entry(response.getStatusCode(), response.getStatusMessage(), headers,
+                digest, length, getCurrentTimestamp());
+
+        synchronized (this) {
+            if (length > maxSize_) {
+                FileUtils.deleteQuietly(tmp);
+                return;
+            }
+            final File file = getFile(digest);
+            if (file.exists()) {
+                FileUtils.deleteQuietly(tmp);
+            }
+            else {
+                FileUtils.moveFile(tmp, file);
+            }
+            // removed first to become the most recently stored entry
+            final Entry previous = index_.remove(url);
+            index_.put(url, entry);
+            addUser(entry);
+            if (previous != null) {
+                removeUser(previous);
+            }
+            journal(url, entry);
+            trim();
+        }
+    }
+
+    private synchronized void revalidated(final String url, final Entry entry, final WebResponse response)
+        throws IOException {
+        final List<NameValuePair> headers = new ArrayList<NameValuePair>(entry.headers_);
+        for (final String name : UPDATED_HEADERS) {
+            final String value = response.getResponseHeaderValue(name);
+            if (value != null) {
+                for (int i = headers.size() - 1; i >= 0; i--) {
+                    if (headers.get(i).getName().equalsIgnoreCase(name)) {
+                        headers.remove(i);
+                    }
+                }
+                headers.add(new NameValuePair(name, value));
+            }
+        }
+        entry.headers_ = headers;
+        entry.storedAt_ = getCurrentTimestamp();
+        if (index_.get(url) == entry) {
+            index_.remove(url);
+            index_.put(url, entry);
+            journal(url, entry);
+        }
+    }
+
+    /**
+     * Creates a response reading the stored body, which is kept on the disk until the response is cleaned up.
+     * @param entry the entry
+     * @param request the request
+     * @return the response, or <code>null</code> if the body isn't stored anymore
+     */
+    private WebResponse createResponse(final Entry entry, final WebRequest request) {
+        final List<NameValuePair> headers;
+        synchronized (this) {
+            if (!getFile(entry.digest_).exists()) {
+                return null;
+            }
+            final Integer open = openContents_.get(entry.digest_);
+            openContents_.put(entry.digest_, open == null ? 1 : open + 1);
+            headers = entry.headers_;
+        }
+        final DownloadedContent content = new StoredContent(getFile(entry.digest_), entry.digest_);
+        final WebResponseData data = new WebResponseData(content, entry.statusCode_, entry.statusMessage_,
+                headers);
+        return new WebResponse(data, request, 0);
+    }
+
+    /**
+     * Called when a response returned by this cache is cleaned up.
+     * @param digest the digest of the body read by the response
+     */
+    private synchronized void release(final String digest) {
+        final Integer open = openContents_.get(digest);
+        if (open == null || open == 1) {
+            openContents_.remove(digest);
+            deleteIfUnused(digest);
+        }
+        else {
+            openContents_.put(digest, open - 1);
+        }
+    }
+
+    /**
+     * Indicates if the stored entry can be used without revalidation.
+     * @param entry the entry
+     * @return <code>true</code> if fresh
+     */
+    private boolean isFresh(final Entry entry) {
+        if (hasDirective(entry.getHeader("Cache-Control"), "no-cache")
+                || entry.getHeader("Pragma") != null && entry.getHeader("Pragma").contains("no-cache")) {
+            return false;
+        }
+        if (!getFile(entry.digest_).exists()) {
+            return false;
+        }
+        final long age = getCurrentTimestamp() - entry.storedAt_;
+        return age < getFreshnessLifetime(entry.headers_, entry.storedAt_);
+    }
+
+    /**
+     * Computes the freshness lifetime of a response, from its <tt>Cache-Control: max-age</tt> directive,
+     * from its <tt>Expires</tt> header or heuristically from its <tt>Last-Modified</tt> header.
+     *
+     * @param headers the response headers
+     * @param responseTime the time when the response has been received
+     * @return the freshness lifetime in milliseconds
+     */
+    protected long getFreshnessLifetime(final List<NameValuePair> headers, final long responseTime) {
+        String cacheControl = null;
+        Date date = null;
+        Date expires = null;
+        Date lastModified = null;
+        for (final NameValuePair header : headers) {
+            final String name = header.getName();
+            if ("Cache-Control".equalsIgnoreCase(name)) {
+                cacheControl = header.getValue();
+            }
+            else if ("Date".equalsIgnoreCase(name)) {
+                date = parseDate(header.getValue());
+            }
+            else if ("Expires".equalsIgnoreCase(name)) {
+                expires = parseDate(header.getValue());
+                if (expires == null) {
+                    // invalid dates, especially "0", mean "already expired"
+                    expires = new Date(0);
+                }
+            }
+            else if ("Last-Modified".equalsIgnoreCase(name)) {
+                lastModified = parseDate(header.getValue());
+            }
+        }
+
+        final String maxAge = getDirectiveValue(cacheControl, "max-age");
+        if (maxAge != null) {
+            try {
+                return Math.max(0, Long.parseLong(maxAge)) * 1000;
+            }
+            catch (final NumberFormatException e) {
+                return 0;
+            }
+        }
+        final long dateValue;
+        if (date != null) {
+            dateValue = date.getTime();
+        }
+        else {
+            dateValue = responseTime;
+        }
+        if (expires != null) {
+            return Math.max(0, expires.getTime() - dateValue);
+        }
+        if (lastModified != null) {
+            // heuristic expiration, as commonly used by browsers: 10% of the time since last modification
+            return Math.max(0, (dateValue - lastModified.getTime()) / 10);
+        }
+        return 0;
+    }
+
+    private static Date parseDate(final String value) {
+        return com.gargoylesoftware.htmlunit.util.StringUtils.parseHttpDate(value);
+    }
+
+    private static boolean hasDirective(final String cacheControl, final String directive) {
+        if (cacheControl == null) {
+            return false;
+        }
+        for (final String token : StringUtils.split(cacheControl, ',')) {
+            final String name = StringUtils.substringBefore(token, "=").trim();
+            if (directive.equalsIgnoreCase(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String getDirectiveValue(final String cacheControl, final String directive) {
+        if (cacheControl == null) {
+            return null;
+        }
+        for (final String token : StringUtils.split(cacheControl, ',')) {
+            final int index = token.indexOf('=');
+            if (index != -1 && directive.equalsIgnoreCase(token.substring(0, index).trim())) {
+                return StringUtils.strip(token.substring(index + 1).trim(), "\"");
+            }
+        }
+        return null;
+    }
+
+    private static boolean isDroppedHeader(final String name) {
+        for (final String dropped : DROPPED_HEADERS) {
+            if (dropped.equalsIgnoreCase(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets the current time stamp. As method to allow overriding it, when simulating an other time.
+     * @return the current time stamp
+     */
+    protected long getCurrentTimestamp() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * Returns the number of URLs stored in this cache.
+     * @return the number of stored URLs
+     */
+    public synchronized int getSize() {
+        return index_.size();
+    }
+
+    /**
+     * Removes all content stored in this cache.
+     */
+    public synchronized void clear() {
+        index_.clear();
+        digestUsers_.clear();
+        size_ = 0;
+        deleteUnreferencedFiles(false);
+        try {
+            saveIndex();
+        }
+        catch (final IOException e) {
+            LOG.warn("Could not save disk cache index", e);
+        }
+    }
+
+    /**
+     * Removes the least recently stored entries until the stored bodies fit in the maximum size.
+     */
+    private void trim() {
+        final Iterator<Map.Entry<String, Entry>> iterator = index_.entrySet().iterator();
+        while (size_ > maxSize_ && iterator.hasNext()) {
+            final Map.Entry<String, Entry> eldest = iterator.next();
+            iterator.remove();
+            removeUser(eldest.getValue());
+            try {
+                journal(eldest.getKey(), null);
+            }
+            catch (final IOException e) {
+                LOG.warn("Could not write disk cache journal", e);
+            }
+        }
+    }
+
+    private void addUser(final Entry entry) {
+        final Integer users = digestUsers_.get(entry.digest_);
+        if (users == null) {
+            digestUsers_.put(entry.digest_, 1);
+            size_ += entry.length_;
+        }
+        else {
+            digestUsers_.put(entry.digest_, users + 1);
+        }
+    }
+
+    private void removeUser(final Entry entry) {
+        final Integer users = digestUsers_.get(entry.digest_);
+        if (users == null || users == 1) {
+            digestUsers_.remove(entry.digest_);
+            size_ -= entry.length_;
+            deleteIfUnused(entry.digest_);
+        }
+        else {
+            digestUsers_.put(entry.digest_, users - 1);
+        }
+    }
+
+    /**
+     * Deletes the body file if neither an entry of the index nor a returned response uses it.
+     * @param digest the digest of the body
+     */
+    private void deleteIfUnused(final String digest) {
+        if (!digestUsers_.containsKey(digest) && !openContents_.containsKey(digest)) {
+            FileUtils.deleteQuietly(getFile(digest));
+        }
+    }
+
+    /**
+     * Deletes the body files which are not used anymore.
+     * @param temporary whether the temporary files of interrupted downloads have to be deleted too
+     */
+    private void deleteUnreferencedFiles(final boolean temporary) {
+        final File[] files = directory_.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (final File file : files) {
+            final String name = file.getName();
+            if (!INDEX_FILE_NAME.equals(name) && !JOURNAL_FILE_NAME.equals(name)
+                    && (temporary || !name.endsWith(".tmp"))
+                    && !digestUsers_.containsKey(name) && !openContents_.containsKey(name)) {
+                FileUtils.deleteQuietly(file);
+            }
+        }
+    }
+
+    private File getFile(final String digest) {
+        return new File(directory_, digest);
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        }
+        catch (final NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Loads the index file and replays the journal on it.
+     * @return the index
+     */
+    @SuppressWarnings("unchecked")
+    private LinkedHashMap<String, Entry> loadIndex() {
+        LinkedHashMap<String, Entry> index = null;
+        final File file = new File(directory_, INDEX_FILE_NAME);
+        if (file.exists()) {
+            try {
+                final ObjectInputStream in = new ObjectInputStream(new FileInputStream(file));
+                try {
+                    index = (LinkedHashMap<String, Entry>) in.readObject();
+                }
+                finally {
+                    in.close();
+                }
+            }
+            catch (final Exception e) {
+                LOG.info("Could not load disk cache index, starting with an empty cache", e);
+                FileUtils.deleteQuietly(new File(directory_, JOURNAL_FILE_NAME));
+                return new LinkedHashMap<String, Entry>();
+            }
+        }
+        if (index == null) {
+            index = new LinkedHashMap<String, Entry>();
+        }
+
+        final File journal = new File(directory_, JOURNAL_FILE_NAME);
+        if (journal.exists()) {
+            try {
+                final DataInputStream in = new DataInputStream(new FileInputStream(journal));
+                try {
+                    while (true) {
+                        final byte[] record = new byte[in.readInt()];
+                        in.readFully(record);
+                        final ObjectInputStream recordIn = new ObjectInputStream(new ByteArrayInputStream(record));
+                        final String url = (String) recordIn.readObject();
+                        final Entry entry = (Entry) recordIn.readObject();
+                        index.remove(url);
+                        if (entry != null) {
+                            index.put(url, entry);
+                        }
+                        journalLength_++;
+                    }
+                }
+                finally {
+                    in.close();
+                }
+            }
+            catch (final EOFException e) {
+                // end of the journal, possibly with an incomplete last record
+            }
+            catch (final Exception e) {
+                LOG.info("Could not read disk cache journal, ignoring its remaining records", e);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Appends a change of the index to the journal, which is merged into the index file once it has
+     * grown as large as the index.
+     * @param url the URL
+     * @param entry the new entry, or <code>null</code> if the entry has been removed
+     * @throws IOException if the journal can't be written
+     */
+    private void journal(final String url, final Entry entry) throws IOException {
+        if (journalLength_ >= Math.max(MIN_JOURNAL_LENGTH, index_.size())) {
+            saveIndex();
+            return;
+        }
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final ObjectOutputStream recordOut = new ObjectOutputStream(bytes);
+        recordOut.writeObject(url);
+        recordOut.writeObject(entry);
+        recordOut.close();
+
+        final DataOutputStream out = new DataOutputStream(
+                new FileOutputStream(new File(directory_, JOURNAL_FILE_NAME), true));
+        try {
+            out.writeInt(bytes.size());
+            bytes.writeTo(out);
+        }
+        finally {
+            out.close();
+        }
+        journalLength_++;
+    }
+
+    /**
+     * Writes the whole index file and empties the journal.
+     * @throws IOException if the index can't be written
+     */
+    private void saveIndex() throws IOException {
+        final File tmp = new File(directory_, INDEX_FILE_NAME + ".tmp");
+        final OutputStream fos = new FileOutputStream(tmp);
+        try {
+            final ObjectOutputStream out = new ObjectOutputStream(fos);
+            out.writeObject(index_);
+            out.close();
+        }
+        finally {
+            IOUtils.closeQuietly(fos);
+        }
+        final File file = new File(directory_, INDEX_FILE_NAME);
+        FileUtils.deleteQuietly(file);
+        FileUtils.moveFile(tmp, file);
+        FileUtils.deleteQuietly(new File(directory_, JOURNAL_FILE_NAME));
+        journalLength_ = 0;
+    }
+}
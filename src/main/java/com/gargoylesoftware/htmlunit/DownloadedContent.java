@@ -52,6 +52,14 @@ public interface DownloadedContent extends Serializable {
 
         public void cleanUp() {
         }
+
+        /**
+         * Returns the number of bytes of the content.
+         * @return the content length
+         */
+        public long length() {
+            return bytes_.length;
+        }
     }
 
     /**
@@ -59,13 +67,14 @@ public interface DownloadedContent extends Serializable {
      */
     static class OnFile implements DownloadedContent {
         private final File file_;
-        private boolean temporary_;
+        private final boolean temporary_;
         /**
          * @param file the file
          * @param temporary if true, the file will be deleted when cleanUp() is called.
          */
         public OnFile(final File file, final boolean temporary) {
             file_ = file;
+            temporary_ = temporary;
         }
 
         public InputStream getInputStream() throws FileNotFoundException {
@@ -76,6 +85,55 @@ public interface DownloadedContent extends Serializable {
                 FileUtils.deleteQuietly(file_);
             }
         }
+
+        /**
+         * Returns the number of bytes of the content.
+         * @return the content length
+         */
+        public long length() {
+            return file_.length();
+        }
+    }
+
+    /**
+     * Content which has already been decoded according to its <tt>Content-Encoding</tt> while
+     * being downloaded, and which therefore must not be decoded again when read.
+     */
+    static class Decoded implements DownloadedContent {
+        private final DownloadedContent content_;
+        private final long encodedLength_;
+        /**
+         * @param content the decoded content
+         * @param encodedLength the number of bytes received before decoding
+         */
+        public Decoded(final DownloadedContent content, final long encodedLength) {
+            content_ = content;
+            encodedLength_ = encodedLength;
+        }
+
+        public InputStream getInputStream() throws IOException {
+            return content_.getInputStream();
+        }
+
+        public void cleanUp() {
+            content_.cleanUp();
+        }
+
+        /**
+         * Returns the decoded content.
+         * @return the decoded content
+         */
+        DownloadedContent getContent() {
+            return content_;
+        }
+
+        /**
+         * Returns the number of bytes received before decoding.
+         * @return the encoded length
+         */
+        public long getEncodedLength() {
+            return encodedLength_;
+        }
     }
 
     /**
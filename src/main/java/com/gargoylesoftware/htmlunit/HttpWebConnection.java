@@ -15,11 +15,12 @@
 package com.gargoylesoftware.htmlunit;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.SequenceInputStream;
 import java.io.Serializable;
 import java.net.URI;
 import java.net.URISyntaxException;
@@ -32,11 +33,17 @@ import java.util.Comparator;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.net.ssl.SSLPeerUnverifiedException;
 
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CountingInputStream;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.http.Header;
 import org.apache.http.HttpEntity;
@@ -45,11 +52,12 @@ import org.apache.http.HttpHost;
 import org.apache.http.HttpRequest;
 import org.apache.http.HttpResponse;
 import org.apache.http.ProtocolException;
+import org.apache.http.auth.AuthScheme;
 import org.apache.http.auth.AuthScope;
 import org.apache.http.auth.Credentials;
 import org.apache.http.client.CookieStore;
+import org.apache.http.client.AuthCache;
 import org.apache.http.client.CredentialsProvider;
-import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpDelete;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpHead;
@@ -61,8 +69,10 @@ import org.apache.http.client.methods.HttpTrace;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.client.params.ClientPNames;
 import org.apache.http.client.params.HttpClientParams;
+import org.apache.http.client.protocol.ClientContext;
 import org.apache.http.client.utils.URIBuilder;
 import org.apache.http.client.utils.URLEncodedUtils;
+import org.apache.http.conn.ClientConnectionManager;
 import org.apache.http.conn.params.ConnRoutePNames;
 import org.apache.http.conn.scheme.Scheme;
 import org.apache.http.conn.scheme.SchemeRegistry;
@@ -84,7 +94,10 @@ import org.apache.http.entity.mime.content.ContentBody;
 import org.apache.http.entity.mime.content.FileBody;
 import org.apache.http.entity.mime.content.InputStreamBody;
 import org.apache.http.entity.mime.content.StringBody;
+import org.apache.http.impl.NoConnectionReuseStrategy;
+import org.apache.http.impl.auth.BasicAuthCache;
 import org.apache.http.impl.client.AbstractHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.http.impl.client.DefaultRedirectStrategy;
 import org.apache.http.impl.conn.PoolingClientConnectionManager;
@@ -121,18 +134,35 @@ public class HttpWebConnection implements WebConnection {
     private AbstractHttpClient httpClient_;
     private final WebClient webClient_;
 
-    /** Use single HttpContext, so there is no need to re-send authentication for each and every request. */
-    private HttpContext httpContext_ = new BasicHttpContext();
+    /**
+     * The authentication schemes shared by all the requests, so there is no need to re-send authentication
+     * for each and every request. Each request uses its own {@link HttpContext} as requests may be concurrent.
+     */
+    private final AuthCache authCache_ = new SynchronizedAuthCache();
     private String virtualHost_;
     private final CookieSpecFactory htmlUnitCookieSpecFactory_;
     private final WebClientOptions usedOptions_ = new WebClientOptions();
+    private final ClientConnectionManager sharedConnectionManager_;
 
     /**
      * Creates a new HTTP web connection instance.
      * @param webClient the WebClient that is using this connection
      */
     public HttpWebConnection(final WebClient webClient) {
+        this(webClient, null);
+    }
+
+    /**
+     * Creates a new HTTP web connection instance using a connection manager which can be shared
+     * with the connections of other {@link WebClient}s (see {@link #createConnectionManager(WebClientOptions)}).
+     * Cookies, credentials and authentication state remain specific to each connection.
+     * The shared connection manager is not shut down by {@link #shutdown()}.
+     * @param webClient the WebClient that is using this connection
+     * @param connectionManager the shared connection manager, or <tt>null</tt> to create a specific one
+     */
+    public HttpWebConnection(final WebClient webClient, final ClientConnectionManager connectionManager) {
         webClient_ = webClient;
+        sharedConnectionManager_ = connectionManager;
         htmlUnitCookieSpecFactory_ = new CookieSpecFactory() {
             public CookieSpec newInstance(final HttpParams params) {
                 return new HtmlUnitBrowserCompatCookieSpec(webClient_.getIncorrectnessListener());
@@ -157,18 +187,18 @@ public class HttpWebConnection implements WebConnection {
                         + " (reason: " + e.getMessage() + ")");
             }
             final HttpHost hostConfiguration = getHostConfiguration(request);
-            setProxy(httpClient, request);
+            setProxy(httpMethod, request);
             final long startTime = System.currentTimeMillis();
 
             HttpResponse httpResponse = null;
             try {
-                httpResponse = httpClient.execute(hostConfiguration, httpMethod, httpContext_);
+                httpResponse = httpClient.execute(hostConfiguration, httpMethod, createHttpContext());
             }
             catch (final SSLPeerUnverifiedException s) {
                 // Try to use only SSLv3 instead
                 if (webClient_.getOptions().isUseInsecureSSL()) {
                     HtmlUnitSSLSocketFactory.setUseSSL3Only(getHttpClient().getParams(), true);
-                    httpResponse = httpClient.execute(hostConfiguration, httpMethod);
+                    httpResponse = httpClient.execute(hostConfiguration, httpMethod, createHttpContext());
                 }
                 else {
                     throw s;
@@ -206,19 +236,55 @@ public class HttpWebConnection implements WebConnection {
         return hostConfiguration;
     }
 
-    private static void setProxy(final HttpClient httpClient, final WebRequest webRequest) {
+    /**
+     * Configures the proxy in the parameters of the request, which take precedence over the ones of the
+     * shared HTTP client.
+     */
+    private static void setProxy(final HttpUriRequest httpMethod, final WebRequest webRequest) {
         if (webRequest.getProxyHost() != null) {
             final HttpHost proxy = new HttpHost(webRequest.getProxyHost(), webRequest.getProxyPort());
-            final HttpParams httpClientParams = httpClient.getParams();
+            final HttpParams httpMethodParams = httpMethod.getParams();
             if (webRequest.isSocksProxy()) {
-                SocksSocketFactory.setSocksProxy(httpClientParams, proxy);
+                SocksSocketFactory.setSocksProxy(httpMethodParams, proxy);
             }
             else {
-                httpClientParams.setParameter(ConnRoutePNames.DEFAULT_PROXY, proxy);
+                httpMethodParams.setParameter(ConnRoutePNames.DEFAULT_PROXY, proxy);
             }
         }
     }
 
+    /**
+     * Creates the context of a request, providing the credentials and the cookies of the {@link WebClient}.
+     * They are not set on the HTTP client, which is shared by the concurrent requests.
+     * @return the new context
+     */
+    private HttpContext createHttpContext() {
+        final HttpContext httpContext = new BasicHttpContext();
+        httpContext.setAttribute(ClientContext.AUTH_CACHE, authCache_);
+        httpContext.setAttribute(ClientContext.CREDS_PROVIDER, webClient_.getCredentialsProvider());
+
+        final CookieStore cookieStore;
+        if (webClient_.getCookieManager().isCookiesEnabled()) {
+            cookieStore = new HtmlUnitCookieStore(webClient_.getCookieManager());
+        }
+        else {
+            // Cookies are disabled.
+            cookieStore = new CookieStore() {
+                public void addCookie(final Cookie cookie) { }
+                public void clear() { }
+                public boolean clearExpired(final Date date) {
+                    return false;
+                }
+                @SuppressWarnings("unchecked")
+                public List<Cookie> getCookies() {
+                    return Collections.EMPTY_LIST;
+                }
+            };
+        }
+        httpContext.setAttribute(ClientContext.COOKIE_STORE, cookieStore);
+        return httpContext;
+    }
+
     /**
      * Creates an <tt>HttpMethod</tt> instance according to the specified parameters.
      * @param webRequest the request
@@ -331,9 +397,10 @@ public class HttpWebConnection implements WebConnection {
 
         // reconfigure SSL if needed
         reconfigureHttpsScheme(httpClient.getConnectionManager().getSchemeRegistry());
+        closeIdleConnections(httpClient.getConnectionManager());
 
-        // Tell the client where to get its credentials from
-        // (it may have changed on the webClient since last call to getHttpClientFor(...))
+        // The credentials provider of the webClient is passed to the client in the context of the request
+        // (see createHttpContext())
         final CredentialsProvider credentialsProvider = webClient_.getCredentialsProvider();
 
         // if the used url contains credentials, we have to add this
@@ -354,28 +421,12 @@ public class HttpWebConnection implements WebConnection {
             // updating our client to keep the credentials for the next request
             credentialsProvider.setCredentials(authScope, requestCredentials);
         }
-        httpClient.setCredentialsProvider(credentialsProvider);
 
         if (webClient_.getCookieManager().isCookiesEnabled()) {
             // Cookies are enabled. Note that it's important that we enable single cookie headers,
             // for compatibility purposes.
-            httpClient.getParams().setParameter(CookieSpecPNames.SINGLE_COOKIE_HEADER, Boolean.TRUE);
-            httpClient.getParams().setParameter(ClientPNames.COOKIE_POLICY, HACKED_COOKIE_POLICY);
-            httpClient.setCookieStore(new HtmlUnitCookieStore(webClient_.getCookieManager()));
-        }
-        else {
-            // Cookies are disabled.
-            httpClient.setCookieStore(new CookieStore() {
-                public void addCookie(final Cookie cookie) { }
-                public void clear() { }
-                public boolean clearExpired(final Date date) {
-                    return false;
-                }
-                @SuppressWarnings("unchecked")
-                public List<Cookie> getCookies() {
-                    return Collections.EMPTY_LIST;
-                }
-            });
+            httpMethod.getParams().setParameter(CookieSpecPNames.SINGLE_COOKIE_HEADER, Boolean.TRUE);
+            httpMethod.getParams().setParameter(ClientPNames.COOKIE_POLICY, HACKED_COOKIE_POLICY);
         }
         return httpMethod;
     }
@@ -535,16 +586,43 @@ public class HttpWebConnection implements WebConnection {
         httpParams.setParameter(CoreConnectionPNames.CONNECTION_TIMEOUT,
                 Integer.valueOf(webClient_.getTimeout()));
 
-        final SchemeRegistry schemeRegistry = new SchemeRegistry();
-        schemeRegistry.register(new Scheme("http", 80, new SocksSocketFactory()));
-        configureHttpsScheme(schemeRegistry);
+        final WebClientOptions options = webClient_.getOptions();
+        httpParams.setBooleanParameter(CoreConnectionPNames.TCP_NODELAY, options.isTcpNoDelay());
+        httpParams.setIntParameter(CoreConnectionPNames.SOCKET_BUFFER_SIZE, options.getSocketBufferSize());
 
-        final PoolingClientConnectionManager connectionManager =
-            new PoolingClientConnectionManager(schemeRegistry);
+        final ClientConnectionManager connectionManager;
+        if (sharedConnectionManager_ != null) {
+            connectionManager = sharedConnectionManager_;
+        }
+        else {
+            final SchemeRegistry schemeRegistry = new SchemeRegistry();
+            schemeRegistry.register(new Scheme("http", 80, new SocksSocketFactory()));
+            configureHttpsScheme(schemeRegistry);
+
+            connectionManager = createConnectionManager(schemeRegistry, options);
+        }
 
         final DefaultHttpClient httpClient = new DefaultHttpClient(connectionManager, httpParams);
         httpClient.setCookieStore(new HtmlUnitCookieStore(webClient_.getCookieManager()));
 
+        if (!options.isKeepAlive()) {
+            httpClient.setReuseStrategy(new NoConnectionReuseStrategy());
+        }
+        else if (options.getKeepAliveTimeout() >= 0) {
+            final long keepAliveTimeout = options.getKeepAliveTimeout();
+            httpClient.setKeepAliveStrategy(new DefaultConnectionKeepAliveStrategy() {
+                @Override
+                public long getKeepAliveDuration(final HttpResponse response, final HttpContext context) {
+                    // honor the server's Keep-Alive header if any
+                    final long duration = super.getKeepAliveDuration(response, context);
+                    if (duration >= 0) {
+                        return duration;
+                    }
+                    return keepAliveTimeout;
+                }
+            });
+        }
+
         httpClient.setRedirectStrategy(new DefaultRedirectStrategy() {
             @Override
             public boolean isRedirected(final HttpRequest request, final HttpResponse response,
@@ -561,7 +639,47 @@ public class HttpWebConnection implements WebConnection {
         return httpClient;
     }
 
+    /**
+     * Creates a connection manager configured according to the specified options, which can be
+     * shared by the connections of several {@link WebClient}s
+     * (see {@link #HttpWebConnection(WebClient, ClientConnectionManager)}).
+     * The SSL settings of the options are the ones used by all connections sharing the manager.
+     * @param options the options providing the SSL and connection pool settings
+     * @return the new connection manager
+     */
+    public static ClientConnectionManager createConnectionManager(final WebClientOptions options) {
+        final SchemeRegistry schemeRegistry = new SchemeRegistry();
+        schemeRegistry.register(new Scheme("http", 80, new SocksSocketFactory()));
+        schemeRegistry.register(new Scheme("https", 443, HtmlUnitSSLSocketFactory.buildSSLSocketFactory(options)));
+        return createConnectionManager(schemeRegistry, options);
+    }
+
+    private static ClientConnectionManager createConnectionManager(final SchemeRegistry schemeRegistry,
+            final WebClientOptions options) {
+        final PoolingClientConnectionManager connectionManager =
+            new PoolingClientConnectionManager(schemeRegistry);
+        connectionManager.setMaxTotal(options.getMaxConnections());
+        connectionManager.setDefaultMaxPerRoute(options.getMaxConnectionsPerHost());
+        return connectionManager;
+    }
+
+    /**
+     * Closes the pooled connections which have expired or which have been idle for too long.
+     * @param connectionManager the connection manager
+     */
+    private void closeIdleConnections(final ClientConnectionManager connectionManager) {
+        final long idleTimeout = webClient_.getOptions().getConnectionIdleTimeout();
+        if (idleTimeout > 0) {
+            connectionManager.closeExpiredConnections();
+            connectionManager.closeIdleConnections(idleTimeout, TimeUnit.MILLISECONDS);
+        }
+    }
+
     private void reconfigureHttpsScheme(final SchemeRegistry schemeRegistry) {
+        if (sharedConnectionManager_ != null) {
+            // the scheme registry is shared with other connections
+            return;
+        }
         final WebClientOptions options = webClient_.getOptions();
 
         // register new SSL factory only if settings have changed
@@ -621,7 +739,17 @@ public class HttpWebConnection implements WebConnection {
         return newWebResponseInstance(responseData, loadTime, request);
     }
 
-    private static final long MAX_IN_MEMORY = 500 * 1024;
+    /** The default maximal size of the content kept in memory. */
+    static final int MAX_IN_MEMORY = 500 * 1024;
+
+    /** The size of the pooled buffers used to read content of unknown length. */
+    private static final int CHUNK_SIZE = 8 * 1024;
+
+    /** The maximal number of pooled buffers. */
+    private static final int MAX_POOLED_CHUNKS = 128;
+
+    private static final Queue<byte[]> CHUNK_POOL = new ConcurrentLinkedQueue<byte[]>();
+    private static final AtomicInteger CHUNK_POOLSIZE = new AtomicInteger();
 
     /**
      * Downloads the response body.
@@ -635,7 +763,26 @@ public class HttpWebConnection implements WebConnection {
             return new DownloadedContent.InMemory(new byte[] {});
         }
 
-        return downloadContent(httpEntity.getContent());
+        final WebClientOptions options = webClient_.getOptions();
+        if (options.isDecodeContentOnDownload()) {
+            final Header encodingHeader = httpResponse.getFirstHeader("Content-Encoding");
+            if (encodingHeader != null && WebResponseData.isSupportedContentEncoding(encodingHeader.getValue())) {
+                final CountingInputStream encodedStream = new CountingInputStream(httpEntity.getContent());
+                final InputStream decodedStream;
+                try {
+                    decodedStream = WebResponseData.decode(encodedStream, encodingHeader.getValue());
+                }
+                catch (final EOFException e) {
+                    // empty body (e.g. for a 304 response)
+                    IOUtils.closeQuietly(encodedStream);
+                    return new DownloadedContent.InMemory(new byte[] {});
+                }
+                final DownloadedContent content = downloadContent(decodedStream, options.getMaxInMemory(), -1);
+                return new DownloadedContent.Decoded(content, encodedStream.getByteCount());
+            }
+        }
+
+        return downloadContent(httpEntity.getContent(), options.getMaxInMemory(), httpEntity.getContentLength());
     }
 
     /**
@@ -645,33 +792,137 @@ public class HttpWebConnection implements WebConnection {
      * @throws IOException in case of read issues
      */
     public static DownloadedContent downloadContent(final InputStream is) throws IOException {
+        return downloadContent(is, MAX_IN_MEMORY, -1);
+    }
+
+    /**
+     * Reads the content of the stream and saves it in memory or, if it is bigger than <tt>maxInMemory</tt>,
+     * in a temporary file which is deleted when the content is cleaned up, or at the latest when the JVM exits.
+     * @param is the stream to read
+     * @param maxInMemory the maximal number of bytes to keep in memory
+     * @param contentLength the announced length of the content, or <tt>-1</tt> if unknown
+     * @return a wrapper around the downloaded content
+     * @throws IOException in case of read issues
+     */
+    public static DownloadedContent downloadContent(final InputStream is, final int maxInMemory,
+            final long contentLength) throws IOException {
         if (is == null) {
             return new DownloadedContent.InMemory(new byte[] {});
         }
-        final ByteArrayOutputStream bos = new ByteArrayOutputStream();
 
-        final byte[] buffer = new byte[1024];
-        int nbRead;
         try {
-            while ((nbRead = is.read(buffer)) != -1) {
-                bos.write(buffer, 0, nbRead);
-                if (bos.size() > MAX_IN_MEMORY) {
-                    // we have exceeded the max for memory, let's write everything to a temporary file
-                    final File file = File.createTempFile("htmlunit", ".tmp");
-                    file.deleteOnExit();
-                    final FileOutputStream fos = new FileOutputStream(file);
-                    bos.writeTo(fos); // what we have already read
-                    IOUtils.copyLarge(is, fos); // what remains from the server response
-                    fos.close();
-                    return new DownloadedContent.OnFile(file, true);
+            if (contentLength > maxInMemory) {
+                return saveToFile(Collections.<byte[]>emptyList(), 0, is);
+            }
+            if (contentLength >= 0) {
+                // known length: read directly in the array that will hold the content
+                final byte[] bytes = new byte[(int) contentLength];
+                final int nbRead = IOUtils.read(is, bytes);
+                if (nbRead < bytes.length) {
+                    return new DownloadedContent.InMemory(Arrays.copyOf(bytes, nbRead));
+                }
+                final int next = is.read();
+                if (next == -1) {
+                    return new DownloadedContent.InMemory(bytes);
                 }
+                // more content than announced
+                final InputStream alreadyRead = new SequenceInputStream(new ByteArrayInputStream(bytes),
+                        new ByteArrayInputStream(new byte[] {(byte) next}));
+                return downloadContentOfUnknownLength(new SequenceInputStream(alreadyRead, is), maxInMemory);
             }
+            return downloadContentOfUnknownLength(is, maxInMemory);
         }
         finally {
             IOUtils.closeQuietly(is);
         }
+    }
+
+    private static DownloadedContent downloadContentOfUnknownLength(final InputStream is, final int maxInMemory)
+        throws IOException {
+        final List<byte[]> chunks = new ArrayList<byte[]>();
+        try {
+            long length = 0;
+            byte[] chunk = takeChunk();
+            chunks.add(chunk);
+            int chunkLength = 0;
+            int nbRead;
+            while ((nbRead = is.read(chunk, chunkLength, chunk.length - chunkLength)) != -1) {
+                chunkLength += nbRead;
+                length += nbRead;
+                if (length > maxInMemory) {
+                    // we have exceeded the max for memory, let's write everything to a temporary file
+                    return saveToFile(chunks, chunkLength, is);
+                }
+                if (chunkLength == chunk.length) {
+                    chunk = takeChunk();
+                    chunks.add(chunk);
+                    chunkLength = 0;
+                }
+            }
 
-        return new DownloadedContent.InMemory(bos.toByteArray());
+            final byte[] bytes = new byte[(int) length];
+            int pos = 0;
+            for (final byte[] full : chunks) {
+                final int count = Math.min(full.length, bytes.length - pos);
+                System.arraycopy(full, 0, bytes, pos, count);
+                pos += count;
+            }
+            return new DownloadedContent.InMemory(bytes);
+        }
+        finally {
+            for (final byte[] chunk : chunks) {
+                releaseChunk(chunk);
+            }
+        }
+    }
+
+    /**
+     * Saves the content already read and the rest of the stream to a temporary file.
+     * @param chunks the full chunks already read, except the last one
+     * @param lastChunkLength the number of bytes in the last chunk
+     * @param is the stream with the remaining content
+     */
+    private static DownloadedContent saveToFile(final List<byte[]> chunks, final int lastChunkLength,
+            final InputStream is) throws IOException {
+        final File file = File.createTempFile("htmlunit", ".tmp");
+        // the responses which are never cleaned up, like the ones of images, are deleted at the latest on exit
+        file.deleteOnExit();
+        final FileOutputStream fos = new FileOutputStream(file);
+        try {
+            final int lastIndex = chunks.size() - 1;
+            for (int i = 0; i < lastIndex; i++) {
+                fos.write(chunks.get(i));
+            }
+            if (lastIndex >= 0) {
+                fos.write(chunks.get(lastIndex), 0, lastChunkLength);
+            }
+            IOUtils.copyLarge(is, fos); // what remains from the server response
+            fos.close();
+        }
+        catch (final IOException e) {
+            IOUtils.closeQuietly(fos);
+            FileUtils.deleteQuietly(file);
+            throw e;
+        }
+        return new DownloadedContent.OnFile(file, true);
+    }
+
+    private static byte[] takeChunk() {
+        final byte[] chunk = CHUNK_POOL.poll();
+        if (chunk == null) {
+            return new byte[CHUNK_SIZE];
+        }
+        CHUNK_POOLSIZE.decrementAndGet();
+        return chunk;
+    }
+
+    private static void releaseChunk(final byte[] chunk) {
+        if (CHUNK_POOLSIZE.incrementAndGet() <= MAX_POOLED_CHUNKS) {
+            CHUNK_POOL.offer(chunk);
+        }
+        else {
+            CHUNK_POOLSIZE.decrementAndGet();
+        }
     }
 
     /**
@@ -703,7 +954,9 @@ public class HttpWebConnection implements WebConnection {
      */
     public synchronized void shutdown() {
         if (httpClient_ != null) {
-            httpClient_.getConnectionManager().shutdown();
+            if (sharedConnectionManager_ == null) {
+                httpClient_.getConnectionManager().shutdown();
+            }
             httpClient_ = null;
         }
     }
@@ -818,9 +1071,9 @@ class HtmlUnitCookieStore implements CookieStore, Serializable {
     /**
      * {@inheritDoc}
      */
-    public synchronized List<Cookie> getCookies() {
+    public List<Cookie> getCookies() {
         if (manager_.isCookiesEnabled()) {
-            return Arrays.asList(com.gargoylesoftware.htmlunit.util.Cookie.toHttpClient(manager_.getCookies()));
+            return manager_.getHttpClientCookies();
         }
         return Collections.<Cookie>emptyList();
     }
@@ -839,3 +1092,40 @@ class HtmlUnitCookieStore implements CookieStore, Serializable {
         manager_.clearCookies();
     }
 }
+
+/**
+ * Thread safe {@link AuthCache}, shared by the concurrent requests of an {@link HttpWebConnection}.
+ * @author <a href="mailto:agent@local">agent</a>
+ * @version $Revision$
+ */
+class SynchronizedAuthCache implements AuthCache {
+    private final AuthCache cache_ = new BasicAuthCache();
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized void put(final HttpHost host, final AuthScheme authScheme) {
+        cache_.put(host, authScheme);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized AuthScheme get(final HttpHost host) {
+        return cache_.get(host);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized void remove(final HttpHost host) {
+        cache_.remove(host);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public synchronized void clear() {
+        cache_.clear();
+    }
+}
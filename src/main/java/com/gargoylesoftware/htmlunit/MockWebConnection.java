@@ -57,8 +57,11 @@ public class MockWebConnection implements WebConnection {
             LOG.debug("Getting response for " + url.toExternalForm());
         }
 
-        lastRequest_ = request;
-        requestCount_++;
+        // called concurrently when the responses are loaded asynchronously or prefetched
+        synchronized (this) {
+            lastRequest_ = request;
+            requestCount_++;
+        }
         requestedUrls_.add(url);
 
         WebResponseData response = responseMap_.get(url.toExternalForm());
@@ -362,7 +365,7 @@ public class MockWebConnection implements WebConnection {
      * @return the {@link WebRequest} that was used in the in the last call
      *         to {@link #getResponse(WebRequest)}
      */
-    public WebRequest getLastWebRequest() {
+    public synchronized WebRequest getLastWebRequest() {
         return lastRequest_;
     }
 
@@ -370,7 +373,7 @@ public class MockWebConnection implements WebConnection {
      * Returns the number of requests made to this mock web connection.
      * @return the number of requests made to this mock web connection
      */
-    public int getRequestCount() {
+    public synchronized int getRequestCount() {
         return requestCount_;
     }
 
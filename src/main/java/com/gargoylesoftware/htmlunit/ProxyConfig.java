@@ -19,6 +19,8 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.regex.Pattern;
 
+import com.gargoylesoftware.htmlunit.javascript.ProxyAutoConfig;
+
 /**
  * Class which centralizes proxy configuration, in an effort to reduce clutter in the {@link WebClient}
  * class. One instance of this class exists for each <tt>WebClient</tt> instance.
@@ -35,6 +37,7 @@ public class ProxyConfig implements Serializable {
     private final Map<String, Pattern> proxyBypassHosts_ = new HashMap<String, Pattern>();
     private String proxyAutoConfigUrl_;
     private String proxyAutoConfigContent_;
+    private transient ProxyAutoConfig proxyAutoConfig_;
 
     /**
      * Creates a new instance.
@@ -178,7 +181,19 @@ public class ProxyConfig implements Serializable {
      * Sets the proxy auto-config content.
      * @param proxyAutoConfigContent the proxy auto-config content
      */
-    protected void setProxyAutoConfigContent(final String proxyAutoConfigContent) {
+    protected synchronized void setProxyAutoConfigContent(final String proxyAutoConfigContent) {
         proxyAutoConfigContent_ = proxyAutoConfigContent;
+        proxyAutoConfig_ = null;
+    }
+
+    /**
+     * Returns the compiled proxy auto-config script, compiling the content the first time.
+     * @return the compiled proxy auto-config script, or <tt>null</tt> if the content is not yet known
+     */
+    protected synchronized ProxyAutoConfig getProxyAutoConfig() {
+        if (proxyAutoConfig_ == null && proxyAutoConfigContent_ != null) {
+            proxyAutoConfig_ = new ProxyAutoConfig(proxyAutoConfigContent_);
+        }
+        return proxyAutoConfig_;
     }
 }
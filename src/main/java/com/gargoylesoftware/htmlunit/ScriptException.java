@@ -20,6 +20,8 @@ import java.io.PrintStream;
 import java.io.PrintWriter;
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.util.Collections;
+import java.util.Map;
 import java.util.StringTokenizer;
 
 import net.sourceforge.htmlunit.corejs.javascript.EcmaError;
@@ -27,6 +29,8 @@ import net.sourceforge.htmlunit.corejs.javascript.JavaScriptException;
 import net.sourceforge.htmlunit.corejs.javascript.RhinoException;
 import net.sourceforge.htmlunit.corejs.javascript.WrappedException;
 
+import org.apache.commons.lang3.StringUtils;
+
 import com.gargoylesoftware.htmlunit.html.HtmlPage;
 
 /**
@@ -41,6 +45,7 @@ public class ScriptException extends RuntimeException {
 
     private final String scriptSourceCode_;
     private final HtmlPage page_;
+    private final Map<String, String> sourceNames_;
 
     /**
      * Creates an instance.
@@ -52,9 +57,33 @@ public class ScriptException extends RuntimeException {
      */
     public ScriptException(final HtmlPage page, final Throwable throwable,
             final String scriptSourceCode) {
-        super(getMessageFrom(throwable), throwable);
+        this(page, throwable, scriptSourceCode, Collections.<String, String>emptyMap());
+    }
+
+    /**
+     * Creates an instance for an error of scripts compiled under other source names than the ones to report,
+     * as the scripts shared by several pages.
+     * @param page the page in which the script causing this exception was executed
+     * @param throwable the exception that was thrown from the script engine
+     * @param scriptSourceCode the code that was being executed when this exception
+     * was thrown. This may be null if the exception was not caused by execution
+     * of JavaScript.
+     * @param sourceNames the source names to report, keyed by the names the scripts have been compiled with
+     */
+    public ScriptException(final HtmlPage page, final Throwable throwable,
+            final String scriptSourceCode, final Map<String, String> sourceNames) {
+        super(replaceSourceNames(getMessageFrom(throwable), sourceNames), throwable);
         scriptSourceCode_ = scriptSourceCode;
         page_ = page;
+        sourceNames_ = sourceNames;
+    }
+
+    private static String replaceSourceNames(final String text, final Map<String, String> sourceNames) {
+        String result = text;
+        for (final Map.Entry<String, String> entry : sourceNames.entrySet()) {
+            result = StringUtils.replace(result, entry.getKey(), entry.getValue());
+        }
+        return result;
     }
 
     private static String getMessageFrom(final Throwable throwable) {
@@ -123,7 +152,7 @@ public class ScriptException extends RuntimeException {
                 printWriter.print("] name=[");
                 printWriter.print(ecmaError.getName());
                 printWriter.print("] sourceName=[");
-                printWriter.print(ecmaError.sourceName());
+                printWriter.print(replaceSourceNames(ecmaError.sourceName(), sourceNames_));
                 printWriter.print("] message=[");
                 printWriter.print(ecmaError.getMessage());
                 printWriter.print("]");
@@ -247,13 +276,13 @@ public class ScriptException extends RuntimeException {
 
         getCause().printStackTrace(printWriter);
 
-        writer.print(getCause().getMessage());
+        writer.print(getMessage());
         final StringTokenizer st = new StringTokenizer(stringWriter.toString(), "\r\n");
         while (st.hasMoreTokens()) {
             final String line = st.nextToken();
             if (line.contains("at script")) {
                 writer.println();
-                writer.print(line.replaceFirst("at script\\.?", "at "));
+                writer.print(replaceSourceNames(line.replaceFirst("at script\\.?", "at "), sourceNames_));
             }
         }
     }
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2002-2012 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit;
+
+import java.io.Serializable;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The clock used by a {@link WebClient} to schedule the background JavaScript jobs.
+ *
+ * <p>The clock follows the system clock but can be moved forward, which allows to execute the timers
+ * of the pages without waiting for them when {@link WebClientOptions#setUseVirtualTime(boolean) virtual time}
+ * is used. Time never goes backward.</p>
+ *
+ * @version $Revision$
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class VirtualClock implements Serializable {
+
+    private volatile long offset_;
+    private transient List<Runnable> listeners_;
+
+    /**
+     * Returns the current time of this clock.
+     * @return the current time in milliseconds
+     */
+    public long currentTimeMillis() {
+        return System.currentTimeMillis() + offset_;
+    }
+
+    /**
+     * Returns the difference between this clock and the system clock.
+     * @return the offset in milliseconds
+     */
+    public long getOffset() {
+        return offset_;
+    }
+
+    /**
+     * Moves this clock forward and notifies the listeners.
+     * @param millis the number of milliseconds to move forward; nothing is done if not positive
+     */
+    public void advance(final long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        final List<Runnable> listeners;
+        synchronized (this) {
+            offset_ += millis;
+            listeners = listeners_;
+        }
+        if (listeners != null) {
+            for (final Runnable listener : listeners) {
+                listener.run();
+            }
+        }
+    }
+
+    /**
+     * Adds a listener notified each time this clock is moved forward.
+     * @param listener the listener
+     */
+    public synchronized void addListener(final Runnable listener) {
+        if (listeners_ == null) {
+            listeners_ = new CopyOnWriteArrayList<Runnable>();
+        }
+        listeners_.add(listener);
+    }
+
+    /**
+     * Removes a listener.
+     * @param listener the listener
+     */
+    public synchronized void removeListener(final Runnable listener) {
+        if (listeners_ != null) {
+            listeners_.remove(listener);
+        }
+    }
+}
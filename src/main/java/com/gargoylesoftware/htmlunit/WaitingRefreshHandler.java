@@ -70,6 +70,21 @@ public class WaitingRefreshHandler implements RefreshHandler {
         if (seconds > maxwait_ && maxwait_ > 0) {
             seconds = maxwait_;
         }
+        final WebWindow window = page.getEnclosingWindow();
+        if (window != null && window.getWebClient().getOptions().isUseVirtualTime()) {
+            window.getWebClient().getClock().advance(seconds * 1000L);
+        }
+        else {
+            sleep(seconds);
+        }
+        if (window == null) {
+            return;
+        }
+        final WebClient client = window.getWebClient();
+        client.getPage(window, new WebRequest(url));
+    }
+
+    private void sleep(final int seconds) {
         try {
             Thread.sleep(seconds * 1000);
         }
@@ -84,12 +99,6 @@ public class WaitingRefreshHandler implements RefreshHandler {
                 LOG.debug("Waiting thread was interrupted. Ignoring interruption to continue navigation.");
             }
         }
-        final WebWindow window = page.getEnclosingWindow();
-        if (window == null) {
-            return;
-        }
-        final WebClient client = window.getWebClient();
-        client.getPage(window, new WebRequest(url));
     }
 
 }
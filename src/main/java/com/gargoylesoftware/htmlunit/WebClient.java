@@ -36,6 +36,11 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Stack;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import net.sourceforge.htmlunit.corejs.javascript.ScriptableObject;
 
@@ -60,7 +65,8 @@ import com.gargoylesoftware.htmlunit.html.HtmlElement;
 import com.gargoylesoftware.htmlunit.html.HtmlPage;
 import com.gargoylesoftware.htmlunit.javascript.JavaScriptEngine;
 import com.gargoylesoftware.htmlunit.javascript.JavaScriptErrorListener;
-import com.gargoylesoftware.htmlunit.javascript.ProxyAutoConfig;
+import com.gargoylesoftware.htmlunit.javascript.background.JavaScriptJob;
+import com.gargoylesoftware.htmlunit.javascript.background.JavaScriptJobManager;
 import com.gargoylesoftware.htmlunit.javascript.host.Event;
 import com.gargoylesoftware.htmlunit.javascript.host.Location;
 import com.gargoylesoftware.htmlunit.javascript.host.Node;
@@ -124,6 +130,7 @@ public class WebClient implements Serializable {
     private CredentialsProvider credentialsProvider_ = new DefaultCredentialsProvider();
     private CookieManager cookieManager_ = new CookieManager();
     private transient JavaScriptEngine scriptEngine_;
+    private transient ExecutorService downloadExecutor_;
     private final Map<String, String> requestHeaders_ = Collections.synchronizedMap(new HashMap<String, String>(89));
     private IncorrectnessListener incorrectnessListener_ = new IncorrectnessListenerImpl();
     private WebConsole webConsole_;
@@ -162,6 +169,7 @@ public class WebClient implements Serializable {
     private JavaScriptErrorListener javaScriptErrorListener_;
 
     private WebClientOptions options_ = new WebClientOptions();
+    private final VirtualClock clock_ = new VirtualClock();
 
     /**
      * Creates a web client instance using the browser version returned by
@@ -1240,7 +1248,8 @@ public class WebClient implements Serializable {
         }
         responseHeaders.add(new NameValuePair("content-type",
             decoder.getMediaType() + ";charset=" + decoder.getCharset()));
-        final DownloadedContent downloadedContent = HttpWebConnection.downloadContent(url.openStream());
+        final DownloadedContent downloadedContent = HttpWebConnection.downloadContent(url.openStream(),
+                getOptions().getMaxInMemory(), -1);
         final WebResponseData data = new WebResponseData(downloadedContent, 200, "OK", responseHeaders);
         return new WebResponse(data, url, webRequest.getHttpMethod(), 0);
     }
@@ -1360,6 +1369,42 @@ public class WebClient implements Serializable {
         return response;
     }
 
+    /**
+     * Loads a {@link WebResponse} from the server without blocking the calling thread.
+     * The requests are performed by a pool of at most {@link WebClientOptions#getMaxConnections()} threads,
+     * the following ones wait in a queue. The {@link WebConnection} has therefore to be thread-safe.
+     * @param webRequest the request
+     * @return the pending response
+     */
+    public WebResponseFuture loadWebResponseAsync(final WebRequest webRequest) {
+        final WebResponseFuture future = new WebResponseFuture(this, webRequest);
+        if (GAEUtils.isGaeMode()) {
+            // no thread can be started on Google App Engine
+            future.run();
+        }
+        else {
+            getDownloadExecutor().execute(future);
+        }
+        return future;
+    }
+
+    private synchronized ExecutorService getDownloadExecutor() {
+        if (downloadExecutor_ == null) {
+            final int threads = getOptions().getMaxConnections();
+            final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                        public Thread newThread(final Runnable runnable) {
+                            final Thread thread = new Thread(runnable, "HtmlUnit download");
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+            executor.allowCoreThreadTimeOut(true);
+            downloadExecutor_ = executor;
+        }
+        return downloadExecutor_;
+    }
+
     /**
      * Loads a {@link WebResponse} from the server.
      * @param webRequest the request
@@ -1429,7 +1474,7 @@ public class WebClient implements Serializable {
                             .getWebResponse().getContentAsString();
                         proxyConfig.setProxyAutoConfigContent(content);
                     }
-                    final String allValue = ProxyAutoConfig.evaluate(content, url);
+                    final String allValue = proxyConfig.getProxyAutoConfig().findProxyForURL(url);
                     if (LOG.isDebugEnabled()) {
                         LOG.debug("Proxy Auto-Config: value '" + allValue + "' for URL " + url);
                     }
@@ -1464,11 +1509,18 @@ public class WebClient implements Serializable {
         // Retrieve the response, either from the cache or from the server.
         final Object fromCache = getCache().getCachedObject(webRequest);
         final WebResponse webResponse;
-        if (fromCache != null && fromCache instanceof WebResponse) {
+        if (fromCache instanceof WebResponse && ((WebResponse) fromCache).retain()) {
             webResponse = new WebResponseFromCache((WebResponse) fromCache, webRequest);
         }
         else {
-            webResponse = getWebConnection().getResponse(webRequest);
+            final DiskCache diskCache = getCache().getDiskCache();
+            if (diskCache != null) {
+                webResponse = diskCache.getResponse(webRequest, getWebConnection());
+            }
+            else {
+                webResponse = getWebConnection().getResponse(webRequest);
+            }
+            // if cached, the content is cleaned up once both the cache and the page have released the response
             getCache().cacheIfPossible(webRequest, webResponse, webResponse);
         }
 
@@ -1946,6 +1998,18 @@ public class WebClient implements Serializable {
                 topWindow.close();
             }
         }
+        synchronized (loadQueue_) {
+            for (final LoadJob loadJob : loadQueue_) {
+                loadJob.discard();
+            }
+            loadQueue_.clear();
+        }
+        synchronized (this) {
+            if (downloadExecutor_ != null) {
+                downloadExecutor_.shutdownNow();
+                downloadExecutor_ = null;
+            }
+        }
         //FIXME Depends on the implementation
         if (webConnection_ instanceof HttpWebConnection) {
             ((HttpWebConnection) webConnection_).shutdown();
@@ -1973,6 +2037,9 @@ public class WebClient implements Serializable {
      *         method returns; will be <tt>0</tt> if there are no jobs left to execute
      */
     public int waitForBackgroundJavaScript(final long timeoutMillis) {
+        if (getOptions().isUseVirtualTime()) {
+            return fastForwardBackgroundJavaScript(timeoutMillis, true);
+        }
         int count = 0;
         final long endTime = System.currentTimeMillis() + timeoutMillis;
         for (Iterator<WebWindow> i = windows_.iterator(); i.hasNext();) {
@@ -2020,6 +2087,13 @@ public class WebClient implements Serializable {
      *         method returns; will be <tt>0</tt> if there are no jobs left to execute
      */
     public int waitForBackgroundJavaScriptStartingBefore(final long delayMillis) {
+        if (getOptions().isUseVirtualTime()) {
+            return fastForwardBackgroundJavaScript(delayMillis, false);
+        }
+        return waitForJobsStartingBefore(delayMillis);
+    }
+
+    private int waitForJobsStartingBefore(final long delayMillis) {
         int count = 0;
         final long endTime = System.currentTimeMillis() + delayMillis;
         for (Iterator<WebWindow> i = windows_.iterator(); i.hasNext();) {
@@ -2037,11 +2111,56 @@ public class WebClient implements Serializable {
         }
         if (count != getAggregateJobCount()) {
             final long newDelay = endTime - System.currentTimeMillis();
-            return waitForBackgroundJavaScriptStartingBefore(newDelay);
+            return waitForJobsStartingBefore(newDelay);
         }
         return count;
     }
 
+    /**
+     * Executes the background JavaScript jobs scheduled to start before <tt>(now + delayMillis)</tt>,
+     * moving the {@link #getClock() clock} forward to the target execution time of each job instead
+     * of waiting for it.
+     * @param delayMillis the delay which determines the background tasks to execute (in milliseconds)
+     * @param advanceToEnd whether to move the clock to <tt>(now + delayMillis)</tt> when jobs remain,
+     *        as if the time had been waited for
+     * @return the number of background JavaScript jobs left
+     */
+    private int fastForwardBackgroundJavaScript(final long delayMillis, final boolean advanceToEnd) {
+        final long endTime = clock_.currentTimeMillis() + delayMillis;
+        while (true) {
+            // the executor runs the jobs which are due, we just wait for them
+            waitForJobsStartingBefore(1);
+
+            long earliest = Long.MAX_VALUE;
+            for (final WebWindow window : new ArrayList<WebWindow>(windows_)) {
+                final JavaScriptJobManager jobManager = window.getJobManager();
+                final JavaScriptJob job = jobManager == null ? null : jobManager.getEarliestJob();
+                if (job != null) {
+                    earliest = Math.min(earliest, job.getTargetExecutionTime());
+                }
+            }
+
+            final long now = clock_.currentTimeMillis();
+            if (earliest == Long.MAX_VALUE || earliest > endTime) {
+                if (advanceToEnd && earliest != Long.MAX_VALUE) {
+                    clock_.advance(endTime - now);
+                }
+                return getAggregateJobCount();
+            }
+            clock_.advance(earliest - now);
+        }
+    }
+
+    /**
+     * Returns the clock used to schedule the background JavaScript jobs of this client.
+     * It follows the system clock, unless {@link WebClientOptions#setUseVirtualTime(boolean) virtual time}
+     * is used.
+     * @return the clock
+     */
+    public VirtualClock getClock() {
+        return clock_;
+    }
+
     /**
      * Sets the SSL client certificate to use.
      * The needed parameters are used to construct a {@link java.security.KeyStore}.
@@ -2103,11 +2222,11 @@ public class WebClient implements Serializable {
     private static class LoadJob {
         private final WebWindow requestingWindow_;
         private final String target_;
-        private final WebResponse response_;
+        private final WebResponseFuture response_;
         private final URL urlWithOnlyHashChange_;
         private final WeakReference<Page> originalPage_;
 
-        LoadJob(final WebWindow requestingWindow, final String target, final WebResponse response) {
+        LoadJob(final WebWindow requestingWindow, final String target, final WebResponseFuture response) {
             requestingWindow_ = requestingWindow;
             target_ = target;
             response_ = response;
@@ -2134,6 +2253,16 @@ public class WebClient implements Serializable {
 
             return false;
         }
+
+        /**
+         * Discards the download, which won't be loaded in any window.
+         */
+        void discard() {
+            LOG.info("No usage of download: " + this);
+            if (response_ != null) {
+                response_.discard();
+            }
+        }
     }
 
     private final List<LoadJob> loadQueue_ = new ArrayList<LoadJob>();
@@ -2141,8 +2270,9 @@ public class WebClient implements Serializable {
     /**
      * <span style="color:red">INTERNAL API - SUBJECT TO CHANGE AT ANY TIME - USE AT YOUR OWN RISK.</span><br/>
      *
-     * Perform the downloads and stores it for loading later into a window.
-     * In the future downloads should be performed in parallel in separated threads.
+     * Starts the download and stores it for loading later into a window.
+     * The download is performed in parallel (see {@link #loadWebResponseAsync(WebRequest)}) if
+     * {@link WebClientOptions#isLoadResponsesAsynchronously()}, immediately otherwise.
      * TODO: refactor it before next release.
      * @param requestingWindow the window from which the request comes
      * @param target the name of the target window
@@ -2192,14 +2322,19 @@ public class WebClient implements Serializable {
         if (justHashJump) {
             loadJob = new LoadJob(win, target, url);
         }
+        else if (getOptions().isLoadResponsesAsynchronously()) {
+            loadJob = new LoadJob(requestingWindow, target, loadWebResponseAsync(request));
+        }
         else {
+            final WebResponseFuture response = new WebResponseFuture(this, request);
+            response.run();
             try {
-                final WebResponse response = loadWebResponse(request);
-                loadJob = new LoadJob(requestingWindow, target, response);
+                response.getWebResponse();
             }
             catch (final IOException e) {
                 throw new RuntimeException(e);
             }
+            loadJob = new LoadJob(requestingWindow, target, response);
         }
         synchronized (loadQueue_) {
             loadQueue_.add(loadJob);
@@ -2231,7 +2366,7 @@ public class WebClient implements Serializable {
         for (int i = queue.size() - 1; i >= 0; --i) {
             final LoadJob downloadedResponse = queue.get(i);
             if (downloadedResponse.isOutdated()) {
-                LOG.info("No usage of download: " + downloadedResponse);
+                downloadedResponse.discard();
                 continue;
             }
             if (downloadedResponse.urlWithOnlyHashChange_ != null) {
@@ -2254,7 +2389,8 @@ public class WebClient implements Serializable {
                     final WebWindow win = openTargetWindow(downloadedResponse.requestingWindow_,
                             downloadedResponse.target_, "_self");
                     final Page pageBeforeLoad = win.getEnclosedPage();
-                    loadWebResponseInto(downloadedResponse.response_, win);
+                    final WebResponse response = downloadedResponse.response_.getWebResponse();
+                    loadWebResponseInto(response, win);
 
                     // start execution here.
                     if (scriptEngine_ != null) {
@@ -2262,14 +2398,15 @@ public class WebClient implements Serializable {
                     }
 
                     // check and report problems if needed
-                    throwFailingHttpStatusCodeExceptionIfNecessary(downloadedResponse.response_);
+                    throwFailingHttpStatusCodeExceptionIfNecessary(response);
 
                     if (pageBeforeLoad != win.getEnclosedPage()) {
                         updatedWindows.add(win);
                     }
                 }
                 else {
-                    LOG.info("No usage of download: " + downloadedResponse);
+                    // superseded by a more recent download in the same window
+                    downloadedResponse.discard();
                 }
             }
         }
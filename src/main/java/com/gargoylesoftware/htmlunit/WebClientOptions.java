@@ -14,6 +14,7 @@
  */
 package com.gargoylesoftware.htmlunit;
 
+import java.io.File;
 import java.io.Serializable;
 import java.net.URL;
 
@@ -42,6 +43,21 @@ public class WebClientOptions implements Serializable {
     private boolean activeXNative_;
     private String homePage_ = "http://htmlunit.sf.net/";
     private ProxyConfig proxyConfig_;
+    private boolean decodeContentOnDownload_;
+    private int maxInMemory_ = HttpWebConnection.MAX_IN_MEMORY;
+    private int maxConnectionsPerHost_ = 6;
+    private int maxConnections_ = 20;
+    private long connectionIdleTimeout_;
+    private boolean keepAlive_ = true;
+    private long keepAliveTimeout_ = -1;
+    private boolean tcpNoDelay_ = true;
+    private int socketBufferSize_ = 8 * 1024;
+    private boolean prefetchResources_;
+    private boolean loadResponsesAsynchronously_;
+    private boolean useSharedJavaScriptExecutor_;
+    private boolean useVirtualTime_;
+    private int javaScriptOptimizationLevel_ = -1;
+    private File storageDirectory_;
 
     private boolean useInsecureSSL_ = false; // default is secure SSL
 
@@ -338,4 +354,294 @@ public class WebClientOptions implements Serializable {
         WebAssert.notNull("proxyConfig", proxyConfig);
         proxyConfig_ = proxyConfig;
     }
+
+    /**
+     * Sets whether the content of the responses should be decoded according to their <tt>Content-Encoding</tt>
+     * (gzip or deflate) while being downloaded rather than each time it is read. This avoids decompressing
+     * the same content several times (for instance for encoding detection and for parsing) at the price of
+     * keeping the decompressed content. Default is <code>false</code>.
+     * @param decodeContentOnDownload whether to decode the content while downloading it
+     */
+    public void setDecodeContentOnDownload(final boolean decodeContentOnDownload) {
+        decodeContentOnDownload_ = decodeContentOnDownload;
+    }
+
+    /**
+     * Indicates if the content of the responses is decoded while being downloaded.
+     * @return <code>true</code> if the content is decoded while being downloaded. Default is <code>false</code>.
+     */
+    public boolean isDecodeContentOnDownload() {
+        return decodeContentOnDownload_;
+    }
+
+    /**
+     * Sets the maximal number of bytes of a response body kept in memory. Bigger bodies are saved
+     * in temporary files, which are deleted when the corresponding page is unloaded or when the
+     * response is removed from the cache. Default is 500 KB.
+     * @param maxInMemory the maximal number of bytes kept in memory (must be &gt;= 0)
+     */
+    public void setMaxInMemory(final int maxInMemory) {
+        if (maxInMemory < 0) {
+            throw new IllegalArgumentException("Illegal value for maxInMemory: " + maxInMemory);
+        }
+        maxInMemory_ = maxInMemory;
+    }
+
+    /**
+     * Returns the maximal number of bytes of a response body kept in memory.
+     * @return the maximal number of bytes kept in memory
+     */
+    public int getMaxInMemory() {
+        return maxInMemory_;
+    }
+
+    /**
+     * Sets the maximal number of simultaneous connections to the same host. Default is <tt>6</tt>,
+     * like in current browsers.
+     * @param maxConnectionsPerHost the maximal number of connections per host (must be &gt; 0)
+     */
+    public void setMaxConnectionsPerHost(final int maxConnectionsPerHost) {
+        if (maxConnectionsPerHost <= 0) {
+            throw new IllegalArgumentException("Illegal value for maxConnectionsPerHost: " + maxConnectionsPerHost);
+        }
+        maxConnectionsPerHost_ = maxConnectionsPerHost;
+    }
+
+    /**
+     * Returns the maximal number of simultaneous connections to the same host.
+     * @return the maximal number of connections per host
+     */
+    public int getMaxConnectionsPerHost() {
+        return maxConnectionsPerHost_;
+    }
+
+    /**
+     * Sets the maximal number of simultaneous connections, all hosts together. Default is <tt>20</tt>.
+     * @param maxConnections the maximal number of connections (must be &gt; 0)
+     */
+    public void setMaxConnections(final int maxConnections) {
+        if (maxConnections <= 0) {
+            throw new IllegalArgumentException("Illegal value for maxConnections: " + maxConnections);
+        }
+        maxConnections_ = maxConnections;
+    }
+
+    /**
+     * Returns the maximal number of simultaneous connections, all hosts together.
+     * @return the maximal number of connections
+     */
+    public int getMaxConnections() {
+        return maxConnections_;
+    }
+
+    /**
+     * Sets the time in milliseconds after which an unused pooled connection is closed.
+     * Default is <tt>0</tt>, meaning that idle connections are never closed by HtmlUnit.
+     * @param connectionIdleTimeout the idle timeout in milliseconds
+     */
+    public void setConnectionIdleTimeout(final long connectionIdleTimeout) {
+        connectionIdleTimeout_ = connectionIdleTimeout;
+    }
+
+    /**
+     * Returns the time in milliseconds after which an unused pooled connection is closed.
+     * @return the idle timeout in milliseconds
+     */
+    public long getConnectionIdleTimeout() {
+        return connectionIdleTimeout_;
+    }
+
+    /**
+     * Sets whether connections are kept alive to be reused by following requests. Default is <code>true</code>.
+     * @param keepAlive whether to keep connections alive
+     */
+    public void setKeepAlive(final boolean keepAlive) {
+        keepAlive_ = keepAlive;
+    }
+
+    /**
+     * Indicates if connections are kept alive to be reused by following requests.
+     * @return whether connections are kept alive
+     */
+    public boolean isKeepAlive() {
+        return keepAlive_;
+    }
+
+    /**
+     * Sets how long in milliseconds a connection may be kept alive when the server doesn't specify it
+     * in a <tt>Keep-Alive</tt> header. Default is <tt>-1</tt>, meaning indefinitely.
+     * @param keepAliveTimeout the keep alive timeout in milliseconds
+     */
+    public void setKeepAliveTimeout(final long keepAliveTimeout) {
+        keepAliveTimeout_ = keepAliveTimeout;
+    }
+
+    /**
+     * Returns how long in milliseconds a connection may be kept alive when the server doesn't specify it.
+     * @return the keep alive timeout in milliseconds
+     */
+    public long getKeepAliveTimeout() {
+        return keepAliveTimeout_;
+    }
+
+    /**
+     * Sets whether Nagle's algorithm is disabled on the sockets (TCP_NODELAY). Default is <code>true</code>.
+     * @param tcpNoDelay whether to disable Nagle's algorithm
+     */
+    public void setTcpNoDelay(final boolean tcpNoDelay) {
+        tcpNoDelay_ = tcpNoDelay;
+    }
+
+    /**
+     * Indicates if Nagle's algorithm is disabled on the sockets (TCP_NODELAY).
+     * @return whether Nagle's algorithm is disabled
+     */
+    public boolean isTcpNoDelay() {
+        return tcpNoDelay_;
+    }
+
+    /**
+     * Sets the size in bytes of the buffers used to read from and write to the sockets. Default is 8 KB.
+     * @param socketBufferSize the socket buffer size (must be &gt; 0)
+     */
+    public void setSocketBufferSize(final int socketBufferSize) {
+        if (socketBufferSize <= 0) {
+            throw new IllegalArgumentException("Illegal value for socketBufferSize: " + socketBufferSize);
+        }
+        socketBufferSize_ = socketBufferSize;
+    }
+
+    /**
+     * Returns the size in bytes of the buffers used to read from and write to the sockets.
+     * @return the socket buffer size
+     */
+    public int getSocketBufferSize() {
+        return socketBufferSize_;
+    }
+
+    /**
+     * Enables/disables the prefetching of the external scripts and stylesheets referenced by a page.
+     * When enabled, the page source is scanned before being parsed and the resources are downloaded
+     * concurrently (at most {@link #getMaxConnections()} at a time); scripts are still executed
+     * in document order when the parser reaches them. As the downloads run concurrently, the
+     * {@link WebConnection} has to be thread-safe. By default, this is disabled.
+     * @param enabled <tt>true</tt> to enable the prefetching
+     */
+    public void setPrefetchResources(final boolean enabled) {
+        prefetchResources_ = enabled;
+    }
+
+    /**
+     * Returns <tt>true</tt> if the external scripts and stylesheets referenced by a page are prefetched.
+     * @return <tt>true</tt> if the resources are prefetched
+     */
+    public boolean isPrefetchResources() {
+        return prefetchResources_;
+    }
+
+    /**
+     * Enables/disables the asynchronous loading of the responses of the asynchronous XMLHttpRequests
+     * and of the pages loaded through {@link WebClient#download}: the downloads start immediately and run
+     * concurrently on a pool of at most {@link #getMaxConnections()} threads, instead of being performed
+     * one after the other by the threads handling them. As {@link WebConnection#getResponse(WebRequest)} is
+     * then called from several threads at the same time, the {@link WebConnection} has to be thread-safe,
+     * which is the case of {@link HttpWebConnection}. By default, this is disabled.
+     * @param enabled <tt>true</tt> to load the responses asynchronously
+     */
+    public void setLoadResponsesAsynchronously(final boolean enabled) {
+        loadResponsesAsynchronously_ = enabled;
+    }
+
+    /**
+     * Returns <tt>true</tt> if the responses of asynchronous requests are loaded concurrently.
+     * @return <tt>true</tt> if the responses are loaded asynchronously
+     */
+    public boolean isLoadResponsesAsynchronously() {
+        return loadResponsesAsynchronously_;
+    }
+
+    /**
+     * Enables/disables the execution of the background JavaScript jobs (timers, asynchronous XMLHttpRequest
+     * callbacks, ...) on a small pool of threads shared by all the clients using this option, instead of
+     * a dedicated thread per client. This is useful when many clients run concurrently. The jobs of a
+     * client are never executed concurrently. This has to be set before the first page is loaded.
+     * By default, this is disabled.
+     * @param enabled <tt>true</tt> to use the shared executor
+     */
+    public void setUseSharedJavaScriptExecutor(final boolean enabled) {
+        useSharedJavaScriptExecutor_ = enabled;
+    }
+
+    /**
+     * Returns <tt>true</tt> if the background JavaScript jobs are executed on a shared pool of threads.
+     * @return <tt>true</tt> if the shared executor is used
+     */
+    public boolean isUseSharedJavaScriptExecutor() {
+        return useSharedJavaScriptExecutor_;
+    }
+
+    /**
+     * Enables/disables virtual time. With virtual time, {@link WebClient#waitForBackgroundJavaScript(long)}
+     * and {@link WebClient#waitForBackgroundJavaScriptStartingBefore(long)} don't wait for the timers
+     * (<tt>setTimeout</tt>, <tt>setInterval</tt>) to be due: they move the {@link WebClient#getClock() clock}
+     * of the client forward to the target time of each job, which is then executed immediately. The JavaScript
+     * <tt>Date</tt> objects and the {@link WaitingRefreshHandler} follow this clock. This has to be set before
+     * the first page is loaded. By default, this is disabled.
+     * @param enabled <tt>true</tt> to use virtual time
+     */
+    public void setUseVirtualTime(final boolean enabled) {
+        useVirtualTime_ = enabled;
+    }
+
+    /**
+     * Returns <tt>true</tt> if virtual time is used.
+     * @return <tt>true</tt> if virtual time is used
+     */
+    public boolean isUseVirtualTime() {
+        return useVirtualTime_;
+    }
+
+    /**
+     * Sets the optimization level of the JavaScript engine. With the default level <tt>-1</tt>, the scripts are
+     * interpreted. With a level from <tt>0</tt> to <tt>9</tt>, they are compiled to JVM bytecode, which runs
+     * long scripts much faster but makes the compilation of each script more expensive. The
+     * {@link WebClient#setJavaScriptTimeout(long) JavaScript timeout} is honored in both modes: the compiled
+     * code reports its progress to the engine at each function call and loop iteration.
+     * Compiled mode is ignored if a {@link com.gargoylesoftware.htmlunit.javascript.HtmlUnitContextFactory#setDebugger
+     * debugger} is used.
+     * @param level the optimization level, from <tt>-1</tt> to <tt>9</tt>
+     */
+    public void setJavaScriptOptimizationLevel(final int level) {
+        if (level < -1 || level > 9) {
+            throw new IllegalArgumentException("Invalid optimization level: " + level);
+        }
+        javaScriptOptimizationLevel_ = level;
+    }
+
+    /**
+     * Returns the optimization level of the JavaScript engine; <tt>-1</tt> (the default) means interpreted mode.
+     * @return the optimization level
+     */
+    public int getJavaScriptOptimizationLevel() {
+        return javaScriptOptimizationLevel_;
+    }
+
+    /**
+     * Sets the directory in which the global and local storages (<tt>globalStorage</tt>, <tt>localStorage</tt>)
+     * are persisted, one file per origin. The files are read lazily and written in the background shortly after
+     * the modifications. If <tt>null</tt> (the default), the storages are kept in memory only and are shared
+     * by all the clients without directory.
+     * @param directory the directory, <tt>null</tt> to disable the persistence
+     */
+    public void setStorageDirectory(final File directory) {
+        storageDirectory_ = directory;
+    }
+
+    /**
+     * Returns the directory in which the global and local storages are persisted.
+     * @return the directory, <tt>null</tt> if the storages are not persisted
+     */
+    public File getStorageDirectory() {
+        return storageDirectory_;
+    }
 }
@@ -20,6 +20,8 @@ import java.io.Serializable;
 import java.net.URL;
 import java.nio.charset.Charset;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.logging.Log;
@@ -48,6 +50,10 @@ public class WebResponse implements Serializable {
     private long loadTime_;
     private WebResponseData responseData_;
     private WebRequest request_;
+    /** The number of holders of this response: the content is cleaned up when the last one releases it. */
+    private final AtomicInteger holders_ = new AtomicInteger(1);
+    /** Whether the creator of this response has released it, see {@link #cleanUp()}. */
+    private final AtomicBoolean cleanedUp_ = new AtomicBoolean();
 
     /**
      * Constructs with all data.
@@ -231,6 +237,17 @@ public class WebResponse implements Serializable {
         return responseData_.getInputStream();
     }
 
+    /**
+     * Returns the length of the content as stored for this response, i.e. before any content decoding.
+     * @return the content length, or <tt>0</tt> if unknown
+     */
+    public long getContentLength() {
+        if (responseData_ == null) {
+            return 0;
+        }
+        return responseData_.getContentLength();
+    }
+
     /**
      * Returns the time it took to load this web response, in milliseconds.
      * @return the time it took to load this web response, in milliseconds
@@ -240,11 +257,40 @@ public class WebResponse implements Serializable {
     }
 
     /**
-     * Clean up the response data.
+     * <span style="color:red">INTERNAL API - SUBJECT TO CHANGE AT ANY TIME - USE AT YOUR OWN RISK.</span><br/>
+     * Registers an additional holder of this response, like the {@link Cache}. Each successful call
+     * has to be balanced by exactly one call to {@link #release()} once the holder doesn't use the response anymore.
+     * @return <tt>false</tt> if the response has already been released by its last holder
      */
-    public void cleanUp() {
-        if (responseData_ != null) {
+    public boolean retain() {
+        int holders;
+        do {
+            holders = holders_.get();
+            if (holders <= 0) {
+                return false;
+            }
+        } while (!holders_.compareAndSet(holders, holders + 1));
+        return true;
+    }
+
+    /**
+     * <span style="color:red">INTERNAL API - SUBJECT TO CHANGE AT ANY TIME - USE AT YOUR OWN RISK.</span><br/>
+     * Releases this response for a holder registered with {@link #retain()}: the response data is cleaned up
+     * once all the holders, including the creator of the response, have released it.
+     */
+    public void release() {
+        if (holders_.decrementAndGet() == 0 && responseData_ != null) {
             responseData_.cleanUp();
         }
     }
+
+    /**
+     * Clean up the response data, once the other holders of the response, like the {@link Cache},
+     * have released it as well. Calling this method more than once has no further effect.
+     */
+    public void cleanUp() {
+        if (cleanedUp_.compareAndSet(false, true)) {
+            release();
+        }
+    }
 }
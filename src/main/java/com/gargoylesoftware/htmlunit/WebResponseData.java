@@ -83,23 +83,46 @@ public class WebResponseData implements Serializable {
         downloadedContent_ = responseBody;
     }
 
-    private InputStream getStream(InputStream stream, final List<NameValuePair> headers) throws IOException {
-        if (stream == null) {
-            return null;
-        }
-        String encoding = null;
+    /**
+     * Returns the value of the <tt>Content-Encoding</tt> header.
+     * @param headers the response headers
+     * @return the content encoding or <code>null</code>
+     */
+    static String getContentEncoding(final List<NameValuePair> headers) {
         for (final NameValuePair header : headers) {
             final String headerName = header.getName().trim();
             if ("content-encoding".equalsIgnoreCase(headerName)) {
-                encoding = header.getValue();
-                break;
+                return header.getValue();
             }
         }
+        return null;
+    }
+
+    /**
+     * Indicates if the specified content encoding is supported by {@link #decode(InputStream, String)}.
+     * @param encoding the content encoding
+     * @return <code>true</code> if the content has to be decoded
+     */
+    static boolean isSupportedContentEncoding(final String encoding) {
+        return StringUtils.contains(encoding, "gzip") || StringUtils.contains(encoding, "deflate");
+    }
+
+    /**
+     * Wraps the stream to decode it according to the specified content encoding.
+     * @param stream the encoded stream
+     * @param encoding the content encoding, may be <code>null</code>
+     * @return the decoding stream
+     * @throws IOException in case of problem reading the stream
+     */
+    static InputStream decode(final InputStream stream, final String encoding) throws IOException {
+        if (stream == null) {
+            return null;
+        }
         if (encoding != null && StringUtils.contains(encoding, "gzip")) {
-            stream = new GZIPInputStream(stream);
+            return new GZIPInputStream(stream);
         }
         else if (encoding != null && StringUtils.contains(encoding, "deflate")) {
-            stream = new InflaterInputStream(stream);
+            return new InflaterInputStream(stream);
         }
         return stream;
     }
@@ -124,13 +147,47 @@ public class WebResponseData implements Serializable {
      */
     public InputStream getInputStream() {
         try {
-            return getStream(downloadedContent_.getInputStream(), getResponseHeaders());
+            final InputStream stream = downloadedContent_.getInputStream();
+            if (downloadedContent_ instanceof DownloadedContent.Decoded) {
+                return stream;
+            }
+            return decode(stream, getContentEncoding(getResponseHeaders()));
         }
         catch (final IOException e) {
             throw new RuntimeException(e); // in fact getInputStream should probably have throw declaration
         }
     }
 
+    /**
+     * Returns the length of the downloaded content, as stored (i.e. before any content decoding).
+     * For other implementations of {@link DownloadedContent} than the ones of HtmlUnit, the length
+     * is taken from the <tt>Content-Length</tt> header.
+     * @return the content length, or <tt>0</tt> if unknown
+     */
+    public long getContentLength() {
+        DownloadedContent content = downloadedContent_;
+        if (content instanceof DownloadedContent.Decoded) {
+            content = ((DownloadedContent.Decoded) content).getContent();
+        }
+        if (content instanceof DownloadedContent.InMemory) {
+            return ((DownloadedContent.InMemory) content).length();
+        }
+        if (content instanceof DownloadedContent.OnFile) {
+            return ((DownloadedContent.OnFile) content).length();
+        }
+        for (final NameValuePair header : responseHeaders_) {
+            if ("Content-Length".equalsIgnoreCase(header.getName())) {
+                try {
+                    return Math.max(0, Long.parseLong(header.getValue().trim()));
+                }
+                catch (final NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 0;
+    }
+
     /**
      * @return response headers
      */
@@ -14,6 +14,8 @@
  */
 package com.gargoylesoftware.htmlunit;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import com.gargoylesoftware.htmlunit.util.WebResponseWrapper;
 
 /**
@@ -25,18 +27,33 @@ import com.gargoylesoftware.htmlunit.util.WebResponseWrapper;
  */
 class WebResponseFromCache extends WebResponseWrapper {
 
+    private final WebResponse cachedResponse_;
     private final WebRequest request_;
+    private final AtomicBoolean cleanedUp_ = new AtomicBoolean();
 
     /**
      * Wraps the provide response for the given request
-     * @param cachedResponse the response from cache
+     * @param cachedResponse the response from cache, which has been retained for this wrapper
+     * (see {@link WebResponse#retain()})
      * @param currentRequest the new request
      */
     WebResponseFromCache(final WebResponse cachedResponse, final WebRequest currentRequest) {
         super(cachedResponse);
+        cachedResponse_ = cachedResponse;
         request_ = currentRequest;
     }
 
+    /**
+     * Releases the cached response, whose content is cleaned up only when neither the cache nor
+     * another page uses it anymore.
+     */
+    @Override
+    public void cleanUp() {
+        if (cleanedUp_.compareAndSet(false, true)) {
+            cachedResponse_.release();
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2002-2012 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * The pending result of {@link WebClient#loadWebResponseAsync(WebRequest)}.
+ *
+ * @version $Revision$
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public class WebResponseFuture extends FutureTask<WebResponse> {
+
+    private final WebRequest request_;
+
+    /**
+     * Creates a new instance.
+     * @param webClient the client loading the response
+     * @param request the request
+     */
+    WebResponseFuture(final WebClient webClient, final WebRequest request) {
+        super(new Callable<WebResponse>() {
+            public WebResponse call() throws IOException {
+                return webClient.loadWebResponse(request);
+            }
+        });
+        request_ = request;
+    }
+
+    /**
+     * Returns the request whose response is loaded.
+     * @return the request
+     */
+    public WebRequest getWebRequest() {
+        return request_;
+    }
+
+    /**
+     * Cleans up the response if it has been loaded after the cancellation of this download,
+     * as nobody will ever get it.
+     * @param response the loaded response
+     */
+    @Override
+    protected void set(final WebResponse response) {
+        super.set(response);
+        if (isCancelled() && response != null) {
+            response.cleanUp();
+        }
+    }
+
+    /**
+     * Waits if necessary for the response to be loaded and returns it.
+     * Contrary to {@link #get()}, the problems are reported as they would have been by
+     * {@link WebClient#loadWebResponse(WebRequest)}.
+     * @return the response
+     * @throws IOException if an IO problem occurred or if the waiting thread has been interrupted
+     * @throws java.util.concurrent.CancellationException if the download has been cancelled
+     */
+    public WebResponse getWebResponse() throws IOException {
+        try {
+            return get();
+        }
+        catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancel(true);
+            throw new InterruptedIOException("Interrupted while loading " + request_.getUrl());
+        }
+        catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    /**
+     * Indicates that the response won't be used: cancels the download if it is still running,
+     * or cleans up the loaded response otherwise.
+     */
+    public void discard() {
+        if (!cancel(true) && !isCancelled()) {
+            try {
+                get().cleanUp();
+            }
+            catch (final ExecutionException e) {
+                // nothing has been loaded
+            }
+            catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -102,6 +102,7 @@ public class DomAttr extends DomNamespaceNode implements Attr {
     public void setValue(final String value) {
         value_ = value;
         specified_ = true;
+        fireNodeModified();
     }
 
     /**
@@ -57,6 +57,7 @@ public abstract class DomCharacterData extends DomNode implements CharacterData
      */
     public void setData(final String data) {
         data_ = data;
+        fireNodeModified();
     }
 
     /**
@@ -66,6 +67,7 @@ public abstract class DomCharacterData extends DomNode implements CharacterData
     @Override
     public void setNodeValue(final String newValue) {
         data_ = newValue;
+        fireNodeModified();
     }
 
     /**
@@ -74,6 +76,7 @@ public abstract class DomCharacterData extends DomNode implements CharacterData
     @Override
     public void setTextContent(final String textContent) {
         data_ = textContent;
+        fireNodeModified();
     }
 
     /**
@@ -90,6 +93,7 @@ public abstract class DomCharacterData extends DomNode implements CharacterData
      */
     public void appendData(final String newData) {
         data_ += newData;
+        fireNodeModified();
     }
 
     /**
@@ -109,6 +113,7 @@ public abstract class DomCharacterData extends DomNode implements CharacterData
         else {
             data_ = "";
         }
+        fireNodeModified();
     }
 
     /**
@@ -118,6 +123,7 @@ public abstract class DomCharacterData extends DomNode implements CharacterData
      */
     public void insertData(final int offset, final String arg) {
         data_ = new StringBuilder(data_).insert(offset, arg).toString();
+        fireNodeModified();
     }
 
     /**
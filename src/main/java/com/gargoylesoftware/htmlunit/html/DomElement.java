@@ -16,12 +16,10 @@ package com.gargoylesoftware.htmlunit.html;
 
 import java.io.PrintWriter;
 import java.io.Serializable;
-import java.util.ArrayList;
-import java.util.Collection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.HashMap;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
@@ -54,8 +52,20 @@ public class DomElement extends DomNamespaceNode implements Element, ElementTrav
     /** The map holding the attributes, keyed by name. */
     private NamedAttrNodeMapImpl attributes_ = new NamedAttrNodeMapImpl(this, isAttributeCaseSensitive());
 
-    /** The map holding the namespaces, keyed by URI. */
-    private Map<String, String> namespaces_ = new HashMap<String, String>();
+    /** The map holding the namespaces, keyed by URI; created when the first namespace is declared. */
+    private Map<String, String> namespaces_;
+
+    /** The line number in the source page where the element starts. */
+    private int startLineNumber_ = -1;
+
+    /** The column number in the source page where the element starts. */
+    private int startColumnNumber_ = -1;
+
+    /** The line number in the source page where the element ends. */
+    private int endLineNumber_ = -1;
+
+    /** The column number in the source page where the element ends. */
+    private int endColumnNumber_ = -1;
 
     /**
      * Creates an instance of a DOM element that can have a namespace.
@@ -75,7 +85,7 @@ public class DomElement extends DomNamespaceNode implements Element, ElementTrav
                 entry.setParentNode(this);
                 final String attrNamespaceURI = entry.getNamespaceURI();
                 if (attrNamespaceURI != null) {
-                    namespaces_.put(attrNamespaceURI, entry.getPrefix());
+                    namespaces().put(attrNamespaceURI, entry.getPrefix());
                 }
             }
         }
@@ -103,9 +113,62 @@ public class DomElement extends DomNamespaceNode implements Element, ElementTrav
      */
     //TODO: must be removed.
     protected Map<String, String> namespaces() {
+        if (namespaces_ == null) {
+            namespaces_ = new HashMap<String, String>();
+        }
         return namespaces_;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    void setStartLocation(final int startLineNumber, final int startColumnNumber) {
+        startLineNumber_ = startLineNumber;
+        startColumnNumber_ = startColumnNumber;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    void setEndLocation(final int endLineNumber, final int endColumnNumber) {
+        endLineNumber_ = endLineNumber;
+        endColumnNumber_ = endColumnNumber;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getStartLineNumber() {
+        return startLineNumber_;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getStartColumnNumber() {
+        return startColumnNumber_;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getEndLineNumber() {
+        return endLineNumber_;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getEndColumnNumber() {
+        return endColumnNumber_;
+    }
+
     /**
      * Returns the tag name of this element.
      * @return the tag name of this element
@@ -191,7 +254,7 @@ public class DomElement extends DomNamespaceNode implements Element, ElementTrav
     String getQualifiedName(final String namespaceURI, final String localName) {
         final String qualifiedName;
         if (namespaceURI != null) {
-            final String prefix = namespaces().get(namespaceURI);
+            final String prefix = namespaces_ == null ? null : namespaces_.get(namespaceURI);
             if (prefix != null) {
                 qualifiedName = prefix + ':' + localName;
             }
@@ -572,25 +635,32 @@ public class DomElement extends DomNamespaceNode implements Element, ElementTrav
 
 /**
  * The {@link NamedNodeMap} to store the node attributes.
+ *
+ * <p>Elements have only a few attributes, therefore they are stored in two parallel arrays in their
+ * insertion order rather than in a hash map: this is far more compact and a linear search is as fast
+ * as hashing for such sizes. The names are canonicalized, so that the elements share them.</p>
  */
-class NamedAttrNodeMapImpl implements Map<String, DomAttr>, NamedNodeMap, Serializable {
+class NamedAttrNodeMapImpl extends AbstractMap<String, DomAttr> implements NamedNodeMap, Serializable {
     public static final NamedAttrNodeMapImpl EMPTY_MAP = new NamedAttrNodeMapImpl();
 
-    private final Map<String, DomAttr> map_;
-    private final List<String> attrPositions_ = new ArrayList<String>();
+    private static final String[] NO_NAMES = new String[0];
+    private static final DomAttr[] NO_ATTRIBUTES = new DomAttr[0];
+
+    private String[] names_ = NO_NAMES;
+    private DomAttr[] attributes_ = NO_ATTRIBUTES;
+    private int size_;
     private final DomElement domNode_;
     private final boolean caseSensitive_;
+    private transient Set<Map.Entry<String, DomAttr>> entrySet_;
 
     private NamedAttrNodeMapImpl() {
         super();
-        map_ = new LinkedHashMap<String, DomAttr>();
         domNode_ = null;
         caseSensitive_ = true;
     }
 
     NamedAttrNodeMapImpl(final DomElement domNode, final boolean caseSensitive) {
         super();
-        map_ = new LinkedHashMap<String, DomAttr>();
         if (domNode == null) {
             throw new IllegalArgumentException("Provided domNode can't be null.");
         }
@@ -625,6 +695,36 @@ class NamedAttrNodeMapImpl implements Map<String, DomAttr>, NamedNodeMap, Serial
         return name.toLowerCase();
     }
 
+    private int indexOf(final String name) {
+        for (int i = 0; i < size_; i++) {
+            final String n = names_[i];
+            if (n == name || n.equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void modified() {
+        if (domNode_ != null) {
+            domNode_.fireNodeModified();
+        }
+    }
+
+    private DomAttr removeAt(final int index) {
+        modified();
+        final DomAttr removed = attributes_[index];
+        final int moved = size_ - index - 1;
+        if (moved > 0) {
+            System.arraycopy(names_, index + 1, names_, index, moved);
+            System.arraycopy(attributes_, index + 1, attributes_, index, moved);
+        }
+        size_--;
+        names_[size_] = null;
+        attributes_[size_] = null;
+        return removed;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -639,10 +739,10 @@ class NamedAttrNodeMapImpl implements Map<String, DomAttr>, NamedNodeMap, Serial
      * {@inheritDoc}
      */
     public Node item(final int index) {
-        if (index < 0 || index >= attrPositions_.size()) {
+        if (index < 0 || index >= size_) {
             return null;
         }
-        return map_.get(attrPositions_.get(index));
+        return attributes_[index];
     }
 
     /**
@@ -679,37 +779,61 @@ class NamedAttrNodeMapImpl implements Map<String, DomAttr>, NamedNodeMap, Serial
     /**
      * {@inheritDoc}
      */
+    @Override
     public DomAttr put(final String key, final DomAttr value) {
         final String name = fixName(key);
-        if (!map_.containsKey(name)) {
-            attrPositions_.add(name);
-        }
-        return map_.put(name, value);
+        final int index = indexOf(name);
+        modified();
+        if (index != -1) {
+            final DomAttr previous = attributes_[index];
+            attributes_[index] = value;
+            return previous;
+        }
+        if (size_ == names_.length) {
+            final int capacity = Math.max(4, size_ * 2);
+            final String[] names = new String[capacity];
+            final DomAttr[] attributes = new DomAttr[capacity];
+            System.arraycopy(names_, 0, names, 0, size_);
+            System.arraycopy(attributes_, 0, attributes, 0, size_);
+            names_ = names;
+            attributes_ = attributes;
+        }
+        names_[size_] = StringUtils.canonicalize(name);
+        attributes_[size_] = value;
+        size_++;
+        return null;
     }
 
     /**
      * {@inheritDoc}
      */
+    @Override
     public DomAttr remove(final Object key) {
         if (!(key instanceof String)) {
             return null;
         }
-        final String name = fixName((String) key);
-        attrPositions_.remove(name);
-        return map_.remove(name);
+        final int index = indexOf(fixName((String) key));
+        if (index == -1) {
+            return null;
+        }
+        return removeAt(index);
     }
 
     /**
      * {@inheritDoc}
      */
+    @Override
     public void clear() {
-        attrPositions_.clear();
-        map_.clear();
+        modified();
+        names_ = NO_NAMES;
+        attributes_ = NO_ATTRIBUTES;
+        size_ = 0;
     }
 
     /**
      * {@inheritDoc}
      */
+    @Override
     public void putAll(final Map<? extends String, ? extends DomAttr> t) {
         // add one after the other to save the positions
         for (final Map.Entry<? extends String, ? extends DomAttr> entry : t.entrySet()) {
@@ -720,64 +844,112 @@ class NamedAttrNodeMapImpl implements Map<String, DomAttr>, NamedNodeMap, Serial
     /**
      * {@inheritDoc}
      */
+    @Override
     public boolean containsKey(final Object key) {
         if (!(key instanceof String)) {
             return false;
         }
-        final String name = fixName((String) key);
-        return map_.containsKey(name);
+        return indexOf(fixName((String) key)) != -1;
     }
 
     /**
      * {@inheritDoc}
      */
+    @Override
     public DomAttr get(final Object key) {
         if (!(key instanceof String)) {
             return null;
         }
-        final String name = fixName((String) key);
-        return map_.get(name);
+        final int index = indexOf(fixName((String) key));
+        if (index == -1) {
+            return null;
+        }
+        return attributes_[index];
     }
 
     /**
      * {@inheritDoc}
      */
+    @Override
     public boolean containsValue(final Object value) {
-        return map_.containsValue(value);
+        for (int i = 0; i < size_; i++) {
+            if (attributes_[i] == value || (value != null && value.equals(attributes_[i]))) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
      * {@inheritDoc}
      */
-    public Set<java.util.Map.Entry<String, DomAttr>> entrySet() {
-        return map_.entrySet();
-    }
+    @Override
+    public Set<Map.Entry<String, DomAttr>> entrySet() {
+        if (entrySet_ == null) {
+            entrySet_ = new AbstractSet<Map.Entry<String, DomAttr>>() {
+                @Override
+                public Iterator<Map.Entry<String, DomAttr>> iterator() {
+                    return new EntryIterator();
+                }
 
-    /**
-     * {@inheritDoc}
-     */
-    public boolean isEmpty() {
-        return map_.isEmpty();
+                @Override
+                public int size() {
+                    return size_;
+                }
+            };
+        }
+        return entrySet_;
     }
 
     /**
      * {@inheritDoc}
      */
-    public Set<String> keySet() {
-        return map_.keySet();
+    @Override
+    public boolean isEmpty() {
+        return size_ == 0;
     }
 
     /**
      * {@inheritDoc}
      */
+    @Override
     public int size() {
-        return map_.size();
+        return size_;
     }
 
     /**
-     * {@inheritDoc}
+     * Iterates over the attributes in their insertion order.
      */
-    public Collection<DomAttr> values() {
-        return map_.values();
+    private final class EntryIterator implements Iterator<Map.Entry<String, DomAttr>> {
+        private int next_;
+        private int last_ = -1;
+
+        public boolean hasNext() {
+            return next_ < size_;
+        }
+
+        public Map.Entry<String, DomAttr> next() {
+            if (next_ >= size_) {
+                throw new NoSuchElementException();
+            }
+            last_ = next_++;
+            final int index = last_;
+            return new AbstractMap.SimpleEntry<String, DomAttr>(names_[index], attributes_[index]) {
+                @Override
+                public DomAttr setValue(final DomAttr value) {
+                    attributes_[index] = value;
+                    return super.setValue(value);
+                }
+            };
+        }
+
+        public void remove() {
+            if (last_ == -1) {
+                throw new IllegalStateException();
+            }
+            removeAt(last_);
+            next_ = last_;
+            last_ = -1;
+        }
     }
 }
@@ -20,17 +20,21 @@ import java.io.Serializable;
 import java.io.StringReader;
 import java.io.StringWriter;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.Iterator;
-import java.util.LinkedHashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import net.sourceforge.htmlunit.corejs.javascript.ScriptableObject;
 
+import org.w3c.css.sac.AttributeCondition;
 import org.w3c.css.sac.CSSException;
 import org.w3c.css.sac.CSSParseException;
+import org.w3c.css.sac.Condition;
+import org.w3c.css.sac.ConditionalSelector;
 import org.w3c.css.sac.ErrorHandler;
 import org.w3c.css.sac.InputSource;
 import org.w3c.css.sac.Selector;
@@ -55,6 +59,7 @@ import com.gargoylesoftware.htmlunit.javascript.host.css.CSSStyleSheet;
 import com.gargoylesoftware.htmlunit.javascript.host.html.HTMLElement;
 import com.steadystate.css.parser.CSSOMParser;
 import com.steadystate.css.parser.SACParserCSS21;
+import com.steadystate.css.parser.SelectorListImpl;
 
 /**
  * Base class for nodes in the HTML DOM tree. This class is modeled after the
@@ -102,6 +107,21 @@ public abstract class DomNode implements Cloneable, Serializable, Node {
     /** A ready state constant for IE (state 5). */
     public static final String READY_STATE_COMPLETE = "complete";
 
+    /** Lock used to create the listeners of the nodes, rather than a lock object per node. */
+    private static final Object DOM_LISTENERS_LOCK = new Object();
+
+    private static final int MAX_CACHED_SELECTORS = 500;
+    /**
+     * The parsed and validated selectors of {@link #querySelectorAll(String)}, per selector string,
+     * or the {@link CSSException} of the invalid ones; the least recently used are evicted.
+     */
+    private static final Map<String, Object> SELECTORS_CACHE = new LinkedHashMap<String, Object>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, Object> eldest) {
+            return size() > MAX_CACHED_SELECTORS;
+        }
+    };
+
     /** The name of the "element" property. Used when watching property change events. */
     public static final String PROPERTY_ELEMENT = "element";
 
@@ -134,30 +154,10 @@ public abstract class DomNode implements Cloneable, Serializable, Node {
     /** The ready state is is an IE-only value that is available to a large number of elements. */
     private String readyState_;
 
-    /**
-     * The line number in the source page where the DOM node starts.
-     */
-    private int startLineNumber_ = -1;
-
-    /**
-     * The column number in the source page where the DOM node starts.
-     */
-    private int startColumnNumber_ = -1;
-
-    /**
-     * The line number in the source page where the DOM node ends.
-     */
-    private int endLineNumber_ = -1;
-
-    /**
-     * The column number in the source page where the DOM node ends.
-     */
-    private int endColumnNumber_ = -1;
-
     private boolean directlyAttachedToPage_;
 
-    private Collection<DomChangeListener> domListeners_;
-    private final Object domListeners_lock_ = new Serializable() { };
+    /** The listeners, created when the first one is added: most nodes never have any. */
+    private volatile CopyOnWriteArrayList<DomChangeListener> domListeners_;
 
     /**
      * Never call this, used for Serialization.
@@ -178,24 +178,24 @@ public abstract class DomNode implements Cloneable, Serializable, Node {
 
     /**
      * Sets the line and column numbers in the source page where the DOM node starts.
+     * Only the elements keep their location, the other nodes ignore it.
      *
      * @param startLineNumber the line number where the DOM node starts
      * @param startColumnNumber the column number where the DOM node starts
      */
     void setStartLocation(final int startLineNumber, final int startColumnNumber) {
-        startLineNumber_ = startLineNumber;
-        startColumnNumber_ = startColumnNumber;
+        // nothing
     }
 
     /**
      * Sets the line and column numbers in the source page where the DOM node ends.
+     * Only the elements and the pages keep their location, the other nodes ignore it.
      *
      * @param endLineNumber the line number where the DOM node ends
      * @param endColumnNumber the column number where the DOM node ends
      */
     void setEndLocation(final int endLineNumber, final int endColumnNumber) {
-        endLineNumber_ = endLineNumber;
-        endColumnNumber_ = endColumnNumber;
+        // nothing
     }
 
     /**
@@ -203,7 +203,7 @@ public abstract class DomNode implements Cloneable, Serializable, Node {
      * @return the line number in the source page where the DOM node starts
      */
     public int getStartLineNumber() {
-        return startLineNumber_;
+        return -1;
     }
 
     /**
@@ -211,7 +211,7 @@ public abstract class DomNode implements Cloneable, Serializable, Node {
      * @return the column number in the source page where the DOM node starts
      */
     public int getStartColumnNumber() {
-        return startColumnNumber_;
+        return -1;
     }
 
     /**
@@ -220,7 +220,7 @@ public abstract class DomNode implements Cloneable, Serializable, Node {
      * -1 if the end tag has not yet been parsed (during page loading)
      */
     public int getEndLineNumber() {
-        return endLineNumber_;
+        return -1;
     }
 
     /**
@@ -229,7 +229,7 @@ public abstract class DomNode implements Cloneable, Serializable, Node {
      * -1 if the end tag has not yet been parsed (during page loading)
      */
     public int getEndColumnNumber() {
-        return endColumnNumber_;
+        return -1;
     }
 
     /**
@@ -1388,11 +1388,7 @@ public abstract class DomNode implements Cloneable, Serializable, Node {
      */
     @SuppressWarnings("unchecked")
     public <X> X getFirstByXPath(final String xpathExpr) {
-        final List<?> results = getByXPath(xpathExpr);
-        if (results.isEmpty()) {
-            return null;
-        }
-        return (X) results.get(0);
+        return (X) XPathUtils.getFirstByXPath(this, xpathExpr);
     }
 
     /**
@@ -1429,12 +1425,17 @@ public abstract class DomNode implements Cloneable, Serializable, Node {
      */
     public void addDomChangeListener(final DomChangeListener listener) {
         WebAssert.notNull("listener", listener);
-        synchronized (domListeners_lock_) {
-            if (domListeners_ == null) {
-                domListeners_ = new LinkedHashSet<DomChangeListener>();
+        CopyOnWriteArrayList<DomChangeListener> listeners = domListeners_;
+        if (listeners == null) {
+            synchronized (DOM_LISTENERS_LOCK) {
+                listeners = domListeners_;
+                if (listeners == null) {
+                    listeners = new CopyOnWriteArrayList<DomChangeListener>();
+                    domListeners_ = listeners;
+                }
             }
-            domListeners_.add(listener);
         }
+        listeners.addIfAbsent(listener);
     }
 
     /**
@@ -1446,10 +1447,21 @@ public abstract class DomNode implements Cloneable, Serializable, Node {
      */
     public void removeDomChangeListener(final DomChangeListener listener) {
         WebAssert.notNull("listener", listener);
-        synchronized (domListeners_lock_) {
-            if (domListeners_ != null) {
-                domListeners_.remove(listener);
-            }
+        final List<DomChangeListener> listeners = domListeners_;
+        if (listeners != null) {
+            listeners.remove(listener);
+        }
+    }
+
+    /**
+     * Notifies the page of a change of this node which isn't reported through a {@link DomChangeEvent}
+     * (an attribute added, replaced or removed, a new attribute or text value), so that the structures
+     * built from the DOM like the XPath context are discarded.
+     */
+    void fireNodeModified() {
+        final SgmlPage page = getPage();
+        if (page instanceof HtmlPage) {
+            ((HtmlPage) page).clearXPathContext();
         }
     }
 
@@ -1497,13 +1509,15 @@ public abstract class DomNode implements Cloneable, Serializable, Node {
         }
     }
 
+    /**
+     * Returns the listeners; iterating over them is safe even if they are changed concurrently.
+     */
     private List<DomChangeListener> safeGetDomListeners() {
-        synchronized (domListeners_lock_) {
-            if (domListeners_ != null) {
-                return new ArrayList<DomChangeListener>(domListeners_);
-            }
-            return null;
+        final List<DomChangeListener> listeners = domListeners_;
+        if (listeners != null && !listeners.isEmpty()) {
+            return listeners;
         }
+        return null;
     }
 
     /**
@@ -1513,48 +1527,139 @@ public abstract class DomNode implements Cloneable, Serializable, Node {
      * @return list of all found nodes
      */
     protected DomNodeList<DomNode> querySelectorAll(final String selectors) {
+        return new StaticDomNodeList(querySelectorAll(selectors, false));
+    }
+
+    /**
+     * Returns the elements matching the specified selectors, in document order and without duplicates.
+     * @param selectors one or more CSS selectors separated by commas
+     * @param firstOnly whether to stop at the first matching element
+     * @return the matching elements
+     */
+    private List<DomNode> querySelectorAll(final String selectors, final boolean firstOnly) {
+        final SelectorList selectorList = parseSelectors(selectors);
         final List<DomNode> elements = new ArrayList<DomNode>();
-        try {
-            final WebClient webClient = getPage().getWebClient();
-            final AtomicBoolean errorOccured = new AtomicBoolean(false);
-            final ErrorHandler errorHandler = new ErrorHandler() {
-                public void warning(final CSSParseException exception) throws CSSException {
-                    // ignore
-                }
+        if (selectorList.getLength() == 0) {
+            return elements;
+        }
 
-                public void fatalError(final CSSParseException exception) throws CSSException {
-                    errorOccured.set(true);
+        final BrowserVersion browserVersion = getPage().getWebClient().getBrowserVersion();
+        final List<DomNode> byId = getElementsById(selectorList);
+        if (byId != null) {
+            for (final DomNode node : byId) {
+                if (CSSStyleSheet.selects(browserVersion, selectorList.item(0), (DomElement) node)) {
+                    elements.add(node);
                 }
+            }
+            return elements;
+        }
 
-                public void error(final CSSParseException exception) throws CSSException {
-                    errorOccured.set(true);
+        for (final HtmlElement child : getHtmlElementDescendants()) {
+            for (int i = 0; i < selectorList.getLength(); i++) {
+                if (CSSStyleSheet.selects(browserVersion, selectorList.item(i), child)) {
+                    elements.add(child);
+                    if (firstOnly) {
+                        return elements;
+                    }
+                    break;
                 }
-            };
-            final CSSOMParser parser = new CSSOMParser(new SACParserCSS21());
-            parser.setErrorHandler(errorHandler);
-            final SelectorList selectorList = parser.parseSelectors(new InputSource(new StringReader(selectors)));
-            // in case of error parseSelectors returns null
-            if (errorOccured.get()) {
-                throw new CSSException("Invalid selectors: " + selectors);
             }
-            if (null != selectorList) {
-                CSSStyleSheet.validateSelectors(selectorList);
-
-                final BrowserVersion browserVersion = webClient.getBrowserVersion();
-                for (final HtmlElement child : getHtmlElementDescendants()) {
-                    for (int i = 0; i < selectorList.getLength(); i++) {
-                        final Selector selector = selectorList.item(i);
-                        if (CSSStyleSheet.selects(browserVersion, selector, child)) {
-                            elements.add(child);
-                        }
+        }
+        return elements;
+    }
+
+    /**
+     * If the selectors consist of a single selector requiring an ID on the rightmost element, returns the
+     * descendants of this node having this ID using the ID map of the page.
+     * @param selectorList the selectors
+     * @return the candidates in document order, <tt>null</tt> if they have to be searched for
+     */
+    private List<DomNode> getElementsById(final SelectorList selectorList) {
+        if (selectorList.getLength() != 1 || !(getPage() instanceof HtmlPage)
+                || (this != getPage() && !isDirectlyAttachedToPage())) {
+            return null;
+        }
+        final Selector selector = selectorList.item(0);
+        if (selector.getSelectorType() != Selector.SAC_CONDITIONAL_SELECTOR) {
+            return null;
+        }
+        final Condition condition = ((ConditionalSelector) selector).getCondition();
+        if (condition.getConditionType() != Condition.SAC_ID_CONDITION) {
+            return null;
+        }
+        final String id = ((AttributeCondition) condition).getValue();
+        final List<DomNode> candidates = new ArrayList<DomNode>();
+        for (final DomElement element : ((HtmlPage) getPage()).getElementsById(id)) {
+            if (isAncestorOf(element) && element != this) {
+                candidates.add(element);
+            }
+        }
+        if (candidates.size() > 1) {
+            // the order of the ID map is not necessarily the document order
+            return null;
+        }
+        return candidates;
+    }
+
+    /**
+     * Parses and validates the specified selectors, using the cache if possible.
+     * @param selectors the selectors
+     * @return the parsed selectors
+     * @throws CSSException if the selectors are invalid
+     */
+    private static SelectorList parseSelectors(final String selectors) {
+        Object parsed;
+        synchronized (SELECTORS_CACHE) {
+            parsed = SELECTORS_CACHE.get(selectors);
+        }
+        if (parsed == null) {
+            try {
+                final AtomicBoolean errorOccured = new AtomicBoolean(false);
+                final ErrorHandler errorHandler = new ErrorHandler() {
+                    public void warning(final CSSParseException exception) throws CSSException {
+                        // ignore
+                    }
+
+                    public void fatalError(final CSSParseException exception) throws CSSException {
+                        errorOccured.set(true);
+                    }
+
+                    public void error(final CSSParseException exception) throws CSSException {
+                        errorOccured.set(true);
                     }
+                };
+                final CSSOMParser parser = new CSSOMParser(new SACParserCSS21());
+                parser.setErrorHandler(errorHandler);
+                final SelectorList selectorList = parser.parseSelectors(new InputSource(new StringReader(selectors)));
+                // in case of error parseSelectors returns null
+                if (errorOccured.get()) {
+                    parsed = new CSSException("Invalid selectors: " + selectors);
+                }
+                else if (selectorList == null) {
+                    parsed = new SelectorListImpl();
+                }
+                else {
+                    CSSStyleSheet.validateSelectors(selectorList);
+                    parsed = selectorList;
                 }
             }
+            catch (final CSSException e) {
+                parsed = e;
+            }
+            catch (final IOException e) {
+                throw new CSSException("Error parsing CSS selectors from '" + selectors + "': " + e.getMessage());
+            }
+            synchronized (SELECTORS_CACHE) {
+                SELECTORS_CACHE.put(selectors, parsed);
+            }
         }
-        catch (final IOException e) {
-            throw new CSSException("Error parsing CSS selectors from '" + selectors + "': " + e.getMessage());
+
+        if (parsed instanceof CSSException) {
+            final CSSException e = (CSSException) parsed;
+            // a new exception each time, the cached one may be thrown concurrently
+            throw new CSSException(e.getMessage());
         }
-        return new StaticDomNodeList(elements);
+        return (SelectorList) parsed;
     }
 
     /**
@@ -1563,7 +1668,7 @@ public abstract class DomNode implements Cloneable, Serializable, Node {
      * @return null if no matches are found; otherwise, it returns the first matching element
      */
     protected DomNode querySelector(final String selectors) {
-        final DomNodeList<DomNode> list = querySelectorAll(selectors);
+        final List<DomNode> list = querySelectorAll(selectors, true);
         if (!list.isEmpty()) {
             return list.get(0);
         }
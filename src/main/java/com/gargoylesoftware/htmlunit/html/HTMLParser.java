@@ -16,13 +16,17 @@ package com.gargoylesoftware.htmlunit.html;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.Reader;
 import java.io.StringReader;
 import java.lang.reflect.InvocationTargetException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.Stack;
 
 import org.apache.commons.lang3.StringUtils;
@@ -57,6 +61,7 @@ import com.gargoylesoftware.htmlunit.WebAssert;
 import com.gargoylesoftware.htmlunit.WebClient;
 import com.gargoylesoftware.htmlunit.WebResponse;
 import com.gargoylesoftware.htmlunit.WebWindow;
+import com.gargoylesoftware.htmlunit.gae.GAEUtils;
 import com.gargoylesoftware.htmlunit.javascript.host.html.HTMLBodyElement;
 import com.gargoylesoftware.htmlunit.javascript.host.html.HTMLElement;
 import com.gargoylesoftware.htmlunit.svg.SvgElementFactory;
@@ -86,6 +91,14 @@ public final class HTMLParser {
 
     private static final ElementFactory SVG_FACTORY = new SvgElementFactory();
 
+    /**
+     * The elements in which the text is not simply appended by the parser (it may be ignored, moved
+     * or have its first new line removed), and therefore always parsed.
+     */
+    private static final Set<String> PLAIN_TEXT_EXCLUDED_PARENTS = new HashSet<String>(Arrays.asList(
+        "html", "head", "title", "table", "thead", "tbody", "tfoot", "tr", "colgroup", "select", "frameset",
+        "pre", "listing", "textarea", "script", "style", "xmp", "plaintext", "noscript", "iframe"));
+
     static {
         ELEMENT_FACTORIES.put(HtmlInput.TAG_NAME, InputElementFactory.instance);
 
@@ -126,10 +139,21 @@ public final class HTMLParser {
     public static void parseFragment(final DomNode parent, final DomNode context, final String source)
         throws SAXException, IOException {
         final HtmlPage page = (HtmlPage) parent.getPage();
+        if (parent == context && isPlainText(parent, source)) {
+            parent.appendChild(new DomText(page, source));
+            return;
+        }
         final URL url = page.getWebResponse().getWebRequest().getUrl();
 
-        final HtmlUnitDOMBuilder domBuilder = new HtmlUnitDOMBuilder(parent, url, source);
-        domBuilder.setFeature("http://cyberneko.org/html/features/balance-tags/document-fragment", true);
+        // the builders are reused as many snippets are parsed for the same page (innerHTML, ...)
+        HtmlUnitDOMBuilder domBuilder = page.takeFragmentBuilder();
+        if (domBuilder == null) {
+            domBuilder = new HtmlUnitDOMBuilder(parent, url, source);
+            domBuilder.setFeature("http://cyberneko.org/html/features/balance-tags/document-fragment", true);
+        }
+        else {
+            domBuilder.init(parent, url, source);
+        }
         // build fragment context stack
         DomNode node = context;
         final List<QName> ancestors = new ArrayList<QName>();
@@ -156,9 +180,27 @@ public final class HTMLParser {
         finally {
             page.registerParsingEnd();
             page.registerSnippetParsingEnd();
+            page.releaseFragmentBuilder(domBuilder);
         }
     }
 
+    /**
+     * Indicates if the specified snippet is plain text which would be parsed as a single text node
+     * appended to the parent, in which case the parser isn't needed at all.
+     * @param parent the parent for the new nodes
+     * @param source the snippet
+     * @return <code>true</code> if the snippet can be appended as text
+     */
+    private static boolean isPlainText(final DomNode parent, final String source) {
+        if (!(parent instanceof HtmlElement) || parent instanceof HTMLElement.ProxyDomNode
+                || PLAIN_TEXT_EXCLUDED_PARENTS.contains(parent.getNodeName())
+                || StringUtils.isBlank(source) || Character.isWhitespace(source.charAt(0))) {
+            return false;
+        }
+        // markup, entities and the characters normalized by the scanner need the parser
+        return StringUtils.containsNone(source, '<', '&', '\r', '\0');
+    }
+
     /**
      * Parses the HTML content from the specified <tt>WebResponse</tt> into an object tree representation.
      *
@@ -218,8 +260,24 @@ public final class HTMLParser {
             throw new ObjectInstantiationException("Error setting HTML parser feature", e);
         }
 
-        final InputStream content = webResponse.getContentAsStream();
-        final XMLInputSource in = new XMLInputSource(null, url.toString(), null, content, charset);
+        final XMLInputSource in;
+        // no thread can be started on Google App Engine
+        if (webWindow.getWebClient().getOptions().isPrefetchResources() && !GAEUtils.isGaeMode()) {
+            // the content is decoded once for both the prefetcher and the parser
+            final String source;
+            if (charset != null) {
+                source = webResponse.getContentAsString(charset);
+            }
+            else {
+                source = webResponse.getContentAsString();
+            }
+            page.startPrefetching(source);
+            in = new XMLInputSource(null, url.toString(), null, new StringReader(source), null);
+        }
+        else {
+            final InputStream content = webResponse.getContentAsStream();
+            in = new XMLInputSource(null, url.toString(), null, content, charset);
+        }
 
         page.registerParsingStart();
         try {
@@ -385,13 +443,21 @@ public final class HTMLParser {
          * @param html the HTML content to push
          */
         public void pushInputString(final String html) {
+            pushInput(new StringReader(html));
+        }
+
+        /**
+         * Parses and then inserts the specified HTML content into the HTML content currently being parsed.
+         * @param html the reader providing the HTML content to push
+         */
+        public void pushInput(final Reader html) {
             page_.registerParsingStart();
             page_.registerInlineSnippetParsingStart();
             try {
                 final WebResponse webResponse = page_.getWebResponse();
                 final String charset = webResponse.getContentCharset();
                 final String url = webResponse.getWebRequest().getUrl().toString();
-                final XMLInputSource in = new XMLInputSource(null, url, null, new StringReader(html), charset);
+                final XMLInputSource in = new XMLInputSource(null, url, null, html, charset);
                 ((HTMLConfiguration) fConfiguration).evaluateInputSource(in);
             }
             finally {
@@ -409,6 +475,38 @@ public final class HTMLParser {
             super(createConfiguration(node.getPage().getWebClient()));
             page_ = (HtmlPage) node.getPage();
 
+            final WebClient webClient = page_.getWebClient();
+            try {
+                setFeature(FEATURE_AUGMENTATIONS, true);
+                setProperty("http://cyberneko.org/html/properties/names/elems", "default");
+                setFeature(HTMLScanner.ALLOW_SELFCLOSING_IFRAME,
+                    !webClient.getBrowserVersion().hasFeature(BrowserVersionFeatures.HTMLIFRAME_IGNORE_SELFCLOSING));
+
+                setContentHandler(this);
+                setLexicalHandler(this); //comments and CDATA
+            }
+            catch (final SAXException e) {
+                throw new ObjectInstantiationException("unable to create HTML parser", e);
+            }
+            init(node, url, htmlContent);
+        }
+
+        /**
+         * Prepares this builder to parse new content of the same page.
+         * @param node the location at which to insert the new content
+         * @param url the page's URL
+         * @param htmlContent the content, for the error messages
+         */
+        void init(final DomNode node, final URL url, final String htmlContent) {
+            stack_.clear();
+            characters_ = null;
+            headParsed_ = false;
+            parsingInnerHead_ = false;
+            head_ = null;
+            body_ = null;
+            augmentations_ = null;
+            formWaitingForLostChildren_ = null;
+
             currentNode_ = node;
             for (final Node ancestor : currentNode_.getAncestors(true)) {
                 stack_.push((DomNode) ancestor);
@@ -422,22 +520,16 @@ public final class HTMLParser {
                 fConfiguration.setErrorHandler(new HTMLErrorHandler(listener, url, htmlContent));
             }
             else {
+                // a previous error handler is not called anymore as the errors aren't reported
                 reportErrors = false;
             }
 
             try {
-                setFeature(FEATURE_AUGMENTATIONS, true);
-                setProperty("http://cyberneko.org/html/properties/names/elems", "default");
                 setFeature("http://cyberneko.org/html/features/report-errors", reportErrors);
                 setFeature(FEATURE_PARSE_NOSCRIPT, !webClient.getOptions().isJavaScriptEnabled());
-                setFeature(HTMLScanner.ALLOW_SELFCLOSING_IFRAME,
-                    !webClient.getBrowserVersion().hasFeature(BrowserVersionFeatures.HTMLIFRAME_IGNORE_SELFCLOSING));
-
-                setContentHandler(this);
-                setLexicalHandler(this); //comments and CDATA
             }
             catch (final SAXException e) {
-                throw new ObjectInstantiationException("unable to create HTML parser", e);
+                throw new ObjectInstantiationException("unable to initialize HTML parser", e);
             }
         }
 
@@ -20,6 +20,7 @@ import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import net.sourceforge.htmlunit.corejs.javascript.BaseFunction;
 import net.sourceforge.htmlunit.corejs.javascript.Context;
@@ -84,8 +85,11 @@ public abstract class HtmlElement extends DomElement {
      */
     public static final Short TAB_INDEX_OUT_OF_BOUNDS = new Short(Short.MIN_VALUE);
 
-    /** The listeners which are to be notified of attribute changes. */
-    private final List<HtmlAttributeChangeListener> attributeListeners_;
+    /** Lock used to create the attribute listeners of the elements, rather than a lock object per element. */
+    private static final Object ATTRIBUTE_LISTENERS_LOCK = new Object();
+
+    /** The listeners which are to be notified of attribute changes, created when the first one is added. */
+    private volatile CopyOnWriteArrayList<HtmlAttributeChangeListener> attributeListeners_;
 
     /** The owning form for lost form children. */
     private HtmlForm owningForm_;
@@ -102,7 +106,6 @@ public abstract class HtmlElement extends DomElement {
     protected HtmlElement(final String namespaceURI, final String qualifiedName, final SgmlPage page,
             final Map<String, DomAttr> attributes) {
         super(namespaceURI, qualifiedName, page, attributes);
-        attributeListeners_ = new ArrayList<HtmlAttributeChangeListener>();
         if (page != null && page.getWebClient().getBrowserVersion()
                 .hasFeature(BrowserVersionFeatures.HTMLELEMENT_TRIM_CLASS_ATTRIBUTE)) {
             final String value = getAttribute("class");
@@ -233,8 +236,9 @@ public abstract class HtmlElement extends DomElement {
      * @see #addHtmlAttributeChangeListener(HtmlAttributeChangeListener)
      */
     protected void fireHtmlAttributeAdded(final HtmlAttributeChangeEvent event) {
-        synchronized (attributeListeners_) {
-            for (final HtmlAttributeChangeListener listener : attributeListeners_) {
+        final List<HtmlAttributeChangeListener> listeners = attributeListeners_;
+        if (listeners != null) {
+            for (final HtmlAttributeChangeListener listener : listeners) {
                 listener.attributeAdded(event);
             }
         }
@@ -256,8 +260,9 @@ public abstract class HtmlElement extends DomElement {
      * @see #addHtmlAttributeChangeListener(HtmlAttributeChangeListener)
      */
     protected void fireHtmlAttributeReplaced(final HtmlAttributeChangeEvent event) {
-        synchronized (attributeListeners_) {
-            for (final HtmlAttributeChangeListener listener : attributeListeners_) {
+        final List<HtmlAttributeChangeListener> listeners = attributeListeners_;
+        if (listeners != null) {
+            for (final HtmlAttributeChangeListener listener : listeners) {
                 listener.attributeReplaced(event);
             }
         }
@@ -279,8 +284,9 @@ public abstract class HtmlElement extends DomElement {
      * @see #addHtmlAttributeChangeListener(HtmlAttributeChangeListener)
      */
     protected void fireHtmlAttributeRemoved(final HtmlAttributeChangeEvent event) {
-        synchronized (attributeListeners_) {
-            for (final HtmlAttributeChangeListener listener : attributeListeners_) {
+        final List<HtmlAttributeChangeListener> listeners = attributeListeners_;
+        if (listeners != null) {
+            for (final HtmlAttributeChangeListener listener : listeners) {
                 listener.attributeRemoved(event);
             }
         }
@@ -794,9 +800,17 @@ public abstract class HtmlElement extends DomElement {
      */
     public void addHtmlAttributeChangeListener(final HtmlAttributeChangeListener listener) {
         WebAssert.notNull("listener", listener);
-        synchronized (attributeListeners_) {
-            attributeListeners_.add(listener);
+        CopyOnWriteArrayList<HtmlAttributeChangeListener> listeners = attributeListeners_;
+        if (listeners == null) {
+            synchronized (ATTRIBUTE_LISTENERS_LOCK) {
+                listeners = attributeListeners_;
+                if (listeners == null) {
+                    listeners = new CopyOnWriteArrayList<HtmlAttributeChangeListener>();
+                    attributeListeners_ = listeners;
+                }
+            }
         }
+        listeners.add(listener);
     }
 
     /**
@@ -809,8 +823,9 @@ public abstract class HtmlElement extends DomElement {
      */
     public void removeHtmlAttributeChangeListener(final HtmlAttributeChangeListener listener) {
         WebAssert.notNull("listener", listener);
-        synchronized (attributeListeners_) {
-            attributeListeners_.remove(listener);
+        final List<HtmlAttributeChangeListener> listeners = attributeListeners_;
+        if (listeners != null) {
+            listeners.remove(listener);
         }
     }
 
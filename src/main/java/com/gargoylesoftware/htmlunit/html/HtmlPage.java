@@ -16,6 +16,8 @@ package com.gargoylesoftware.htmlunit.html;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
@@ -36,6 +38,7 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.http.HttpStatus;
+import org.apache.xpath.XPathContext;
 import org.w3c.dom.Attr;
 import org.w3c.dom.CDATASection;
 import org.w3c.dom.Comment;
@@ -123,6 +126,7 @@ public class HtmlPage extends SgmlPage {
     private static final Log LOG = LogFactory.getLog(HtmlPage.class);
 
     private HtmlUnitDOMBuilder builder_;
+    private transient HtmlUnitDOMBuilder fragmentBuilder_;
     private String originalCharset_;
     private Map<String, List<DomElement>> idMap_ = new HashMap<String, List<DomElement>>();
     private Map<String, List<DomElement>> nameMap_ = new HashMap<String, List<DomElement>>();
@@ -137,6 +141,10 @@ public class HtmlPage extends SgmlPage {
     private boolean cleaning_;
     private HtmlBase base_;
     private URL baseUrl_;
+    private transient ResourcePrefetcher prefetcher_;
+    private transient volatile XPathContext xpathContext_;
+    private int endLineNumber_ = -1;
+    private int endColumnNumber_ = -1;
 
     /**
      * Creates an instance of HtmlPage.
@@ -269,9 +277,42 @@ public class HtmlPage extends SgmlPage {
         super.cleanUp();
         executeEventHandlersIfNeeded(Event.TYPE_UNLOAD);
         deregisterFramesIfNeeded();
+        if (prefetcher_ != null) {
+            prefetcher_.cleanUp();
+            prefetcher_ = null;
+        }
         cleaning_ = false;
     }
 
+    /**
+     * Starts downloading the external scripts and stylesheets referenced by this page's source.
+     * @param source the source of this page, as read by the parser
+     * @see com.gargoylesoftware.htmlunit.WebClientOptions#setPrefetchResources(boolean)
+     */
+    void startPrefetching(final String source) {
+        prefetcher_ = new ResourcePrefetcher(this);
+        prefetcher_.scan(source);
+    }
+
+    /**
+     * <span style="color:red">INTERNAL API - SUBJECT TO CHANGE AT ANY TIME - USE AT YOUR OWN RISK.</span><br/>
+     *
+     * Loads the response for a resource (script, stylesheet) referenced by this page, using the
+     * response which has been prefetched while parsing if any.
+     * @param request the request for the resource
+     * @return the response
+     * @throws IOException if an IO problem occurs
+     */
+    public WebResponse loadResourceResponse(final WebRequest request) throws IOException {
+        if (prefetcher_ != null) {
+            final WebResponse response = prefetcher_.getResponse(request);
+            if (response != null) {
+                return response;
+            }
+        }
+        return getWebClient().loadWebResponse(request);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -1081,7 +1122,6 @@ public class HtmlPage extends SgmlPage {
     private Script loadJavaScriptFromUrl(final URL url, final String charset) throws IOException,
         FailingHttpStatusCodeException {
 
-        String scriptEncoding = charset;
         final String pageEncoding = getPageEncoding();
         final WebRequest referringRequest = getWebResponse().getWebRequest();
 
@@ -1097,10 +1137,33 @@ public class HtmlPage extends SgmlPage {
             return (Script) cachedScript;
         }
 
-        final WebResponse response = client.loadWebResponse(request);
+        final WebResponse response = loadResourceResponse(request);
         client.printContentIfNecessary(response);
         client.throwFailingHttpStatusCodeExceptionIfNecessary(response);
+        try {
+            return compileJavaScript(url, request, response, charset, pageEncoding);
+        }
+        finally {
+            // only the compiled script is cached
+            response.cleanUp();
+        }
+    }
 
+    /**
+     * Compiles the JavaScript of the specified response and caches the compiled script if possible.
+     *
+     * @param url the URL of the script
+     * @param request the request used to load the script
+     * @param response the response containing the script
+     * @param charset the charset to use to read the text
+     * @param pageEncoding the encoding of this page
+     * @return the compiled script, or <tt>null</tt> if we ran into a compile error
+     * @throws IOException if the response doesn't contain the script
+     */
+    private Script compileJavaScript(final URL url, final WebRequest request, final WebResponse response,
+            final String charset, final String pageEncoding) throws IOException {
+        String scriptEncoding = charset;
+        final WebClient client = getWebClient();
         final int statusCode = response.getStatusCode();
         final boolean successful = (statusCode >= HttpStatus.SC_OK && statusCode < HttpStatus.SC_MULTIPLE_CHOICES);
         final boolean noContent = (statusCode == HttpStatus.SC_NO_CONTENT);
@@ -1144,7 +1207,7 @@ public class HtmlPage extends SgmlPage {
         final JavaScriptEngine javaScriptEngine = client.getJavaScriptEngine();
         final Script script = javaScriptEngine.compile(this, scriptCode, url.toExternalForm(), 1);
         if (script != null) {
-            cache.cacheIfPossible(request, response, script);
+            client.getCache().cacheIfPossible(request, response, script);
         }
 
         return script;
@@ -1712,6 +1775,19 @@ public class HtmlPage extends SgmlPage {
         return Collections.emptyList();
     }
 
+    /**
+     * Returns the elements with the specified ID, in the order in which they have been added to the page.
+     * @param id the ID to search for
+     * @return the elements, an empty list if none
+     */
+    List<DomElement> getElementsById(final String id) {
+        final List<DomElement> list = idMap_.get(id);
+        if (list != null) {
+            return Collections.unmodifiableList(list);
+        }
+        return Collections.emptyList();
+    }
+
     /**
      * Returns the elements with the specified string for their name or ID. If there are
      * no elements with the specified name or ID, this method returns an empty list.
@@ -2073,6 +2149,7 @@ public class HtmlPage extends SgmlPage {
     @Override
     public HtmlPage cloneNode(final boolean deep) {
         final HtmlPage result = (HtmlPage) super.cloneNode(deep);
+        result.xpathContext_ = null;
         final SimpleScriptable jsObjClone = ((SimpleScriptable) getScriptObject()).clone();
         jsObjClone.setDomNode(result);
         if (deep) {
@@ -2121,6 +2198,74 @@ public class HtmlPage extends SgmlPage {
         }
     }
 
+    /**
+     * <span style="color:red">INTERNAL API - SUBJECT TO CHANGE AT ANY TIME - USE AT YOUR OWN RISK.</span><br/>
+     *
+     * Returns the XPath context used to evaluate the XPath expressions on this page. The context keeps the
+     * DTM (the XPath view of the DOM) built by the previous evaluations and is therefore reused as long as
+     * the DOM of this page doesn't change. The callers have to synchronize on the returned context.
+     *
+     * @return the XPath context
+     */
+    public XPathContext getXPathContext() {
+        XPathContext context = xpathContext_;
+        if (context == null) {
+            context = new XPathContext();
+            xpathContext_ = context;
+        }
+        return context;
+    }
+
+    /**
+     * Discards the XPath context after a change of the DOM of this page.
+     */
+    void clearXPathContext() {
+        xpathContext_ = null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    void setEndLocation(final int endLineNumber, final int endColumnNumber) {
+        endLineNumber_ = endLineNumber;
+        endColumnNumber_ = endColumnNumber;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getEndLineNumber() {
+        return endLineNumber_;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getEndColumnNumber() {
+        return endColumnNumber_;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void fireNodeAdded(final DomNode parentNode, final DomNode addedNode) {
+        xpathContext_ = null;
+        super.fireNodeAdded(parentNode, addedNode);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void fireNodeDeleted(final DomNode parentNode, final DomNode deletedNode) {
+        xpathContext_ = null;
+        super.fireNodeDeleted(parentNode, deletedNode);
+    }
+
     /**
      * Notifies all registered listeners for the given event to add an attribute.
      * @param event the event to fire
@@ -2283,6 +2428,16 @@ public class HtmlPage extends SgmlPage {
         inlineSnippetParserCount_--;
     }
 
+    /**
+     * Writes the textual representation of this page, as returned by {@link #asText()}, to the specified
+     * writer while it is produced rather than building it in memory first, which is useful for very large pages.
+     * @param writer the writer
+     * @throws IOException if an IO problem occurs
+     */
+    public void asText(final Writer writer) throws IOException {
+        new HtmlSerializer().asText(this, writer);
+    }
+
     /**
      * Refreshes the page by sending the same parameters as previously sent to get this page.
      * @return the newly loaded page.
@@ -2304,6 +2459,18 @@ public class HtmlPage extends SgmlPage {
         builder_.pushInputString(string);
     }
 
+    /**
+     * <span style="color:red">INTERNAL API - SUBJECT TO CHANGE AT ANY TIME - USE AT YOUR OWN RISK.</span><br/>
+     * <p>
+     * Parses the content of the given reader as would it belong to the content being parsed
+     * at the current parsing position
+     * </p>
+     * @param reader the reader providing the HTML code to write in place
+     */
+    public void writeInParsedStream(final Reader reader) {
+        builder_.pushInput(reader);
+    }
+
     /**
      * Sets the builder to allow page to send content from document.write(ln) calls.
      * @param htmlUnitDOMBuilder the builder
@@ -2320,6 +2487,25 @@ public class HtmlPage extends SgmlPage {
         return builder_;
     }
 
+    /**
+     * Returns the builder which can be reused to parse the fragments of this page, if any.
+     * The builder is not available for the nested parsing until it is {@link #releaseFragmentBuilder released}.
+     * @return the builder, <code>null</code> if none
+     */
+    HtmlUnitDOMBuilder takeFragmentBuilder() {
+        final HtmlUnitDOMBuilder builder = fragmentBuilder_;
+        fragmentBuilder_ = null;
+        return builder;
+    }
+
+    /**
+     * Makes a builder available to parse the next fragments of this page.
+     * @param builder the builder which isn't used anymore
+     */
+    void releaseFragmentBuilder(final HtmlUnitDOMBuilder builder) {
+        fragmentBuilder_ = builder;
+    }
+
     /**
      * <p><span style="color:red">INTERNAL API - SUBJECT TO CHANGE AT ANY TIME - USE AT YOUR OWN RISK.</span></p>
      *
@@ -14,14 +14,28 @@
  */
 package com.gargoylesoftware.htmlunit.html;
 
+import java.io.IOException;
+import java.io.Writer;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
-import java.util.regex.Pattern;
+import java.util.Map;
 
-import org.apache.commons.lang3.StringUtils;
+import net.sourceforge.htmlunit.corejs.javascript.ScriptableObject;
+
+import com.gargoylesoftware.htmlunit.BrowserVersionFeatures;
+import com.gargoylesoftware.htmlunit.SgmlPage;
+import com.gargoylesoftware.htmlunit.javascript.host.css.CSSStyleDeclaration;
+import com.gargoylesoftware.htmlunit.javascript.host.html.HTMLElement;
 
 /**
  * Utility to handle conversion from HTML code to string.
+ *
+ * <p>The text is produced in a single pass: the structural whitespace (block separators, new lines)
+ * and the collapsible whitespace of the text are kept as pending state and written only once the next
+ * content is known, which allows to ignore the ones at the start, at the end or around the block boundaries.
+ * The visibility of the elements is computed once per element and inherited by their descendants.</p>
+ *
  * TODO: simplify it (it is just copied from what was available in DomNode and subclasses).
  * @version $Revision$
  * @author Marc Guillemot
@@ -29,22 +43,43 @@ import org.apache.commons.lang3.StringUtils;
  * @author Ronald Brill
  */
 class HtmlSerializer {
+    /** The size from which the produced text is written to the writer, if any. */
+    private static final int WRITER_CHUNK_SIZE = 8192;
+
+    /** The visibility state of an element: hidden by a <tt>display: none</tt>. */
+    private static final int DISPLAY_NONE = 1;
+    /** The visibility state of an element: <tt>visibility: visible</tt> explicitly set. */
+    private static final int VISIBLE = 2;
+    /** The visibility state of an element: <tt>visibility: hidden</tt> explicitly set. */
+    private static final int HIDDEN = 4;
+
     private final StringBuilder buffer_ = new StringBuilder();
-    /** Indicates a block. Will be rendered as line separator (multiple block marks are ignored) */
-    protected static final String AS_TEXT_BLOCK_SEPARATOR = "§bs§";
-    /** Indicates a new line. Will be rendered as line separator. */
-    protected static final String AS_TEXT_NEW_LINE = "§nl§";
-    /** Indicates a non blank that can't be trimmed or reduced. */
-    protected static final String AS_TEXT_BLANK = "§blank§";
-    /** Indicates a tab. */
-    protected static final String AS_TEXT_TAB = "§tab§";
-
-    private static final Pattern CLEAN_UP_PATTERN = Pattern.compile("(?:" + AS_TEXT_BLOCK_SEPARATOR + ")+");
-    private static final Pattern REDUCE_WHITESPACE_PATTERN = Pattern.compile("\\s*" + AS_TEXT_BLOCK_SEPARATOR + "\\s*");
-    private static final Pattern TEXT_AREA_PATTERN = Pattern.compile("\r?\n");
+    private Writer writer_;
+    private String lineSeparator_;
+
+    /** Indicates if some text has already been produced. */
+    private boolean started_;
+    /** Indicates a block. Will be rendered as line separator (multiple block marks are ignored). */
+    private boolean pendingBlock_;
+    /** Indicates a new line. Will be rendered as line separator, unless directly followed by a block. */
+    private boolean pendingNewLine_;
+    /** Indicates whitespace. Will be rendered as a single blank, unless followed by a block or at the end. */
+    private boolean pendingBlank_;
 
     private boolean appletEnabled_;
     private boolean ignoreMaskedElements_ = true;
+    private boolean cssEnabled_;
+    private boolean collapseInvisible_;
+    private final Map<DomNode, Integer> visibilityStates_ = new IdentityHashMap<DomNode, Integer>();
+
+    /**
+     * Thrown to propagate the exceptions of the writer through the serialization methods.
+     */
+    private static final class WriterException extends RuntimeException {
+        private WriterException(final IOException cause) {
+            super(cause);
+        }
+    }
 
     /**
      * Converts an HTML node to text.
@@ -52,73 +87,55 @@ class HtmlSerializer {
      * @return the text representation according to the setting of this serializer
      */
     public String asText(final DomNode node) {
-        appletEnabled_ = node.getPage().getWebClient().getOptions().isAppletEnabled();
-        buffer_.setLength(0);
-        appendNode(node);
+        serialize(node);
         final String response = buffer_.toString();
         buffer_.setLength(0);
-        return cleanUp(response);
-    }
-
-    private String cleanUp(String text) {
-        // ignore <br/> at the end of a block
-        text = StringUtils.replace(text, AS_TEXT_NEW_LINE + AS_TEXT_BLOCK_SEPARATOR, AS_TEXT_BLOCK_SEPARATOR);
-        text = reduceWhitespace(text);
-        text = StringUtils.replace(text, AS_TEXT_BLANK, " ");
-        final String ls = System.getProperty("line.separator");
-        text = StringUtils.replace(text, AS_TEXT_NEW_LINE, ls);
-        text = CLEAN_UP_PATTERN.matcher(text).replaceAll(ls); // many block sep => 1 new line
-        text = StringUtils.replace(text, AS_TEXT_TAB, "\t");
-
-        return text;
+        return response;
     }
 
-    protected String reduceWhitespace(String text) {
-        text = text.trim();
-
-        // remove white spaces before or after block separators
-        text = REDUCE_WHITESPACE_PATTERN.matcher(text).replaceAll(AS_TEXT_BLOCK_SEPARATOR);
-
-        // remove leading block separators
-        while (text.startsWith(AS_TEXT_BLOCK_SEPARATOR)) {
-            text = text.substring(AS_TEXT_BLOCK_SEPARATOR.length());
+    /**
+     * Converts an HTML node to text, written to the specified writer as it is produced.
+     * @param node a node
+     * @param writer the writer
+     * @throws IOException if an IO problem occurs
+     */
+    public void asText(final DomNode node, final Writer writer) throws IOException {
+        writer_ = writer;
+        try {
+            serialize(node);
+            writer.write(buffer_.toString());
         }
-
-        // remove trailing block separators
-        while (text.endsWith(AS_TEXT_BLOCK_SEPARATOR)) {
-            text = text.substring(0, text.length() - AS_TEXT_BLOCK_SEPARATOR.length());
+        catch (final WriterException e) {
+            throw (IOException) e.getCause();
         }
-        text = text.trim();
-
-        final StringBuilder buffer = new StringBuilder(text.length());
-
-        boolean whitespace = false;
-        for (final char ch : text.toCharArray()) {
+        finally {
+            writer_ = null;
+            buffer_.setLength(0);
+        }
+    }
 
-            // Translate non-breaking space to regular space.
-            if (ch == (char) 160) {
-                buffer.append(' ');
-                whitespace = false;
-            }
-            else {
-                if (whitespace) {
-                    if (!Character.isWhitespace(ch)) {
-                        buffer.append(ch);
-                        whitespace = false;
-                    }
-                }
-                else {
-                    if (Character.isWhitespace(ch)) {
-                        whitespace = true;
-                        buffer.append(' ');
-                    }
-                    else {
-                        buffer.append(ch);
-                    }
-                }
+    private void serialize(final DomNode node) {
+        final SgmlPage page = node.getPage();
+        appletEnabled_ = page.getWebClient().getOptions().isAppletEnabled();
+        cssEnabled_ = page instanceof HtmlPage && page.getWebClient().getOptions().isCssEnabled();
+        collapseInvisible_ = page.getWebClient().getBrowserVersion()
+            .hasFeature(BrowserVersionFeatures.DISPLAYED_COLLAPSE);
+        lineSeparator_ = System.getProperty("line.separator");
+        buffer_.setLength(0);
+        started_ = false;
+        pendingBlock_ = false;
+        pendingNewLine_ = false;
+        pendingBlank_ = false;
+        try {
+            appendNode(node);
+            // the trailing whitespace and blocks are ignored, but not the new lines
+            if (pendingNewLine_) {
+                writePending();
             }
         }
-        return buffer.toString();
+        finally {
+            visibilityStates_.clear();
+        }
     }
 
     protected void appendNode(final DomNode node) {
@@ -203,19 +220,93 @@ class HtmlSerializer {
     }
 
     private void doAppendBlockSeparator() {
-        buffer_.append(AS_TEXT_BLOCK_SEPARATOR);
+        // the whitespace and a new line before a block are ignored
+        pendingBlank_ = false;
+        pendingNewLine_ = false;
+        pendingBlock_ = true;
     }
 
     private void doAppend(final String str) {
-        buffer_.append(str);
+        final int length = str.length();
+        for (int i = 0; i < length; i++) {
+            doAppend(str.charAt(i));
+        }
+    }
+
+    private void doAppend(final char ch) {
+        // Translate non-breaking space to regular space.
+        if (ch == (char) 160) {
+            doAppendVisible(' ');
+        }
+        else if (Character.isWhitespace(ch)) {
+            doAppendWhitespace();
+        }
+        else {
+            doAppendVisible(ch);
+        }
+    }
+
+    private void doAppendWhitespace() {
+        if (pendingNewLine_) {
+            writePending();
+        }
+        // the whitespace after a block is ignored
+        if (!pendingBlock_) {
+            pendingBlank_ = true;
+        }
     }
 
     private void doAppendNewLine() {
-        buffer_.append(AS_TEXT_NEW_LINE);
+        if (pendingNewLine_) {
+            writePending();
+        }
+        pendingNewLine_ = true;
     }
 
     private void doAppendTab() {
-        buffer_.append(AS_TEXT_TAB);
+        doAppendVisible('\t');
+    }
+
+    /**
+     * Appends a character which can't be trimmed or reduced.
+     * @param ch the character
+     */
+    private void doAppendVisible(final char ch) {
+        if (pendingBlock_ || pendingBlank_ || pendingNewLine_) {
+            writePending();
+        }
+        buffer_.append(ch);
+        started_ = true;
+        if (writer_ != null && buffer_.length() >= WRITER_CHUNK_SIZE) {
+            try {
+                writer_.write(buffer_.toString());
+            }
+            catch (final IOException e) {
+                throw new WriterException(e);
+            }
+            buffer_.setLength(0);
+        }
+    }
+
+    /**
+     * Writes the pending whitespace and line separators, now that they are known to be followed by some content.
+     */
+    private void writePending() {
+        if (started_) {
+            if (pendingBlock_) {
+                buffer_.append(lineSeparator_);
+            }
+            else if (pendingBlank_) {
+                buffer_.append(' ');
+            }
+        }
+        if (pendingNewLine_) {
+            buffer_.append(lineSeparator_);
+            started_ = true;
+        }
+        pendingBlock_ = false;
+        pendingBlank_ = false;
+        pendingNewLine_ = false;
     }
 
     private void appendHtmlUnorderedList(final HtmlUnorderedList htmlUnorderedList) {
@@ -265,11 +356,27 @@ class HtmlSerializer {
 
     private void appendHtmlTextArea(final HtmlTextArea htmlTextArea) {
         if (isVisible(htmlTextArea)) {
-            String text = htmlTextArea.getText();
-            text = StringUtils.replace(text, " ", AS_TEXT_BLANK);
-            text = TEXT_AREA_PATTERN.matcher(text).replaceAll(AS_TEXT_NEW_LINE);
-            text = StringUtils.replace(text, "\r", AS_TEXT_NEW_LINE);
-            doAppend(text);
+            // the blanks and the new lines of a text area are kept
+            final String text = htmlTextArea.getText();
+            final int length = text.length();
+            for (int i = 0; i < length; i++) {
+                final char ch = text.charAt(i);
+                if (ch == ' ') {
+                    doAppendVisible(' ');
+                }
+                else if (ch == '\r') {
+                    if (i + 1 < length && text.charAt(i + 1) == '\n') {
+                        i++;
+                    }
+                    doAppendNewLine();
+                }
+                else if (ch == '\n') {
+                    doAppendNewLine();
+                }
+                else {
+                    doAppend(ch);
+                }
+            }
         }
     }
 
@@ -373,8 +480,50 @@ class HtmlSerializer {
         }
     }
 
+    /**
+     * Same as {@link DomNode#isDisplayed()}, but computing the style of each element only once.
+     */
     private boolean isVisible(final DomNode node) {
-        return !ignoreMaskedElements_ || node.isDisplayed();
+        if (!ignoreMaskedElements_) {
+            return true;
+        }
+        if (!node.mayBeDisplayed()) {
+            return false;
+        }
+        return !cssEnabled_ || (getVisibilityState(node) & (DISPLAY_NONE | HIDDEN)) == 0;
+    }
+
+    /**
+     * Returns the visibility state of a node, computed from its own style and from the state of its parent.
+     * An element is hidden if it or one of its ancestors has <tt>display: none</tt>, or if the closest
+     * <tt>visibility</tt> set on it or on its ancestors hides it.
+     */
+    private int getVisibilityState(final DomNode node) {
+        final Integer cached = visibilityStates_.get(node);
+        if (cached != null) {
+            return cached.intValue();
+        }
+        final DomNode parent = node.getParentNode();
+        int state = 0;
+        if (parent != null) {
+            state = getVisibilityState(parent);
+        }
+        final ScriptableObject scriptableObject = node.getScriptObject();
+        if (scriptableObject instanceof HTMLElement) {
+            final CSSStyleDeclaration style = ((HTMLElement) scriptableObject).jsxGet_currentStyle();
+            if ("none".equals(style.jsxGet_display())) {
+                state |= DISPLAY_NONE;
+            }
+            final String visibility = style.jsxGet_visibility();
+            if ("visible".equals(visibility)) {
+                state = (state & DISPLAY_NONE) | VISIBLE;
+            }
+            else if ("hidden".equals(visibility) || (collapseInvisible_ && "collapse".equals(visibility))) {
+                state = (state & DISPLAY_NONE) | HIDDEN;
+            }
+        }
+        visibilityStates_.put(node, Integer.valueOf(state));
+        return state;
     }
 
     /**
@@ -0,0 +1,282 @@
+/*
+ * Copyright (c) 2002-2012 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.html;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.gargoylesoftware.htmlunit.HttpMethod;
+import com.gargoylesoftware.htmlunit.WebClient;
+import com.gargoylesoftware.htmlunit.WebRequest;
+import com.gargoylesoftware.htmlunit.WebResponse;
+import com.gargoylesoftware.htmlunit.WebResponseFuture;
+import com.gargoylesoftware.htmlunit.util.UrlUtils;
+
+/**
+ * Speculatively downloads the external scripts and stylesheets referenced by a page before the parser
+ * reaches them. The downloads run concurrently (see {@link WebClient#loadWebResponseAsync(WebRequest)}); the page
+ * consumes the responses when it needs them, in document order, therefore scripts are still
+ * executed exactly as without prefetching.
+ *
+ * @version $Revision$
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+final class ResourcePrefetcher {
+
+    private static final Log LOG = LogFactory.getLog(ResourcePrefetcher.class);
+
+    /** A comment or a start tag. */
+    private static final Pattern TOKEN_PATTERN =
+        Pattern.compile("<!--.*?-->|<([a-zA-Z][\\w:-]*)\\b([^>]*)>", Pattern.DOTALL);
+
+    /** The elements whose content is not parsed as markup. */
+    private static final String[] RAW_TEXT_ELEMENTS = {"script", "style", "textarea", "title", "xmp", "iframe",
+        "noembed", "noframes", "plaintext"};
+    private static final Pattern ATTRIBUTE_PATTERN =
+        Pattern.compile("\\b([\\w-]+)\\s*=\\s*(?:\"([^\"]*)\"|'([^']*)'|([^\\s>]+))");
+
+    private final HtmlPage page_;
+    private final Map<String, Prefetch> responses_ = new HashMap<String, Prefetch>();
+
+    /**
+     * Creates a new instance.
+     * @param page the page whose resources are prefetched
+     */
+    ResourcePrefetcher(final HtmlPage page) {
+        page_ = page;
+    }
+
+    /**
+     * Scans the specified HTML source for external scripts and stylesheets and starts downloading them.
+     * @param html the HTML source of the page, as read by the parser
+     */
+    void scan(final String html) {
+        final WebClient webClient = page_.getWebClient();
+        final boolean javaScriptEnabled = webClient.getOptions().isJavaScriptEnabled();
+        final boolean cssEnabled = webClient.getOptions().isCssEnabled();
+
+        URL base = page_.getUrl();
+        final Matcher matcher = TOKEN_PATTERN.matcher(html);
+        int position = 0;
+        while (position < html.length() && matcher.find(position)) {
+            position = matcher.end();
+            // group 1 is null for comments
+            final String tag = StringUtils.lowerCase(matcher.group(1));
+            if ("base".equals(tag)) {
+                final String href = parseAttributes(matcher.group(2)).get("href");
+                if (href != null) {
+                    base = toUrl(base, href);
+                    if (base == null) {
+                        // don't guess the URLs if the base is not understood
+                        return;
+                    }
+                }
+            }
+            else if ("script".equals(tag)) {
+                final Map<String, String> attributes = parseAttributes(matcher.group(2));
+                final String type = attributes.get("type");
+                if (javaScriptEnabled && (type == null || type.contains("javascript") || type.contains("ecmascript"))) {
+                    prefetch(base, attributes.get("src"), true);
+                }
+            }
+            else if ("link".equals(tag)) {
+                final Map<String, String> attributes = parseAttributes(matcher.group(2));
+                final String rel = attributes.get("rel");
+                if (cssEnabled && rel != null && "stylesheet".equalsIgnoreCase(rel.trim())) {
+                    prefetch(base, attributes.get("href"), false);
+                }
+            }
+
+            // the markup inside of inline scripts, styles, textareas, ... (and of noscript) is not used
+            if (tag != null && isRawText(tag, javaScriptEnabled)) {
+                position = indexOfEndTag(html, tag, position);
+                if (position == -1) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private static boolean isRawText(final String tag, final boolean javaScriptEnabled) {
+        if ("noscript".equals(tag)) {
+            return javaScriptEnabled;
+        }
+        for (final String element : RAW_TEXT_ELEMENTS) {
+            if (element.equals(tag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the position of the end tag of the specified element.
+     * @param html the HTML source
+     * @param tag the element name, in lower case
+     * @param start the position where the search starts
+     * @return the position of the end tag or <tt>-1</tt> if the element is not closed
+     */
+    private static int indexOfEndTag(final String html, final String tag, final int start) {
+        int index = html.indexOf("</", start);
+        while (index != -1) {
+            if (html.regionMatches(true, index + 2, tag, 0, tag.length())) {
+                return index;
+            }
+            index = html.indexOf("</", index + 2);
+        }
+        return -1;
+    }
+
+    private static Map<String, String> parseAttributes(final String attributes) {
+        final Map<String, String> map = new HashMap<String, String>();
+        final Matcher matcher = ATTRIBUTE_PATTERN.matcher(attributes);
+        while (matcher.find()) {
+            final String name = matcher.group(1).toLowerCase();
+            if (!map.containsKey(name)) {
+                String value = matcher.group(2);
+                if (value == null) {
+                    value = matcher.group(3);
+                }
+                if (value == null) {
+                    value = matcher.group(4);
+                }
+                map.put(name, value);
+            }
+        }
+        return map;
+    }
+
+    private static URL toUrl(final URL base, final String spec) {
+        try {
+            return UrlUtils.toUrlUnsafe(UrlUtils.resolveUrl(base, spec.trim()));
+        }
+        catch (final MalformedURLException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Starts downloading the specified resource, with the request the page would use to load it.
+     * @param base the base URL
+     * @param src the URL of the resource, relative to the base
+     * @param script whether the resource is a script or a stylesheet
+     */
+    private void prefetch(final URL base, final String src, final boolean script) {
+        if (StringUtils.isBlank(src)) {
+            return;
+        }
+        final URL url = toUrl(base, src);
+        if (url == null || !("http".equals(url.getProtocol()) || "https".equals(url.getProtocol()))) {
+            return;
+        }
+        final String key = url.toExternalForm();
+        synchronized (responses_) {
+            if (responses_.containsKey(key)) {
+                return;
+            }
+        }
+
+        final WebClient webClient = page_.getWebClient();
+        final WebRequest request = new WebRequest(url);
+        final WebRequest referringRequest = page_.getWebResponse().getWebRequest();
+        if (script) {
+            // see HtmlPage.loadJavaScriptFromUrl
+            request.setAdditionalHeaders(new HashMap<String, String>(referringRequest.getAdditionalHeaders()));
+        }
+        request.setAdditionalHeader("Referer", referringRequest.getUrl().toExternalForm());
+        if (webClient.getCache().isCached(request)) {
+            return;
+        }
+
+        // the request is completed with the default headers when it is performed
+        final Map<String, String> headers = new HashMap<String, String>(request.getAdditionalHeaders());
+        try {
+            final WebResponseFuture future = webClient.loadWebResponseAsync(request);
+            synchronized (responses_) {
+                responses_.put(key, new Prefetch(future, headers, request.getCharset()));
+            }
+        }
+        catch (final RejectedExecutionException e) {
+            // the WebClient is being closed
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Not prefetching " + url + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Returns the prefetched response for the specified request. The response is returned only once,
+     * and only if it has been requested with the same headers and charset.
+     * @param request the request
+     * @return the prefetched response or <tt>null</tt> if it has not been prefetched
+     * @throws IOException if the download failed
+     */
+    WebResponse getResponse(final WebRequest request) throws IOException {
+        if (request.getHttpMethod() != HttpMethod.GET) {
+            return null;
+        }
+        final Prefetch prefetch;
+        synchronized (responses_) {
+            prefetch = responses_.remove(request.getUrl().toExternalForm());
+        }
+        if (prefetch == null) {
+            return null;
+        }
+        if (!prefetch.headers_.equals(request.getAdditionalHeaders())
+                || !StringUtils.equals(prefetch.charset_, request.getCharset())) {
+            // not the request the resource has been prefetched for
+            prefetch.response_.discard();
+            return null;
+        }
+        return prefetch.response_.getWebResponse();
+    }
+
+    /**
+     * Cancels the pending downloads and releases the responses which haven't been used.
+     */
+    void cleanUp() {
+        synchronized (responses_) {
+            for (final Prefetch prefetch : responses_.values()) {
+                prefetch.response_.discard();
+            }
+            responses_.clear();
+        }
+    }
+
+    /**
+     * A prefetched resource, with the headers and charset it has been requested with.
+     */
+    private static final class Prefetch {
+        private final WebResponseFuture response_;
+        private final Map<String, String> headers_;
+        private final String charset_;
+
+        Prefetch(final WebResponseFuture response, final Map<String, String> headers, final String charset) {
+            response_ = response;
+            headers_ = headers;
+            charset_ = charset;
+        }
+    }
+}
@@ -15,7 +15,9 @@
 package com.gargoylesoftware.htmlunit.html.xpath;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.xml.transform.TransformerException;
 
@@ -30,16 +32,32 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
+import com.gargoylesoftware.htmlunit.SgmlPage;
 import com.gargoylesoftware.htmlunit.html.DomNode;
+import com.gargoylesoftware.htmlunit.html.HtmlPage;
 
 /**
  * Collection of XPath utility methods.
  *
  * @version $Revision$
  * @author Ahmed Ashour
+ * @author <a href="mailto:agent@local">agent</a>
  */
 public final class XPathUtils {
 
+    private static final int MAX_CACHED_EXPRESSIONS = 200;
+    /**
+     * The compiled expressions without namespace prefix, per case sensitivity and expression string;
+     * the least recently used are evicted.
+     */
+    private static final Map<String, XPathAdapter> EXPRESSIONS_CACHE
+        = new LinkedHashMap<String, XPathAdapter>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, XPathAdapter> eldest) {
+                return size() > MAX_CACHED_EXPRESSIONS;
+            }
+        };
+
     private static ThreadLocal<Boolean> PROCESS_XPATH_ = new ThreadLocal<Boolean>() {
         @Override
         protected synchronized Boolean initialValue() {
@@ -62,6 +80,26 @@ public final class XPathUtils {
      * @return the list of objects found
      */
     public static List<Object> getByXPath(final DomNode node, final String xpathExpr) {
+        return getByXPath(node, xpathExpr, false);
+    }
+
+    /**
+     * Evaluates an XPath expression from the specified node, returning the first resultant node.
+     * Unlike {@link #getByXPath(DomNode, String)}, the nodes following the first one are not looked for.
+     *
+     * @param node the node to start searching from
+     * @param xpathExpr the XPath expression
+     * @return the first object found, <tt>null</tt> if none
+     */
+    public static Object getFirstByXPath(final DomNode node, final String xpathExpr) {
+        final List<Object> list = getByXPath(node, xpathExpr, true);
+        if (list.isEmpty()) {
+            return null;
+        }
+        return list.get(0);
+    }
+
+    private static List<Object> getByXPath(final DomNode node, final String xpathExpr, final boolean firstOnly) {
         if (xpathExpr == null) {
             throw new NullPointerException("Null is not a valid XPath expression");
         }
@@ -69,25 +107,38 @@ public final class XPathUtils {
         PROCESS_XPATH_.set(Boolean.TRUE);
         final List<Object> list = new ArrayList<Object>();
         try {
-            final XObject result = evaluateXPath(node, xpathExpr);
+            final XPathContext xpathSupport = getXPathContext(node);
+            // the XPath context and the nodes of the result are bound to the DTM which is not thread-safe
+            synchronized (xpathSupport) {
+                final XObject result = evaluateXPath(node, xpathExpr, xpathSupport);
 
-            if (result instanceof XNodeSet) {
-                final NodeList nodelist = ((XNodeSet) result).nodelist();
-                for (int i = 0; i < nodelist.getLength(); i++) {
-                    list.add(nodelist.item(i));
+                if (result instanceof XNodeSet) {
+                    final NodeList nodelist = ((XNodeSet) result).nodelist();
+                    if (firstOnly) {
+                        // the node list is lazy: only the first node is searched for
+                        final Node first = nodelist.item(0);
+                        if (first != null) {
+                            list.add(first);
+                        }
+                    }
+                    else {
+                        for (int i = 0; i < nodelist.getLength(); i++) {
+                            list.add(nodelist.item(i));
+                        }
+                    }
+                }
+                else if (result instanceof XNumber) {
+                    list.add(Double.valueOf(result.num()));
+                }
+                else if (result instanceof XBoolean) {
+                    list.add(Boolean.valueOf(result.bool()));
+                }
+                else if (result instanceof XString) {
+                    list.add(result.str());
+                }
+                else {
+                    throw new RuntimeException("Unproccessed " + result.getClass().getName());
                 }
-            }
-            else if (result instanceof XNumber) {
-                list.add(Double.valueOf(result.num()));
-            }
-            else if (result instanceof XBoolean) {
-                list.add(Boolean.valueOf(result.bool()));
-            }
-            else if (result instanceof XString) {
-                list.add(result.str());
-            }
-            else {
-                throw new RuntimeException("Unproccessed " + result.getClass().getName());
             }
         }
         catch (final Exception e) {
@@ -99,6 +150,21 @@ public final class XPathUtils {
         return list;
     }
 
+    /**
+     * Returns the XPath context to use from the specified node: the one of the page, which reuses
+     * the DTM built by the previous evaluations, if the node is attached to an {@link HtmlPage}
+     * (the only pages notifying all the changes of their DOM), a new one otherwise.
+     * @param node the node to start searching from
+     * @return the XPath context
+     */
+    private static XPathContext getXPathContext(final DomNode node) {
+        final SgmlPage page = node.getPage();
+        if (page instanceof HtmlPage && page.isAncestorOf(node)) {
+            return ((HtmlPage) page).getXPathContext();
+        }
+        return new XPathContext();
+    }
+
     /**
      * Returns whether the thread is currently evaluating XPath expression or no.
      * @return whether the thread is currently evaluating XPath expression or no
@@ -111,11 +177,12 @@ public final class XPathUtils {
      * Evaluates an XPath expression to an XObject.
      * @param contextNode the node to start searching from
      * @param str a valid XPath string
+     * @param xpathSupport the XPath context
      * @return an XObject, which can be used to obtain a string, number, nodelist, etc (should never be <tt>null</tt>)
      * @throws TransformerException if a syntax or other error occurs
      */
-    private static XObject evaluateXPath(final DomNode contextNode, final String str) throws TransformerException {
-        final XPathContext xpathSupport = new XPathContext();
+    private static XObject evaluateXPath(final DomNode contextNode, final String str,
+            final XPathContext xpathSupport) throws TransformerException {
         final Node xpathExpressionContext;
         if (contextNode.getNodeType() == Node.DOCUMENT_NODE) {
             xpathExpressionContext = ((Document) contextNode).getDocumentElement();
@@ -125,9 +192,48 @@ public final class XPathUtils {
         }
         final PrefixResolver prefixResolver = new HtmlUnitPrefixResolver(xpathExpressionContext);
         final boolean caseSensitive = contextNode.getPage().hasCaseSensitiveTagNames();
-        final XPathAdapter xpath = new XPathAdapter(str, null, prefixResolver, null, caseSensitive);
         final int ctxtNode = xpathSupport.getDTMHandleFromNode(contextNode);
-        return xpath.execute(xpathSupport, ctxtNode, prefixResolver);
+
+        if (hasNamespacePrefix(str)) {
+            // the prefixes are resolved at compilation time according to the context node
+            final XPathAdapter xpath = new XPathAdapter(str, null, prefixResolver, null, caseSensitive);
+            return xpath.execute(xpathSupport, ctxtNode, prefixResolver);
+        }
+
+        final String key = caseSensitive + str;
+        XPathAdapter xpath;
+        synchronized (EXPRESSIONS_CACHE) {
+            xpath = EXPRESSIONS_CACHE.get(key);
+        }
+        if (xpath == null) {
+            xpath = new XPathAdapter(str, null, prefixResolver, null, caseSensitive);
+            synchronized (EXPRESSIONS_CACHE) {
+                EXPRESSIONS_CACHE.put(key, xpath);
+            }
+        }
+        // a compiled expression keeps some state while it is executed
+        synchronized (xpath) {
+            return xpath.execute(xpathSupport, ctxtNode, prefixResolver);
+        }
+    }
+
+    /**
+     * Indicates if the specified expression may contain a namespace prefix, i.e. a colon which is not
+     * part of an axis separator. The expressions with a colon in a literal are reported as well.
+     * @param str the XPath expression
+     * @return whether the expression may contain a namespace prefix
+     */
+    private static boolean hasNamespacePrefix(final String str) {
+        int index = str.indexOf(':');
+        while (index != -1) {
+            if (index + 1 < str.length() && str.charAt(index + 1) == ':') {
+                index = str.indexOf(':', index + 2);
+            }
+            else {
+                return true;
+            }
+        }
+        return false;
     }
 
 }
@@ -0,0 +1,277 @@
+/*
+ * Copyright (c) 2002-2012 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.javascript;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.sourceforge.htmlunit.corejs.javascript.Script;
+
+import org.apache.commons.codec.binary.Hex;
+
+import com.gargoylesoftware.htmlunit.BrowserVersion;
+import com.gargoylesoftware.htmlunit.TextUtil;
+
+/**
+ * Process wide cache of the compiled scripts, shared by all the pages and all the
+ * {@link com.gargoylesoftware.htmlunit.WebClient}s.
+ *
+ * <p>Unlike {@link com.gargoylesoftware.htmlunit.Cache}, which caches the external scripts according to
+ * the HTTP caching rules, this cache is keyed by the content of the script: an external script is compiled only once
+ * even if it is served with <tt>no-cache</tt> headers, and the inline scripts and event handlers are compiled only
+ * once for all the pages containing them. The key is made of a hash of the preprocessed source code, the browser
+ * version, the optimization level and the start line, as all of them influence the compiled code (the line numbers
+ * are compiled into the code and visible to the scripts).</p>
+ *
+ * <p>The source name is not part of the key: the scripts are compiled under a shared name derived from the key
+ * (see {@link #getSourceName(Object)}) and the {@link JavaScriptEngine} maps it back to the real source name of the
+ * page when reporting an error. The <tt>fileName</tt> and <tt>stack</tt> properties of the errors seen by the scripts
+ * contain the shared name.</p>
+ *
+ * <p>The cache is bounded by the estimated memory weight of the compiled scripts (see {@link #setMaxWeight(long)});
+ * the least recently used scripts are evicted first.</p>
+ *
+ * @version $Revision$
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+public final class CompiledScriptCache {
+
+    /** The estimated number of bytes used by a compiled script, per character of source code. */
+    private static final int WEIGHT_PER_CHAR = 4;
+
+    private static final Map<Key, Entry> ENTRIES = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+    private static long MaxWeight_ = 64 * 1024 * 1024;
+    private static long Weight_;
+    private static final AtomicLong HITS = new AtomicLong();
+    private static final AtomicLong MISSES = new AtomicLong();
+    private static final AtomicLong EVICTIONS = new AtomicLong();
+
+    /**
+     * The identity of a compiled script.
+     */
+    private static final class Key {
+        private final byte[] digest_;
+        private final BrowserVersion browserVersion_;
+        private final int optimizationLevel_;
+        private final int startLine_;
+        private final int hashCode_;
+
+        private Key(final byte[] digest, final BrowserVersion browserVersion, final int optimizationLevel,
+                final int startLine) {
+            digest_ = digest;
+            browserVersion_ = browserVersion;
+            optimizationLevel_ = optimizationLevel;
+            startLine_ = startLine;
+            int hashCode = Arrays.hashCode(digest);
+            hashCode = 31 * hashCode + System.identityHashCode(browserVersion);
+            hashCode = 31 * hashCode + optimizationLevel;
+            hashCode_ = 31 * hashCode + startLine;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return hashCode_ == other.hashCode_
+                && startLine_ == other.startLine_
+                && optimizationLevel_ == other.optimizationLevel_
+                && browserVersion_ == other.browserVersion_
+                && Arrays.equals(digest_, other.digest_);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode_;
+        }
+    }
+
+    private static final class Entry {
+        private final Script script_;
+        private final long weight_;
+
+        private Entry(final Script script, final long weight) {
+            script_ = script;
+            weight_ = weight;
+        }
+    }
+
+    /**
+     * Private to avoid instantiation.
+     */
+    private CompiledScriptCache() {
+        // Empty.
+    }
+
+    /**
+     * Returns the key identifying the compilation of the specified source code.
+     * @param source the preprocessed source code
+     * @param browserVersion the browser version
+     * @param optimizationLevel the optimization level
+     * @param startLine the start line
+     * @return the key
+     */
+    static Object getKey(final String source, final BrowserVersion browserVersion, final int optimizationLevel,
+            final int startLine) {
+        final byte[] digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1").digest(TextUtil.stringToByteArray(source, "UTF-8"));
+        }
+        catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        return new Key(digest, browserVersion, optimizationLevel, startLine);
+    }
+
+    /**
+     * Returns the source name under which the script with the specified key is compiled. It only depends on
+     * the source code, so that the compiled script can be shared by all the pages.
+     * @param key the key returned by {@link #getKey(String, BrowserVersion, int, int)}
+     * @return the source name
+     */
+    static String getSourceName(final Object key) {
+        return "cached script " + new String(Hex.encodeHex(((Key) key).digest_));
+    }
+
+    /**
+     * Returns the compiled script with the specified key.
+     * @param key the key returned by {@link #getKey(String, BrowserVersion, int, int)}
+     * @return the script, <tt>null</tt> if not cached
+     */
+    static Script get(final Object key) {
+        final Entry entry;
+        synchronized (ENTRIES) {
+            entry = ENTRIES.get(key);
+        }
+        if (entry == null) {
+            MISSES.incrementAndGet();
+            return null;
+        }
+        HITS.incrementAndGet();
+        return entry.script_;
+    }
+
+    /**
+     * Caches a compiled script, evicting the least recently used ones if needed.
+     * @param key the key returned by {@link #getKey(String, BrowserVersion, int, int)}
+     * @param script the compiled script
+     * @param sourceLength the length of the source code
+     */
+    static void put(final Object key, final Script script, final int sourceLength) {
+        final long weight = (long) sourceLength * WEIGHT_PER_CHAR;
+        synchronized (ENTRIES) {
+            if (weight > MaxWeight_) {
+                return;
+            }
+            final Entry previous = ENTRIES.put((Key) key, new Entry(script, weight));
+            if (previous != null) {
+                Weight_ -= previous.weight_;
+            }
+            Weight_ += weight;
+            evictIfNeeded();
+        }
+    }
+
+    private static void evictIfNeeded() {
+        final Iterator<Entry> iterator = ENTRIES.values().iterator();
+        while (Weight_ > MaxWeight_ && iterator.hasNext()) {
+            Weight_ -= iterator.next().weight_;
+            iterator.remove();
+            EVICTIONS.incrementAndGet();
+        }
+    }
+
+    /**
+     * Returns the maximum estimated weight of the cached scripts, in bytes.
+     * @return the maximum weight
+     */
+    public static long getMaxWeight() {
+        synchronized (ENTRIES) {
+            return MaxWeight_;
+        }
+    }
+
+    /**
+     * Sets the maximum estimated weight of the cached scripts, in bytes; <tt>0</tt> disables the cache.
+     * The default is 64 MB.
+     * @param maxWeight the maximum weight
+     */
+    public static void setMaxWeight(final long maxWeight) {
+        synchronized (ENTRIES) {
+            MaxWeight_ = maxWeight;
+            evictIfNeeded();
+        }
+    }
+
+    /**
+     * Returns the estimated weight of the cached scripts, in bytes.
+     * @return the weight
+     */
+    public static long getWeight() {
+        synchronized (ENTRIES) {
+            return Weight_;
+        }
+    }
+
+    /**
+     * Returns the number of cached scripts.
+     * @return the number of cached scripts
+     */
+    public static int getSize() {
+        synchronized (ENTRIES) {
+            return ENTRIES.size();
+        }
+    }
+
+    /**
+     * Returns the number of times a compiled script has been found in the cache.
+     * @return the number of cache hits
+     */
+    public static long getHitCount() {
+        return HITS.get();
+    }
+
+    /**
+     * Returns the number of times a script had to be compiled.
+     * @return the number of cache misses
+     */
+    public static long getMissCount() {
+        return MISSES.get();
+    }
+
+    /**
+     * Returns the number of scripts evicted from the cache to respect its maximum weight.
+     * @return the number of evictions
+     */
+    public static long getEvictionCount() {
+        return EVICTIONS.get();
+    }
+
+    /**
+     * Removes all the cached scripts.
+     */
+    public static void clear() {
+        synchronized (ENTRIES) {
+            ENTRIES.clear();
+            Weight_ = 0;
+        }
+    }
+}
@@ -19,6 +19,8 @@ import net.sourceforge.htmlunit.corejs.javascript.Context;
 import net.sourceforge.htmlunit.corejs.javascript.ContextFactory;
 import net.sourceforge.htmlunit.corejs.javascript.ErrorReporter;
 import net.sourceforge.htmlunit.corejs.javascript.Evaluator;
+import net.sourceforge.htmlunit.corejs.javascript.Function;
+import net.sourceforge.htmlunit.corejs.javascript.NativeObject;
 import net.sourceforge.htmlunit.corejs.javascript.Script;
 import net.sourceforge.htmlunit.corejs.javascript.ScriptRuntime;
 import net.sourceforge.htmlunit.corejs.javascript.Scriptable;
@@ -170,9 +172,66 @@ public class HtmlUnitContextFactory extends ContextFactory {
 //                    .preProcess(htmlPage, sourceCode, sourceName, null);
             }
 
-            return super.compileString(source, compiler, compilationErrorReporter,
-                    sourceName, lineno, securityDomain);
+            // the scripts of window.eval and the ones compiled for the debugger are not shared
+            if (isWindowEval || debugger_ != null || securityDomain != null || page == null) {
+                return super.compileString(source, compiler, compilationErrorReporter,
+                        sourceName, lineno, securityDomain);
+            }
+            return compileShared(page, source, compilationErrorReporter, sourceName, lineno);
+        }
+
+        /**
+         * Returns the compiled script from the {@link CompiledScriptCache}, compiling it under its shared
+         * source name if needed. The real source name is registered for the page to report the errors.
+         * @param page the page in which the script is executed
+         * @param source the preprocessed source code
+         * @param compilationErrorReporter the error reporter, may be <tt>null</tt>
+         * @param sourceName the real source name
+         * @param lineno the start line
+         * @return the compiled script
+         */
+        private Script compileShared(final HtmlPage page, final String source,
+                final ErrorReporter compilationErrorReporter, final String sourceName, final int lineno) {
+            final Object key = CompiledScriptCache.getKey(source, browserVersion_, getOptimizationLevel(), lineno);
+            final String sharedSourceName = CompiledScriptCache.getSourceName(key);
+            webClient_.getJavaScriptEngine().addSourceName(page, sharedSourceName, sourceName);
+            Script script = CompiledScriptCache.get(key);
+            if (script == null) {
+                script = super.compileString(source, null, compilationErrorReporter, sharedSourceName, lineno, null);
+                if (script != null) {
+                    CompiledScriptCache.put(key, script, source.length());
+                }
+            }
+            return script;
+        }
+    }
+
+    /**
+     * <span style="color:red">INTERNAL API - SUBJECT TO CHANGE AT ANY TIME - USE AT YOUR OWN RISK.</span><br/>
+     * Compiles the function of an event handler attribute, as {@link Context#compileFunction} does. The compiled
+     * code is shared through the {@link CompiledScriptCache} by all the handlers having the same code.
+     * @param cx the current context
+     * @param scope the scope of the function
+     * @param functionName the name of the function
+     * @param source the source code of the function declaration
+     * @param sourceName the source name reported in errors
+     * @param page the page containing the handler, <tt>null</tt> if it isn't an HTML page
+     * @return the function
+     */
+    public Function compileFunction(final Context cx, final Scriptable scope, final String functionName,
+            final String source, final String sourceName, final HtmlPage page) {
+        if (debugger_ != null || page == null || !(cx instanceof TimeoutContext)) {
+            return cx.compileFunction(scope, source, sourceName, 0, null);
         }
+        final Script script = ((TimeoutContext) cx).compileShared(page, source, cx.getErrorReporter(), sourceName, 0);
+
+        // the declaration defines the function in a holder rather than in the scope, which mustn't be modified
+        final NativeObject holder = new NativeObject();
+        holder.setParentScope(scope);
+        script.exec(cx, holder);
+        final Function function = (Function) holder.get(functionName, holder);
+        function.setParentScope(scope);
+        return function;
     }
 
     /**
@@ -210,8 +269,16 @@ public class HtmlUnitContextFactory extends ContextFactory {
     protected Context makeContext() {
         final TimeoutContext cx = new TimeoutContext(this);
 
-        // Use pure interpreter mode to get observeInstructionCount() callbacks.
-        cx.setOptimizationLevel(-1);
+        // The interpreter makes observeInstructionCount() callbacks by itself, the compiled code
+        // needs to be generated with them. The debugger works in interpreted mode only.
+        final int optimizationLevel = webClient_.getOptions().getJavaScriptOptimizationLevel();
+        if (optimizationLevel >= 0 && debugger_ == null) {
+            cx.setOptimizationLevel(optimizationLevel);
+            cx.setGenerateObserverCount(true);
+        }
+        else {
+            cx.setOptimizationLevel(-1);
+        }
 
         // Set threshold on how often we want to receive the callbacks
         cx.setInstructionObserverThreshold(INSTRUCTION_COUNT_THRESHOLD);
@@ -21,12 +21,16 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.WeakHashMap;
 
+import net.sourceforge.htmlunit.corejs.javascript.BaseFunction;
 import net.sourceforge.htmlunit.corejs.javascript.Context;
 import net.sourceforge.htmlunit.corejs.javascript.ContextAction;
 import net.sourceforge.htmlunit.corejs.javascript.Function;
 import net.sourceforge.htmlunit.corejs.javascript.FunctionObject;
+import net.sourceforge.htmlunit.corejs.javascript.RhinoException;
 import net.sourceforge.htmlunit.corejs.javascript.Script;
+import net.sourceforge.htmlunit.corejs.javascript.ScriptRuntime;
 import net.sourceforge.htmlunit.corejs.javascript.Scriptable;
 import net.sourceforge.htmlunit.corejs.javascript.ScriptableObject;
 
@@ -39,6 +43,7 @@ import com.gargoylesoftware.htmlunit.BrowserVersionFeatures;
 import com.gargoylesoftware.htmlunit.Page;
 import com.gargoylesoftware.htmlunit.ScriptException;
 import com.gargoylesoftware.htmlunit.SgmlPage;
+import com.gargoylesoftware.htmlunit.VirtualClock;
 import com.gargoylesoftware.htmlunit.WebAssert;
 import com.gargoylesoftware.htmlunit.WebClient;
 import com.gargoylesoftware.htmlunit.WebWindow;
@@ -78,9 +83,40 @@ public class JavaScriptEngine {
 
     private static final Log LOG = LogFactory.getLog(JavaScriptEngine.class);
 
+    /**
+     * Replaces the Date constructor by one using the clock of the client for the current date,
+     * keeping the original prototype so that <tt>instanceof Date</tt> still works.
+     */
+    private static final String VIRTUAL_DATE_FACTORY = "(function(NativeDate, now) {\n"
+        + "  var Date = function(year, month, date, hours, minutes, seconds, ms) {\n"
+        + "    if (!(this instanceof Date)) {\n"
+        + "      return new NativeDate(now()).toString();\n"
+        + "    }\n"
+        + "    switch (arguments.length) {\n"
+        + "      case 0: return new NativeDate(now());\n"
+        + "      case 1: return new NativeDate(year);\n"
+        + "      case 2: return new NativeDate(year, month);\n"
+        + "      case 3: return new NativeDate(year, month, date);\n"
+        + "      case 4: return new NativeDate(year, month, date, hours);\n"
+        + "      case 5: return new NativeDate(year, month, date, hours, minutes);\n"
+        + "      case 6: return new NativeDate(year, month, date, hours, minutes, seconds);\n"
+        + "      default: return new NativeDate(year, month, date, hours, minutes, seconds, ms);\n"
+        + "    }\n"
+        + "  };\n"
+        + "  Date.prototype = NativeDate.prototype;\n"
+        + "  Date.parse = NativeDate.parse;\n"
+        + "  Date.UTC = NativeDate.UTC;\n"
+        + "  if (NativeDate.now) {\n"
+        + "    Date.now = now;\n"
+        + "  }\n"
+        + "  return Date;\n"
+        + "})";
+
     private final WebClient webClient_;
     private final HtmlUnitContextFactory contextFactory_;
     private final JavaScriptConfiguration jsConfig_;
+    /** The attributes of the host functions, which depend on the browser version only. */
+    private final int functionAttributes_;
 
     private transient ThreadLocal<Boolean> javaScriptRunning_;
     private transient ThreadLocal<List<PostponedAction>> postponedActions_;
@@ -89,6 +125,9 @@ public class JavaScriptEngine {
     /** The JavaScriptExecutor corresponding to all windows of this Web client */
     private transient JavaScriptExecutor javaScriptExecutor_;
 
+    /** The real source names of the scripts compiled under a shared name, per page. */
+    private transient Map<HtmlPage, Map<String, String>> sourceNames_;
+
     /**
      * Key used to place the scope in which the execution of some JavaScript code
      * started as thread local attribute in current context.<br/>
@@ -113,6 +152,12 @@ public class JavaScriptEngine {
         contextFactory_ = new HtmlUnitContextFactory(webClient);
         initTransientFields();
         jsConfig_ = JavaScriptConfiguration.getInstance(webClient.getBrowserVersion());
+        if (webClient.getBrowserVersion().hasFeature(BrowserVersionFeatures.GENERATED_147)) {
+            functionAttributes_ = ScriptableObject.DONTENUM;
+        }
+        else {
+            functionAttributes_ = ScriptableObject.EMPTY;
+        }
     }
 
     /**
@@ -288,10 +333,37 @@ public class JavaScriptEngine {
 
         NativeFunctionToStringFunction.installFix(window, webClient.getBrowserVersion());
 
+        if (webClient.getOptions().isUseVirtualTime()) {
+            installVirtualDate(window, context, webClient.getClock());
+        }
+
         window.setPrototypes(prototypes);
         window.initialize(webWindow);
     }
 
+    /**
+     * Makes the JavaScript <tt>Date</tt> objects follow the clock of the client rather than the system clock.
+     * @param window the scope
+     * @param context the current context
+     * @param clock the clock
+     */
+    private static void installVirtualDate(final Window window, final Context context, final VirtualClock clock) {
+        final BaseFunction now = new BaseFunction() {
+            @Override
+            public Object call(final Context cx, final Scriptable scope, final Scriptable thisObj,
+                    final Object[] args) {
+                return Double.valueOf(clock.currentTimeMillis());
+            }
+        };
+        ScriptRuntime.setFunctionProtoAndParent(now, window);
+
+        final Function factory = (Function) context.evaluateString(window, VIRTUAL_DATE_FACTORY, "virtual Date", 1,
+            null);
+        final Object nativeDate = ScriptableObject.getProperty(window, "Date");
+        final Object date = factory.call(context, window, window, new Object[] {nativeDate, now});
+        ScriptableObject.defineProperty(window, "Date", date, ScriptableObject.DONTENUM);
+    }
+
     /**
      * Deletes the properties with the provided names.
      * @param window the scope from which properties have to be removed
@@ -354,30 +426,25 @@ public class JavaScriptEngine {
             scriptable.defineProperty(propertyName, null, readMethod, writeMethod, ScriptableObject.EMPTY);
         }
 
-        int attributes = ScriptableObject.EMPTY;
-        if (webClient_.getBrowserVersion().hasFeature(BrowserVersionFeatures.GENERATED_147)) {
-            attributes = ScriptableObject.DONTENUM;
-        }
         // the functions
         for (final String functionName : config.functionKeys()) {
             final Method method = config.getFunctionMethod(functionName);
             final FunctionObject functionObject = new FunctionObject(functionName, method, scriptable);
-            scriptable.defineProperty(functionName, functionObject, attributes);
+            scriptable.defineProperty(functionName, functionObject, functionAttributes_);
         }
     }
 
     private void configureConstants(final ClassConfiguration config,
             final ScriptableObject scriptable) {
-        for (final String constant : config.constants()) {
-            final Class<?> linkedClass = config.getHostClass();
-            try {
-                final Object value = linkedClass.getField(constant).get(null);
-                scriptable.defineProperty(constant, value, ScriptableObject.EMPTY);
-            }
-            catch (final Exception e) {
-                throw Context.reportRuntimeError("Cannot get field '" + constant + "' for type: "
-                    + config.getHostClass().getName());
-            }
+        final Map<String, Object> values;
+        try {
+            values = config.getConstantValues();
+        }
+        catch (final IllegalStateException e) {
+            throw Context.reportRuntimeError(e.getMessage());
+        }
+        for (final Map.Entry<String, Object> entry : values.entrySet()) {
+            scriptable.defineProperty(entry.getKey(), entry.getValue(), ScriptableObject.EMPTY);
         }
     }
 
@@ -588,7 +655,7 @@ public class JavaScriptEngine {
                 }
             }
             catch (final Exception e) {
-                handleJavaScriptException(new ScriptException(htmlPage_, e, getSourceCode(cx)), true);
+                handleJavaScriptException(createScriptException(htmlPage_, e, getSourceCode(cx)), true);
                 return null;
             }
             catch (final TimeoutError e) {
@@ -612,6 +679,54 @@ public class JavaScriptEngine {
         protected abstract String getSourceCode(final Context cx);
     }
 
+    /**
+     * Registers the real source name of a script compiled under a shared name (see {@link CompiledScriptCache})
+     * and executed in the specified page. When the same code appears several times in the page at the same line,
+     * the last registered name is reported.
+     * @param page the page
+     * @param sharedSourceName the name under which the script is compiled
+     * @param sourceName the real source name
+     */
+    void addSourceName(final HtmlPage page, final String sharedSourceName, final String sourceName) {
+        synchronized (sourceNames_) {
+            Map<String, String> names = sourceNames_.get(page);
+            if (names == null) {
+                names = new HashMap<String, String>();
+                sourceNames_.put(page, names);
+            }
+            names.put(sharedSourceName, sourceName);
+        }
+    }
+
+    /**
+     * Creates the exception reporting an error of a script, with the real source names of the page instead of
+     * the shared ones for the scripts compiled under a shared name.
+     * @param page the page
+     * @param e the error
+     * @param sourceCode the source code, may be <tt>null</tt>
+     * @return the exception
+     */
+    private ScriptException createScriptException(final HtmlPage page, final Exception e, final String sourceCode) {
+        if (page != null && e instanceof RhinoException) {
+            final String trace = e.getMessage() + ((RhinoException) e).getScriptStackTrace();
+            final Map<String, String> sourceNames = new HashMap<String, String>();
+            synchronized (sourceNames_) {
+                final Map<String, String> names = sourceNames_.get(page);
+                if (names != null) {
+                    for (final Map.Entry<String, String> entry : names.entrySet()) {
+                        if (trace.contains(entry.getKey())) {
+                            sourceNames.put(entry.getKey(), entry.getValue());
+                        }
+                    }
+                }
+            }
+            if (!sourceNames.isEmpty()) {
+                return new ScriptException(page, e, sourceCode, sourceNames);
+            }
+        }
+        return new ScriptException(page, e, sourceCode);
+    }
+
     private void doProcessPostponedActions() {
         if (Boolean.TRUE.equals(holdPostponedActions_.get())) {
             return;
@@ -675,7 +790,7 @@ public class JavaScriptEngine {
                         w.triggerOnError(scriptException);
                     }
                     catch (final Exception e) {
-                        handleJavaScriptException(new ScriptException(page, e, null), false);
+                        handleJavaScriptException(createScriptException(page, e, null), false);
                     }
                 }
             }
@@ -721,6 +836,7 @@ public class JavaScriptEngine {
         javaScriptRunning_ = new ThreadLocal<Boolean>();
         postponedActions_ = new ThreadLocal<List<PostponedAction>>();
         holdPostponedActions_ = new ThreadLocal<Boolean>();
+        sourceNames_ = new WeakHashMap<HtmlPage, Map<String, String>>();
     }
 
     private static class FallbackCaller extends ScriptableObject {
@@ -18,73 +18,174 @@ import java.net.InetAddress;
 import java.net.URL;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.TimeZone;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import net.sourceforge.htmlunit.corejs.javascript.Context;
 import net.sourceforge.htmlunit.corejs.javascript.ContextFactory;
+import net.sourceforge.htmlunit.corejs.javascript.Function;
 import net.sourceforge.htmlunit.corejs.javascript.FunctionObject;
-import net.sourceforge.htmlunit.corejs.javascript.NativeFunction;
 import net.sourceforge.htmlunit.corejs.javascript.Scriptable;
 import net.sourceforge.htmlunit.corejs.javascript.ScriptableObject;
 import net.sourceforge.htmlunit.corejs.javascript.Undefined;
 
 /**
  * Provides an implementation of Proxy Auto-Config (PAC).
+ * An instance holds the compiled script and can be shared between threads; the results of
+ * <tt>FindProxyForURL</tt> are kept for a short time.
  *
  * @see <a href="http://lib.ru/WEBMASTER/proxy-live.txt">PAC file format</a>
  *
  * @version $Revision$
  * @author Ahmed Ashour
+ * @author <a href="mailto:agent@local">agent</a>
  */
 public final class ProxyAutoConfig {
 
     private static final Pattern DOT_SPLIT_PATTERN = Pattern.compile("\\.");
+    private static final Pattern FUNCTION_PATTERN =
+        Pattern.compile("function\\s+FindProxyForURL\\s*\\(\\s*([\\w$]+)\\s*,");
 
-    private ProxyAutoConfig() {
+    /** Time in milliseconds during which a result or a DNS resolution is reused. */
+    private static final long CACHE_TTL = 60 * 1000;
+    private static final int MAX_CACHED_ENTRIES = 1000;
+    private static final Map<String, TimedValue> DNS_CACHE = createCache();
+
+    private final Scriptable scope_;
+    private final Function findProxyForURL_;
+    private final boolean hostOnly_;
+    private final Map<String, TimedValue> results_ = createCache();
+
+    /**
+     * A value with its expiration time.
+     */
+    private static final class TimedValue {
+        private final String value_;
+        private final long expiration_;
+
+        TimedValue(final String value) {
+            value_ = value;
+            expiration_ = System.currentTimeMillis() + CACHE_TTL;
+        }
+
+        boolean isExpired() {
+            return System.currentTimeMillis() > expiration_;
+        }
     }
 
     /**
-     * Evaluates the <tt>FindProxyForURL</tt> method of the specified content.
+     * Compiles the specified Proxy Auto-Config script.
      * @param content the JavaScript content
-     * @param url the URL to be retrieved
-     * @return semicolon-separated result
      */
-    public static String evaluate(final String content, final URL url) {
+    public ProxyAutoConfig(final String content) {
         final Context cx = ContextFactory.getGlobal().enterContext();
         try {
-            final ProxyAutoConfig config = new ProxyAutoConfig();
-            final Scriptable scope = cx.initStandardObjects();
-
-            config.defineMethod("isPlainHostName", scope);
-            config.defineMethod("dnsDomainIs", scope);
-            config.defineMethod("localHostOrDomainIs", scope);
-            config.defineMethod("isResolvable", scope);
-            config.defineMethod("isInNet", scope);
-            config.defineMethod("dnsResolve", scope);
-            config.defineMethod("myIpAddress", scope);
-            config.defineMethod("dnsDomainLevels", scope);
-            config.defineMethod("shExpMatch", scope);
-            config.defineMethod("weekdayRange", scope);
-            config.defineMethod("dateRange", scope);
-            config.defineMethod("timeRange", scope);
+            // the standard objects are sealed, the scope itself isn't as the script may use global variables
+            final ScriptableObject scope = cx.initStandardObjects(null, true);
+
+            defineMethod("isPlainHostName", scope);
+            defineMethod("dnsDomainIs", scope);
+            defineMethod("localHostOrDomainIs", scope);
+            defineMethod("isResolvable", scope);
+            defineMethod("isInNet", scope);
+            defineMethod("dnsResolve", scope);
+            defineMethod("myIpAddress", scope);
+            defineMethod("dnsDomainLevels", scope);
+            defineMethod("shExpMatch", scope);
+            defineMethod("weekdayRange", scope);
+            defineMethod("dateRange", scope);
+            defineMethod("timeRange", scope);
 
             cx.evaluateString(scope, "var ProxyConfig = function() {}; ProxyConfig.bindings = {}", "<init>", 1, null);
             cx.evaluateString(scope, content, "<Proxy Auto-Config>", 1, null);
-            final Object functionArgs[] = {url.toExternalForm(), url.getHost()};
-            final Object fObj = scope.get("FindProxyForURL", scope);
+            scope_ = scope;
+            findProxyForURL_ = (Function) scope.get("FindProxyForURL", scope);
+        }
+        finally {
+            Context.exit();
+        }
+        hostOnly_ = isHostOnly(content);
+    }
+
+    /**
+     * Indicates if the result of <tt>FindProxyForURL</tt> depends only on the host,
+     * i.e. if the script never uses the URL parameter.
+     */
+    private static boolean isHostOnly(final String content) {
+        final Matcher matcher = FUNCTION_PATTERN.matcher(content);
+        if (!matcher.find() || content.contains("arguments")) {
+            return false;
+        }
+        final String urlParameter = matcher.group(1);
+        final Matcher usages = Pattern.compile("(?<![\\w$.])" + Pattern.quote(urlParameter) + "(?![\\w$])")
+            .matcher(content.substring(matcher.end()));
+        return !usages.find();
+    }
+
+    /**
+     * Evaluates the <tt>FindProxyForURL</tt> method of the specified content.
+     * @param content the JavaScript content
+     * @param url the URL to be retrieved
+     * @return semicolon-separated result
+     */
+    public static String evaluate(final String content, final URL url) {
+        return new ProxyAutoConfig(content).findProxyForURL(url);
+    }
+
+    /**
+     * Evaluates the <tt>FindProxyForURL</tt> method of the compiled script for the specified URL.
+     * The result is reused during one minute for the same URL, or for the same host if the script
+     * doesn't look at the URL.
+     * @param url the URL to be retrieved
+     * @return semicolon-separated result
+     */
+    public String findProxyForURL(final URL url) {
+        final String key;
+        if (hostOnly_) {
+            key = url.getHost();
+        }
+        else {
+            key = url.toExternalForm();
+        }
+        synchronized (results_) {
+            final TimedValue cached = results_.get(key);
+            if (cached != null && !cached.isExpired()) {
+                return cached.value_;
+            }
+        }
 
-            final NativeFunction f = (NativeFunction) fObj;
-            final Object result = f.call(cx, scope, scope, functionArgs);
-            return Context.toString(result);
+        final String result;
+        final Context cx = ContextFactory.getGlobal().enterContext();
+        try {
+            final Object[] functionArgs = {url.toExternalForm(), url.getHost()};
+            synchronized (scope_) {
+                result = Context.toString(findProxyForURL_.call(cx, scope_, scope_, functionArgs));
+            }
         }
         finally {
             Context.exit();
         }
+
+        synchronized (results_) {
+            results_.put(key, new TimedValue(result));
+        }
+        return result;
     }
 
-    private void defineMethod(final String methodName, final Scriptable scope) {
-        for (Method method : getClass().getMethods()) {
+    private static Map<String, TimedValue> createCache() {
+        return new LinkedHashMap<String, TimedValue>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, TimedValue> eldest) {
+                return size() > MAX_CACHED_ENTRIES;
+            }
+        };
+    }
+
+    private static void defineMethod(final String methodName, final Scriptable scope) {
+        for (Method method : ProxyAutoConfig.class.getMethods()) {
             if (method.getName().equals(methodName)) {
                 final FunctionObject functionObject = new FunctionObject(methodName, method, scope);
                 ((ScriptableObject) scope).defineProperty(methodName, functionObject, ScriptableObject.EMPTY);
@@ -155,16 +256,29 @@ public final class ProxyAutoConfig {
 
     /**
      * Resolves the given DNS hostname into an IP address, and returns it in the dot separated format as a string.
+     * The resolutions (successful or not) are reused during one minute.
      * @param host the hostname to resolve
      * @return the resolved IP address
      */
     public static String dnsResolve(final String host) {
+        synchronized (DNS_CACHE) {
+            final TimedValue cached = DNS_CACHE.get(host);
+            if (cached != null && !cached.isExpired()) {
+                return cached.value_;
+            }
+        }
+
+        String address;
         try {
-            return InetAddress.getByName(host).getHostAddress();
+            address = InetAddress.getByName(host).getHostAddress();
         }
         catch (final Exception e) {
-            return null;
+            address = null;
+        }
+        synchronized (DNS_CACHE) {
+            DNS_CACHE.put(host, new TimedValue(address));
         }
+        return address;
     }
 
     /**
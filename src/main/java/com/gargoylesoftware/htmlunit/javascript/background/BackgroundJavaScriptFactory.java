@@ -135,6 +135,9 @@ public class BackgroundJavaScriptFactory {
         if (GAEUtils.isGaeMode()) {
             return new GAEJavaScriptExecutor(webClient);
         }
+        if (webClient.getOptions().isUseSharedJavaScriptExecutor()) {
+            return new SharedJavaScriptExecutor(webClient);
+        }
         return new DefaultJavaScriptExecutor(webClient);
     }
 
@@ -22,6 +22,7 @@ import java.util.List;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import com.gargoylesoftware.htmlunit.VirtualClock;
 import com.gargoylesoftware.htmlunit.WebClient;
 import com.gargoylesoftware.htmlunit.WebWindow;
 
@@ -45,6 +46,17 @@ public class DefaultJavaScriptExecutor implements JavaScriptExecutor {
 
     private transient Thread eventLoopThread_ = null;
 
+    private final transient VirtualClock clock_;
+
+    /** Wakes up the event loop when the clock is moved forward. */
+    private final transient Runnable clockListener_ = new Runnable() {
+        public void run() {
+            synchronized (DefaultJavaScriptExecutor.this) {
+                DefaultJavaScriptExecutor.this.notifyAll();
+            }
+        }
+    };
+
     /** Logging support. */
     private static final Log LOG = LogFactory.getLog(DefaultJavaScriptExecutor.class);
 
@@ -55,6 +67,16 @@ public class DefaultJavaScriptExecutor implements JavaScriptExecutor {
     public DefaultJavaScriptExecutor(final WebClient webClient) {
         jobManagerList_ = new LinkedList<WeakReference<JavaScriptJobManager>>();
         webClient_ = new WeakReference<WebClient>(webClient);
+        clock_ = webClient.getClock();
+        clock_.addListener(clockListener_);
+    }
+
+    /**
+     * Returns the clock of the client, according to which the jobs are executed.
+     * @return the clock
+     */
+    protected VirtualClock getClock() {
+        return clock_;
     }
 
     /**
@@ -150,7 +172,7 @@ public class DefaultJavaScriptExecutor implements JavaScriptExecutor {
             if (jobManager != null) {
                 final JavaScriptJob earliestJob = jobManager.getEarliestJob();
                 if (earliestJob != null) {
-                    final long waitTime = earliestJob.getTargetExecutionTime() - System.currentTimeMillis();
+                    final long waitTime = earliestJob.getTargetExecutionTime() - clock_.currentTimeMillis();
 
                     // do we have to execute the earliest job
                     if (waitTime < 1) {
@@ -174,9 +196,11 @@ public class DefaultJavaScriptExecutor implements JavaScriptExecutor {
                 break;
             }
 
-            // nothing to do, let's sleep a bit
+            // nothing to do, let's sleep a bit (unless the clock is moved forward)
             try {
-                Thread.sleep(sleepInterval);
+                synchronized (this) {
+                    wait(sleepInterval);
+                }
             }
             catch (final InterruptedException e) {
                 // nothing, probably a shutdown notification
@@ -208,6 +232,7 @@ public class DefaultJavaScriptExecutor implements JavaScriptExecutor {
     /** Notes that this thread has been shutdown. */
     public void shutdown() {
         shutdown_ = true;
+        clock_.removeListener(clockListener_);
         killThread();
     }
 }
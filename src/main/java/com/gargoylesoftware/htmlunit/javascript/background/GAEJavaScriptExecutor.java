@@ -51,7 +51,7 @@ class GAEJavaScriptExecutor extends DefaultJavaScriptExecutor {
     @Override
     public int pumpEventLoop(final long timeoutMillis) {
         int count = 0;
-        long currentTime = System.currentTimeMillis();
+        long currentTime = getClock().currentTimeMillis();
         final long expirationTime = currentTime + timeoutMillis;
 
         while (currentTime < expirationTime) {
@@ -82,7 +82,7 @@ class GAEJavaScriptExecutor extends DefaultJavaScriptExecutor {
             if (ran) {
                 count++;
             }
-            currentTime = System.currentTimeMillis();
+            currentTime = getClock().currentTimeMillis();
         }
         return count;
     }
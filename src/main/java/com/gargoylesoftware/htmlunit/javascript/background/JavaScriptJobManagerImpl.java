@@ -61,6 +61,9 @@ class JavaScriptJobManagerImpl implements JavaScriptJobManager {
 
     private transient JavaScriptJob currentlyRunningJob_ = null;
 
+    /** Notified when a job is added, may be <tt>null</tt>. */
+    private transient volatile Runnable jobsChangedListener_;
+
     /** A counter used to generate the IDs assigned to {@link JavaScriptJob}s. */
     private static final AtomicInteger NEXT_JOB_ID_ = new AtomicInteger(1);
 
@@ -100,6 +103,11 @@ class JavaScriptJobManagerImpl implements JavaScriptJobManager {
         }
         final int id = NEXT_JOB_ID_.getAndIncrement();
         job.setId(Integer.valueOf(id));
+        final long clockOffset = w.getWebClient().getClock().getOffset();
+        if (clockOffset != 0) {
+            // the job has been scheduled according to the system clock
+            job.setTargetExecutionTime(job.getTargetExecutionTime() + clockOffset);
+        }
 
         synchronized (this) {
             scheduledJobsQ_.add(job);
@@ -115,9 +123,22 @@ class JavaScriptJobManagerImpl implements JavaScriptJobManager {
             notify();
         }
 
+        final Runnable listener = jobsChangedListener_;
+        if (listener != null) {
+            listener.run();
+        }
         return id;
     }
 
+    /**
+     * Sets the listener to notify when a job is added, allowing an executor to wait exactly
+     * until the earliest job is due instead of polling.
+     * @param listener the listener, <tt>null</tt> to remove it
+     */
+    void setJobsChangedListener(final Runnable listener) {
+        jobsChangedListener_ = listener;
+    }
+
     /** {@inheritDoc} */
     public synchronized void removeJob(final int id) {
         for (final JavaScriptJob job : scheduledJobsQ_) {
@@ -192,7 +213,7 @@ class JavaScriptJobManagerImpl implements JavaScriptJobManager {
     public int waitForJobsStartingBefore(final long delayMillis) {
         final boolean debug = LOG.isDebugEnabled();
 
-        final long latestExecutionTime = System.currentTimeMillis() + delayMillis;
+        final long latestExecutionTime = currentTimeMillis() + delayMillis;
         if (debug) {
             LOG.debug("Waiting for all jobs that have execution time before "
                   + delayMillis + " (" + latestExecutionTime + ") to finish");
@@ -250,6 +271,18 @@ class JavaScriptJobManagerImpl implements JavaScriptJobManager {
         return window_.get();
     }
 
+    /**
+     * Returns the current time according to the clock of the client owning the window.
+     * @return the current time in milliseconds
+     */
+    private long currentTimeMillis() {
+        final WebWindow window = getWindow();
+        if (window == null) {
+            return System.currentTimeMillis();
+        }
+        return window.getWebClient().getClock().currentTimeMillis();
+    }
+
     /**
      * Utility method to print current queue.
      */
@@ -288,7 +321,7 @@ class JavaScriptJobManagerImpl implements JavaScriptJobManager {
             return false;
         }
 
-        final long currentTime = System.currentTimeMillis();
+        final long currentTime = currentTimeMillis();
         if (job.getTargetExecutionTime() > currentTime) {
             return false;
         }
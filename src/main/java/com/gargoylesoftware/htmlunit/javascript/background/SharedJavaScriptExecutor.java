@@ -0,0 +1,278 @@
+/*
+ * Copyright (c) 2002-2012 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.javascript.background;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.gargoylesoftware.htmlunit.WebClient;
+import com.gargoylesoftware.htmlunit.WebWindow;
+
+/**
+ * An event loop executing the JavaScript jobs on a pool of threads shared by all the {@link WebClient}s
+ * using it, rather than on a dedicated thread per client.
+ *
+ * <p>The pool schedules each client exactly at the target execution time of its earliest job and
+ * is notified by the job managers when new jobs are added, therefore no thread is woken up while nothing
+ * is due. The jobs of a client are never executed concurrently, as with {@link DefaultJavaScriptExecutor}.</p>
+ *
+ * @version $Revision$
+ * @author <a href="mailto:agent@local">agent</a>
+ * @see com.gargoylesoftware.htmlunit.WebClientOptions#setUseSharedJavaScriptExecutor(boolean)
+ */
+public class SharedJavaScriptExecutor extends DefaultJavaScriptExecutor {
+    private static final long serialVersionUID = -3290262591566893564L;
+
+    /** Logging support. */
+    private static final Log LOG = LogFactory.getLog(SharedJavaScriptExecutor.class);
+
+    /** The maximum number of jobs of a client executed before letting the other clients run. */
+    private static final int JOBS_PER_RUN = 100;
+
+    /** The interval used to poll the job managers which don't notify about new jobs. */
+    private static final long POLL_INTERVAL = 10;
+
+    /** The number of cancelled executions after which the cancelled tasks are removed from the pool's queue. */
+    private static final int PURGE_INTERVAL = 100;
+
+    /** The pool shared by all the instances, its threads are daemons and terminate when idle. */
+    private static final ScheduledThreadPoolExecutor SCHEDULER = createScheduler();
+
+    /** The number of instances which have not been shut down. */
+    private static final AtomicInteger CLIENT_COUNT = new AtomicInteger();
+
+    /** The number of cancelled executions, used to purge them from the pool's queue from time to time. */
+    private static final AtomicInteger CANCELLED_COUNT = new AtomicInteger();
+
+    private final transient ReentrantLock runLock_ = new ReentrantLock();
+    private final transient Runnable jobsChangedListener_ = new Runnable() {
+        public void run() {
+            scheduleNextRun();
+        }
+    };
+    private volatile boolean shutdown_;
+    private transient boolean polling_;
+    private transient ScheduledFuture<?> nextRun_;
+    private transient Runnable nextRunTask_;
+    private transient long nextRunTime_;
+    private transient volatile Thread runningThread_;
+
+    /**
+     * Creates an event loop for the specified client.
+     * @param webClient the client
+     */
+    public SharedJavaScriptExecutor(final WebClient webClient) {
+        super(webClient);
+        CLIENT_COUNT.incrementAndGet();
+        getClock().addListener(jobsChangedListener_);
+    }
+
+    /**
+     * Creates the pool shared by all the instances.
+     * @return the pool
+     */
+    private static ScheduledThreadPoolExecutor createScheduler() {
+        final AtomicInteger threadCount = new AtomicInteger();
+        final ThreadFactory threadFactory = new ThreadFactory() {
+            public Thread newThread(final Runnable r) {
+                final Thread thread = new Thread(r, "Shared JS executor " + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+        final int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+        final ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(threads, threadFactory);
+        // no thread is kept once the last client is gone
+        scheduler.setKeepAliveTime(1, TimeUnit.SECONDS);
+        scheduler.allowCoreThreadTimeOut(true);
+        return scheduler;
+    }
+
+    /**
+     * Cancels the specified execution. Java 6 pools keep the cancelled tasks queued until their delay
+     * expires, therefore they are purged once in a while.
+     * @param run the execution to cancel
+     */
+    private static void cancel(final ScheduledFuture<?> run) {
+        if (run.cancel(false) && CANCELLED_COUNT.incrementAndGet() % PURGE_INTERVAL == 0) {
+            SCHEDULER.purge();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public synchronized void addWindow(final WebWindow newWindow) {
+        final JavaScriptJobManager jobManager = newWindow.getJobManager();
+        if (jobManager instanceof JavaScriptJobManagerImpl) {
+            ((JavaScriptJobManagerImpl) jobManager).setJobsChangedListener(jobsChangedListener_);
+        }
+        else if (jobManager != null) {
+            polling_ = true;
+        }
+        super.addWindow(newWindow);
+    }
+
+    /**
+     * No dedicated thread is needed: schedules the execution of the earliest job on the shared pool.
+     */
+    @Override
+    protected void startThreadIfNeeded() {
+        scheduleNextRun();
+    }
+
+    /**
+     * Schedules the next execution on the shared pool according to the earliest job,
+     * unless an earlier execution is already scheduled.
+     */
+    private synchronized void scheduleNextRun() {
+        if (shutdown_) {
+            return;
+        }
+        long time = Long.MAX_VALUE;
+        final JavaScriptJobManager jobManager = getJobManagerWithEarliestJob();
+        if (jobManager != null) {
+            final JavaScriptJob earliestJob = jobManager.getEarliestJob();
+            if (earliestJob != null) {
+                time = earliestJob.getTargetExecutionTime();
+            }
+        }
+        final long now = getClock().currentTimeMillis();
+        if (polling_) {
+            time = Math.min(time, now + POLL_INTERVAL);
+        }
+        if (time == Long.MAX_VALUE) {
+            return;
+        }
+        if (nextRun_ != null && !nextRun_.isDone()) {
+            if (nextRunTime_ <= time) {
+                return;
+            }
+            cancel(nextRun_);
+        }
+        nextRunTime_ = time;
+        nextRunTask_ = new ScheduledRun();
+        nextRun_ = SCHEDULER.schedule(nextRunTask_, Math.max(0, time - now), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * An execution scheduled on the pool. It stops being the pending execution as soon as it starts,
+     * so that the executions requested while it runs are scheduled.
+     */
+    private final class ScheduledRun implements Runnable {
+        public void run() {
+            synchronized (SharedJavaScriptExecutor.this) {
+                if (nextRunTask_ == this) {
+                    nextRun_ = null;
+                    nextRunTask_ = null;
+                }
+            }
+            SharedJavaScriptExecutor.this.run();
+        }
+    }
+
+    /**
+     * Executes the jobs which are due, then schedules the next execution.
+     */
+    @Override
+    public void run() {
+        if (!runLock_.tryLock()) {
+            // another thread is executing the jobs of this client and schedules the next execution when done,
+            // unless it has already released the lock
+            if (!runLock_.isLocked()) {
+                scheduleNextRun();
+            }
+            return;
+        }
+        try {
+            runningThread_ = Thread.currentThread();
+            for (int i = 0; i < JOBS_PER_RUN && !shutdown_; i++) {
+                final JavaScriptJobManager jobManager = getJobManagerWithEarliestJob();
+                if (jobManager == null) {
+                    break;
+                }
+                final JavaScriptJob earliestJob = jobManager.getEarliestJob();
+                if (earliestJob == null || earliestJob.getTargetExecutionTime() > getClock().currentTimeMillis()) {
+                    break;
+                }
+                jobManager.runSingleJob(earliestJob);
+            }
+        }
+        catch (final RuntimeException e) {
+            LOG.error("Job execution failed: " + e.getMessage(), e);
+        }
+        finally {
+            runningThread_ = null;
+            runLock_.unlock();
+        }
+        scheduleNextRun();
+    }
+
+    /**
+     * Executes the jobs in the eventLoop till timeoutMillis expires or the eventLoop becomes empty.
+     * No use in non-GAE mode.
+     * @param timeoutMillis the timeout in milliseconds
+     * @return the number of jobs executed
+     */
+    @Override
+    public int pumpEventLoop(final long timeoutMillis) {
+        return 0;
+    }
+
+    /**
+     * Cancels the scheduled executions and waits for the job currently running, if any.
+     */
+    @Override
+    public void shutdown() {
+        getClock().removeListener(jobsChangedListener_);
+        synchronized (this) {
+            final boolean wasShutdown = shutdown_;
+            shutdown_ = true;
+            if (nextRun_ != null) {
+                cancel(nextRun_);
+                nextRun_ = null;
+                nextRunTask_ = null;
+            }
+            if (!wasShutdown && CLIENT_COUNT.decrementAndGet() == 0) {
+                // the idle threads terminate after the keep alive time once the queue is empty
+                SCHEDULER.purge();
+            }
+        }
+        final Thread runningThread = runningThread_;
+        if (runningThread != null && runningThread != Thread.currentThread()) {
+            runningThread.interrupt();
+        }
+        try {
+            if (runLock_.tryLock(10, TimeUnit.SECONDS)) {
+                runLock_.unlock();
+            }
+            else {
+                LOG.warn("Job still running in shared JS executor at " + System.currentTimeMillis());
+            }
+        }
+        catch (final InterruptedException e) {
+            LOG.warn("InterruptedException while waiting for the running job to finish", e);
+        }
+        super.shutdown();
+    }
+}
@@ -16,7 +16,9 @@ package com.gargoylesoftware.htmlunit.javascript.configuration;
 
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -30,6 +32,7 @@ import com.gargoylesoftware.htmlunit.javascript.SimpleScriptable;
  * @author <a href="mailto:mbowler@GargoyleSoftware.com">Mike Bowler</a>
  * @author Chris Erskine
  * @author Ahmed Ashour
+ * @author <a href="mailto:agent@local">agent</a>
  */
 public final class ClassConfiguration {
     private static final String GETTER_PREFIX = "jsxGet_";
@@ -39,6 +42,7 @@ public final class ClassConfiguration {
     private Map<String, PropertyInfo> propertyMap_ = new HashMap<String, PropertyInfo>();
     private Map<String, FunctionInfo> functionMap_ = new HashMap<String, FunctionInfo>();
     private List<String> constants_ = new ArrayList<String>();
+    private volatile Map<String, Object> constantValues_;
     private String extendedClassName_;
     private final Class<? extends SimpleScriptable> hostClass_;
     /**
@@ -159,6 +163,30 @@ public final class ClassConfiguration {
         return constants_;
     }
 
+    /**
+     * Returns the values of the constants. They are read only once as the configuration is shared
+     * by all the windows using the same browser version.
+     * @return the values of the constants per name, in the order of {@link #constants()}
+     */
+    public Map<String, Object> getConstantValues() {
+        Map<String, Object> values = constantValues_;
+        if (values == null) {
+            values = new LinkedHashMap<String, Object>();
+            for (final String constant : constants_) {
+                try {
+                    values.put(constant, hostClass_.getField(constant).get(null));
+                }
+                catch (final Exception e) {
+                    throw new IllegalStateException("Cannot get field '" + constant + "' for type: "
+                        + hostClass_.getName());
+                }
+            }
+            values = Collections.unmodifiableMap(values);
+            constantValues_ = values;
+        }
+        return values;
+    }
+
     /**
      * Add the function to the configuration.
      * @param name - Name of the function
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2002-2012 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.javascript.host;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import com.gargoylesoftware.htmlunit.html.DomNode;
+import com.gargoylesoftware.htmlunit.javascript.host.css.ComputedCSSStyleDeclaration;
+
+/**
+ * Cache of the computed styles of the elements of a window.
+ *
+ * <p>Each cached style is stamped with the generation at which it has been computed. The changes of the DOM
+ * don't scan the cached styles: they only record their generation on the changed node (for the node and its
+ * subtree), on its parent (for its siblings) and, if needed, on its ancestors. A cached style is checked
+ * against these generations when it is read, which costs the depth of the element. A change of the
+ * stylesheets simply invalidates all the styles computed before it.</p>
+ *
+ * <p>All the maps use weak keys because we don't want this cache to be the only reason
+ * nodes are kept around in the JVM, if all other references to them are gone.</p>
+ *
+ * @version $Revision$
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+class ComputedStylesCache {
+
+    private final Map<DomNode, CachedStyle> styles_ = new WeakHashMap<DomNode, CachedStyle>();
+    /** Generation of the last change of a node, invalidating the node and its descendants. */
+    private final Map<DomNode, Long> subtreeChanges_ = new WeakHashMap<DomNode, Long>();
+    /** Generation of the last change of a child of a node, invalidating all the children of the node. */
+    private final Map<DomNode, Long> childrenChanges_ = new WeakHashMap<DomNode, Long>();
+    /** Generation of the last change of a descendant of a node affecting the node itself. */
+    private final Map<DomNode, Long> descendantChanges_ = new WeakHashMap<DomNode, Long>();
+    private long generation_;
+    private long styleSheetsChange_;
+
+    private static final class CachedStyle {
+        private final ComputedCSSStyleDeclaration style_;
+        private final long generation_;
+
+        private CachedStyle(final ComputedCSSStyleDeclaration style, final long generation) {
+            style_ = style;
+            generation_ = generation;
+        }
+    }
+
+    /**
+     * Returns the cached style of the specified node if it is still valid.
+     * @param node the node
+     * @return the cached style, <tt>null</tt> if none
+     */
+    synchronized ComputedCSSStyleDeclaration get(final DomNode node) {
+        final CachedStyle cached = styles_.get(node);
+        if (cached == null) {
+            return null;
+        }
+        if (cached.generation_ < generation_ && !isValid(node, cached.generation_)) {
+            styles_.remove(node);
+            return null;
+        }
+        return cached.style_;
+    }
+
+    private boolean isValid(final DomNode node, final long generation) {
+        if (styleSheetsChange_ > generation
+            || isChangedAfter(descendantChanges_, node, generation)
+            || isChangedAfter(childrenChanges_, node.getParentNode(), generation)) {
+            return false;
+        }
+        for (DomNode n = node; n != null; n = n.getParentNode()) {
+            if (isChangedAfter(subtreeChanges_, n, generation)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isChangedAfter(final Map<DomNode, Long> changes, final DomNode node,
+            final long generation) {
+        if (node == null) {
+            return false;
+        }
+        final Long change = changes.get(node);
+        return change != null && change.longValue() > generation;
+    }
+
+    /**
+     * Caches the style computed for the specified node.
+     * @param node the node
+     * @param style the computed style
+     */
+    synchronized void put(final DomNode node, final ComputedCSSStyleDeclaration style) {
+        styles_.put(node, new CachedStyle(style, generation_));
+    }
+
+    /**
+     * Records a change of a node, which invalidates the styles of the node, of its descendants and of its siblings.
+     * @param changed the changed node
+     * @param parent the parent of the changed node (the former one if the node has been removed)
+     * @param affectsAncestors whether the change invalidates the styles of the ancestors as well
+     */
+    synchronized void nodeChanged(final DomNode changed, final DomNode parent, final boolean affectsAncestors) {
+        if (styles_.isEmpty()) {
+            // nothing to invalidate: styles computed later will have a more recent generation anyway
+            return;
+        }
+        final Long generation = Long.valueOf(++generation_);
+        subtreeChanges_.put(changed, generation);
+        if (parent != null) {
+            childrenChanges_.put(parent, generation);
+            if (affectsAncestors) {
+                for (DomNode ancestor = parent; ancestor != null; ancestor = ancestor.getParentNode()) {
+                    descendantChanges_.put(ancestor, generation);
+                }
+            }
+        }
+    }
+
+    /**
+     * Records a change of the stylesheets, which invalidates all the cached styles.
+     */
+    synchronized void styleSheetsChanged() {
+        if (styles_.isEmpty()) {
+            return;
+        }
+        styleSheetsChange_ = ++generation_;
+        // the changes recorded so far concern only styles which are now invalid anyway
+        subtreeChanges_.clear();
+        childrenChanges_.clear();
+        descendantChanges_.clear();
+    }
+}
@@ -21,7 +21,10 @@ import net.sourceforge.htmlunit.corejs.javascript.JavaScriptException;
 import net.sourceforge.htmlunit.corejs.javascript.Scriptable;
 
 import com.gargoylesoftware.htmlunit.BrowserVersionFeatures;
+import com.gargoylesoftware.htmlunit.SgmlPage;
 import com.gargoylesoftware.htmlunit.html.DomNode;
+import com.gargoylesoftware.htmlunit.html.HtmlPage;
+import com.gargoylesoftware.htmlunit.javascript.HtmlUnitContextFactory;
 import com.gargoylesoftware.htmlunit.javascript.SimpleScriptable;
 
 /**
@@ -73,8 +76,11 @@ public class EventHandler extends BaseFunction {
         final SimpleScriptable jsObj = (SimpleScriptable) node_.getScriptObject();
         // compile "just in time"
         if (realFunction_ == null) {
-            realFunction_ = cx.compileFunction(jsObj, jsSnippet_, eventName_ + " event for " + node_
-                + " in " + node_.getPage().getWebResponse().getWebRequest().getUrl(), 0, null);
+            final SgmlPage page = node_.getPage();
+            final HtmlUnitContextFactory factory = page.getWebClient().getJavaScriptEngine().getContextFactory();
+            realFunction_ = factory.compileFunction(cx, jsObj, eventName_, jsSnippet_, eventName_ + " event for "
+                + node_ + " in " + page.getWebResponse().getWebRequest().getUrl(),
+                page instanceof HtmlPage ? (HtmlPage) page : null);
         }
 
         final Object result = realFunction_.call(cx, scope, thisObj, args);
@@ -18,10 +18,12 @@ import java.util.ArrayList;
 import java.util.List;
 
 import net.sourceforge.htmlunit.corejs.javascript.Context;
+import net.sourceforge.htmlunit.corejs.javascript.EcmaError;
 import net.sourceforge.htmlunit.corejs.javascript.Function;
 import net.sourceforge.htmlunit.corejs.javascript.Interpreter;
 import net.sourceforge.htmlunit.corejs.javascript.JavaScriptException;
 import net.sourceforge.htmlunit.corejs.javascript.RhinoException;
+import net.sourceforge.htmlunit.corejs.javascript.ScriptRuntime;
 import net.sourceforge.htmlunit.corejs.javascript.Scriptable;
 import net.sourceforge.htmlunit.corejs.javascript.Undefined;
 
@@ -230,8 +232,6 @@ public class Node extends SimpleScriptable {
         exception.setParentScope(getWindow());
 
         // get current line and file name
-        // this method can only be used in interpreted mode. If one day we choose to use compiled mode,
-        // then we'll have to find an other way here.
         final String fileName;
         final int lineNumber;
         if (Context.getCurrentContext().getOptimizationLevel() == -1) {
@@ -241,7 +241,10 @@ public class Node extends SimpleScriptable {
             lineNumber = linep[0];
         }
         else {
-            throw new Error("HtmlUnit not ready to run in compiled mode");
+            // in compiled mode, the position is found in the Java stack of the generated classes
+            final EcmaError error = ScriptRuntime.constructError("Error", "");
+            fileName = StringUtils.defaultString(error.sourceName()).replaceFirst("script in (.*) from .*", "$1");
+            lineNumber = error.lineNumber();
         }
 
         exception.setLocation(fileName, lineNumber);
@@ -80,7 +80,7 @@ public class Storage extends SimpleScriptable {
      * @param key the item key
      */
     public void jsxFunction_removeItem(final String key) {
-        getMap().remove(key);
+        getStorageImpl().remove(type_, getPage(), key);
     }
 
     /**
@@ -90,16 +90,27 @@ public class Storage extends SimpleScriptable {
      */
     public String jsxFunction_key(final int index) {
         int counter = 0;
-        for (final String key : getMap().keySet()) {
-            if (counter++ == index) {
-                return key;
+        final Map<String, String> map = getMap();
+        synchronized (map) {
+            for (final String key : map.keySet()) {
+                if (counter++ == index) {
+                    return key;
+                }
             }
         }
         return null;
     }
 
     private Map<String, String> getMap() {
-        return StorageImpl.getInstance().getMap(type_, (HtmlPage) getWindow().getWebWindow().getEnclosedPage());
+        return getStorageImpl().getMap(type_, getPage());
+    }
+
+    private StorageImpl getStorageImpl() {
+        return StorageImpl.getInstance(getWindow().getWebWindow().getWebClient());
+    }
+
+    private HtmlPage getPage() {
+        return (HtmlPage) getWindow().getWebWindow().getEnclosedPage();
     }
 
     /**
@@ -117,14 +128,14 @@ public class Storage extends SimpleScriptable {
      * @param data the value
      */
     public void jsxFunction_setItem(final String key, final String data) {
-        getMap().put(key, data);
+        getStorageImpl().set(type_, getPage(), key, data);
     }
 
     /**
      * Clears all items.
      */
     public void jsxFunction_clear() {
-        StorageImpl.getInstance().clear(type_, (HtmlPage) getWindow().getWebWindow().getEnclosedPage());
+        getStorageImpl().clear(type_, getPage());
     }
 
     /**
@@ -20,15 +20,27 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
-import java.io.Serializable;
+import java.io.UnsupportedEncodingException;
 import java.net.URL;
+import java.net.URLEncoder;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import com.gargoylesoftware.htmlunit.WebClient;
 import com.gargoylesoftware.htmlunit.WebWindow;
 import com.gargoylesoftware.htmlunit.html.HtmlPage;
 import com.gargoylesoftware.htmlunit.javascript.host.Storage.Type;
@@ -36,51 +48,143 @@ import com.gargoylesoftware.htmlunit.javascript.host.Storage.Type;
 /**
  * The actual implementation of different types of Storage.
  *
+ * <p>Without {@link com.gargoylesoftware.htmlunit.WebClientOptions#setStorageDirectory(File) storage directory},
+ * the storages live in memory only and are shared by all the {@link WebClient}s. Otherwise, the global and local
+ * storages are persisted in one file per origin in the directory. The files are read when an origin is first
+ * accessed, and the modifications are written in the background, in batches, rather than by the JavaScript
+ * thread on each change.</p>
+ *
  * @version $Revision$
  * @author Ahmed Ashour
+ * @author <a href="mailto:agent@local">agent</a>
  */
-final class StorageImpl implements Serializable {
+final class StorageImpl {
 
     private static final Log LOG = LogFactory.getLog(Storage.class);
 
-    private static StorageImpl SINGLETON_ = new StorageImpl();
+    /** The delay before the modifications are written to the disk, in milliseconds. */
+    private static final long FLUSH_DELAY = 1000;
 
-    static {
-        load();
-    }
+    private static final StorageImpl IN_MEMORY = new StorageImpl(null);
+    private static final Map<File, StorageImpl> PERSISTENT = new HashMap<File, StorageImpl>();
+    private static ScheduledExecutorService Flusher_;
+
+    private final File directory_;
+
+    private final ConcurrentMap<String, Map<String, String>> globalStorage_
+        = new ConcurrentHashMap<String, Map<String, String>>();
 
-    private Map<String, Map<String, String>> globalStorage_
-        = new HashMap<String, Map<String, String>>();
+    private final ConcurrentMap<String, Map<String, String>> localStorage_
+        = new ConcurrentHashMap<String, Map<String, String>>();
 
-    private Map<String, Map<String, String>> localStorage_
-        = new HashMap<String, Map<String, String>>();
+    private final ConcurrentMap<String, Map<String, String>> sessionStorage_
+        = new ConcurrentHashMap<String, Map<String, String>>();
+
+    /** The modified storages which have to be written, per file. */
+    private final Map<File, Map<String, String>> modified_ = new HashMap<File, Map<String, String>>();
+    private ScheduledFuture<?> nextFlush_;
+
+    private final Runnable flushTask_ = new Runnable() {
+        public void run() {
+            flush();
+        }
+    };
 
-    private transient Map<String, Map<String, String>> sessionStorage_
-        = new HashMap<String, Map<String, String>>();
+    private StorageImpl(final File directory) {
+        directory_ = directory;
+    }
+
+    /**
+     * Returns the storages to use for the specified client.
+     * @param webClient the client
+     * @return the storages
+     */
+    static StorageImpl getInstance(final WebClient webClient) {
+        final File directory = webClient.getOptions().getStorageDirectory();
+        if (directory == null) {
+            return IN_MEMORY;
+        }
+        synchronized (PERSISTENT) {
+            final File key = directory.getAbsoluteFile();
+            StorageImpl storage = PERSISTENT.get(key);
+            if (storage == null) {
+                if (PERSISTENT.isEmpty()) {
+                    Runtime.getRuntime().addShutdownHook(new Thread("Storage flush") {
+                        @Override
+                        public void run() {
+                            flushAll();
+                        }
+                    });
+                }
+                storage = new StorageImpl(key);
+                PERSISTENT.put(key, storage);
+            }
+            return storage;
+        }
+    }
 
-    private StorageImpl() { }
+    /**
+     * Writes the pending modifications of all the persistent storages.
+     */
+    static void flushAll() {
+        synchronized (PERSISTENT) {
+            for (final StorageImpl storage : PERSISTENT.values()) {
+                storage.flush();
+            }
+        }
+    }
 
-    static StorageImpl getInstance() {
-        return SINGLETON_;
+    private static synchronized ScheduledExecutorService getFlusher() {
+        if (Flusher_ == null) {
+            Flusher_ = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                public Thread newThread(final Runnable r) {
+                    final Thread thread = new Thread(r, "Storage flusher");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return Flusher_;
     }
 
     void set(final Type type, final HtmlPage page, final String key, final String data) {
-        set(getStorage(type), getKey(type, page), key, data);
+        final Map<String, String> map = getMap(type, page);
+        map.put(key, data);
+        modified(type, page, map);
     }
 
+    void remove(final Type type, final HtmlPage page, final String key) {
+        final Map<String, String> map = getMap(type, page);
+        if (map.remove(key) != null) {
+            modified(type, page, map);
+        }
+    }
+
+    /**
+     * Returns the content of a storage. The returned map is synchronized: iterating over it has to be done
+     * while holding its lock, and modifying it has to be done through this class.
+     * @param type the storage type
+     * @param page the page
+     * @return the content of the storage
+     */
     Map<String, String> getMap(final Type type, final HtmlPage page) {
-        final Map<String, Map<String, String>> storage = getStorage(type);
+        final ConcurrentMap<String, Map<String, String>> storage = getStorage(type);
         final String key = getKey(type, page);
         Map<String, String> map = storage.get(key);
         if (map == null) {
-            map = new LinkedHashMap<String, String>();
-            storage.put(key, map);
+            map = Collections.synchronizedMap(load(type, key));
+            final Map<String, String> existing = storage.putIfAbsent(key, map);
+            if (existing != null) {
+                map = existing;
+            }
         }
         return map;
     }
 
     void clear(final Type type, final HtmlPage page) {
-        getStorage(type).remove(getKey(type, page));
+        final Map<String, String> map = getMap(type, page);
+        map.clear();
+        modified(type, page, map);
     }
 
     private String getKey(final Type type, final HtmlPage page) {
@@ -101,7 +205,7 @@ final class StorageImpl implements Serializable {
         }
     }
 
-    Map<String, Map<String, String>> getStorage(final Type type) {
+    ConcurrentMap<String, Map<String, String>> getStorage(final Type type) {
         switch (type) {
             case GLOBAL_STORAGE:
                 return globalStorage_;
@@ -117,54 +221,111 @@ final class StorageImpl implements Serializable {
         }
     }
 
-    private static void set(final Map<String, Map<String, String>> storage, final String url,
-            final String key, final String data) {
-        Map<String, String> map = storage.get(url);
-        if (map == null) {
-            map = new LinkedHashMap<String, String>();
-            storage.put(url, map);
-        }
-        map.put(key, data);
-        save();
+    String get(final Type type, final HtmlPage page, final String key) {
+        return getMap(type, page).get(key);
     }
 
-    String get(final Type type, final HtmlPage page, final String key) {
-        return get(getStorage(type), getKey(type, page), key);
+    /**
+     * Returns the file of a storage, <tt>null</tt> if it is not persisted.
+     */
+    private File getFile(final Type type, final String key) {
+        if (directory_ == null || type == Type.SESSION_STORAGE) {
+            return null;
+        }
+        try {
+            return new File(directory_, type.name().toLowerCase(Locale.ENGLISH) + '_'
+                + URLEncoder.encode(key, "UTF-8") + ".storage");
+        }
+        catch (final UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
     }
 
-    private static String get(final Map<String, Map<String, String>> storage, final String url,
-            final String key) {
-        final Map<String, String> map = storage.get(url);
-        if (map != null) {
-            return map.get(key);
+    /**
+     * Schedules the writing of a modified storage, if it is persisted.
+     */
+    private void modified(final Type type, final HtmlPage page, final Map<String, String> map) {
+        final File file = getFile(type, getKey(type, page));
+        if (file == null) {
+            return;
+        }
+        synchronized (modified_) {
+            modified_.put(file, map);
+            if (nextFlush_ == null) {
+                nextFlush_ = getFlusher().schedule(flushTask_, FLUSH_DELAY, TimeUnit.MILLISECONDS);
+            }
         }
-        return null;
     }
 
-    private static void save() {
-        try {
-            final File file = new File(System.getProperty("user.home"), "htmlunit.storage");
-            final ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(file));
-            out.writeObject(SINGLETON_);
-            out.close();
+    /**
+     * Writes the pending modifications.
+     */
+    void flush() {
+        final Map<File, Map<String, String>> modified;
+        synchronized (modified_) {
+            modified = new HashMap<File, Map<String, String>>(modified_);
+            modified_.clear();
+            if (nextFlush_ != null) {
+                nextFlush_.cancel(false);
+                nextFlush_ = null;
+            }
         }
-        catch (final IOException e) {
-            LOG.info("Could not save storage", e);
+        for (final Map.Entry<File, Map<String, String>> entry : modified.entrySet()) {
+            save(entry.getKey(), entry.getValue());
         }
     }
 
-    private static void load() {
+    @SuppressWarnings("unchecked")
+    private LinkedHashMap<String, String> load(final Type type, final String key) {
+        final File file = getFile(type, key);
+        if (file != null && file.exists()) {
+            ObjectInputStream in = null;
+            try {
+                in = new ObjectInputStream(new FileInputStream(file));
+                return (LinkedHashMap<String, String>) in.readObject();
+            }
+            catch (final Exception e) {
+                LOG.info("Could not load storage " + file, e);
+            }
+            finally {
+                IOUtils.closeQuietly(in);
+            }
+        }
+        return new LinkedHashMap<String, String>();
+    }
+
+    private synchronized void save(final File file, final Map<String, String> map) {
+        final LinkedHashMap<String, String> content;
+        synchronized (map) {
+            content = new LinkedHashMap<String, String>(map);
+        }
+        if (content.isEmpty()) {
+            if (file.exists() && !file.delete()) {
+                LOG.info("Could not delete storage " + file);
+            }
+            return;
+        }
+
+        // write a temporary file first, so that a failure doesn't corrupt the previous content
+        final File tmpFile = new File(file.getPath() + ".tmp");
+        ObjectOutputStream out = null;
         try {
-            final File file = new File(System.getProperty("user.home"), "htmlunit.storage");
-            if (file.exists()) {
-                final ObjectInputStream in = new ObjectInputStream(new FileInputStream(file));
-                SINGLETON_ = (StorageImpl) in.readObject();
-                SINGLETON_.sessionStorage_ = new HashMap<String, Map<String, String>>();
-                in.close();
+            if (!directory_.exists() && !directory_.mkdirs()) {
+                throw new IOException("Can't create directory " + directory_);
+            }
+            out = new ObjectOutputStream(new FileOutputStream(tmpFile));
+            out.writeObject(content);
+            out.close();
+            out = null;
+            if (!tmpFile.renameTo(file) && !(file.delete() && tmpFile.renameTo(file))) {
+                throw new IOException("Can't rename " + tmpFile + " to " + file);
             }
         }
-        catch (final Exception e) {
-            LOG.info("Could not load storage", e);
+        catch (final IOException e) {
+            LOG.info("Could not save storage " + file, e);
+        }
+        finally {
+            IOUtils.closeQuietly(out);
         }
     }
 }
@@ -26,7 +26,6 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.WeakHashMap;
 
 import net.sourceforge.htmlunit.corejs.javascript.Context;
 import net.sourceforge.htmlunit.corejs.javascript.Function;
@@ -147,21 +146,18 @@ public class Window extends SimpleScriptable implements ScriptableWithFallbackGe
 
     /**
      * Cache computed styles when possible, because their calculation is very expensive.
-     * We use a weak hash map because we don't want this cache to be the only reason
-     * nodes are kept around in the JVM, if all other references to them are gone.
      */
-    private transient WeakHashMap<Node, ComputedCSSStyleDeclaration> computedStyles_ =
-        new WeakHashMap<Node, ComputedCSSStyleDeclaration>();
+    private transient ComputedStylesCache computedStyles_ = new ComputedStylesCache();
 
     /**
-     * Restores the transient {@link #computedStyles_} map during deserialization.
+     * Restores the transient {@link #computedStyles_} cache during deserialization.
      * @param stream the stream to read the object from
      * @throws IOException if an IO error occurs
      * @throws ClassNotFoundException if a class is not found
      */
     private void readObject(final ObjectInputStream stream) throws IOException, ClassNotFoundException {
         stream.defaultReadObject();
-        computedStyles_ = new WeakHashMap<Node, ComputedCSSStyleDeclaration>();
+        computedStyles_ = new ComputedStylesCache();
     }
 
     /**
@@ -1470,11 +1466,8 @@ public class Window extends SimpleScriptable implements ScriptableWithFallbackGe
      * @return the computed style
      */
     public ComputedCSSStyleDeclaration jsxFunction_getComputedStyle(final HTMLElement element, final String pseudo) {
-        ComputedCSSStyleDeclaration style;
-
-        synchronized (computedStyles_) {
-            style = computedStyles_.get(element);
-        }
+        final DomNode node = element.getDomNodeOrDie();
+        ComputedCSSStyleDeclaration style = computedStyles_.get(node);
         if (style != null) {
             return style;
         }
@@ -1493,13 +1486,18 @@ public class Window extends SimpleScriptable implements ScriptableWithFallbackGe
             }
         }
 
-        synchronized (computedStyles_) {
-            computedStyles_.put(element, style);
-        }
+        computedStyles_.put(node, style);
 
         return style;
     }
 
+    /**
+     * Clears the cache of the computed styles, for instance because the rules of a stylesheet have changed.
+     */
+    public void clearComputedStyles() {
+        computedStyles_.styleSheetsChanged();
+    }
+
     /**
      * Returns the current selection.
      * @return the current selection
@@ -1666,69 +1664,54 @@ public class Window extends SimpleScriptable implements ScriptableWithFallbackGe
          * {@inheritDoc}
          */
         public void nodeAdded(final DomChangeEvent event) {
-            nodeChanged(event.getChangedNode(), null);
+            nodeChanged(event.getChangedNode(), event.getParentNode(), null);
         }
 
         /**
          * {@inheritDoc}
          */
         public void nodeDeleted(final DomChangeEvent event) {
-            nodeChanged(event.getChangedNode(), null);
+            nodeChanged(event.getChangedNode(), event.getParentNode(), null);
         }
 
         /**
          * {@inheritDoc}
          */
         public void attributeAdded(final HtmlAttributeChangeEvent event) {
-            nodeChanged(event.getHtmlElement(), event.getName());
+            nodeChanged(event.getHtmlElement(), event.getHtmlElement().getParentNode(), event.getName());
         }
 
         /**
          * {@inheritDoc}
          */
         public void attributeRemoved(final HtmlAttributeChangeEvent event) {
-            nodeChanged(event.getHtmlElement(), event.getName());
+            nodeChanged(event.getHtmlElement(), event.getHtmlElement().getParentNode(), event.getName());
         }
 
         /**
          * {@inheritDoc}
          */
         public void attributeReplaced(final HtmlAttributeChangeEvent event) {
-            nodeChanged(event.getHtmlElement(), event.getName());
+            nodeChanged(event.getHtmlElement(), event.getHtmlElement().getParentNode(), event.getName());
         }
 
-        private void nodeChanged(final DomNode changed, final String attribName) {
+        private void nodeChanged(final DomNode changed, final DomNode parent, final String attribName) {
             // If a stylesheet was changed, all of our calculations could be off; clear the cache.
             if (changed instanceof HtmlStyle) {
-                synchronized (computedStyles_) {
-                    computedStyles_.clear();
-                }
+                computedStyles_.styleSheetsChanged();
                 return;
             }
             if (changed instanceof HtmlLink) {
                 final String rel = ((HtmlLink) changed).getRelAttribute().toLowerCase();
                 if ("stylesheet".equals(rel)) {
-                    synchronized (computedStyles_) {
-                        computedStyles_.clear();
-                    }
+                    computedStyles_.styleSheetsChanged();
                     return;
                 }
             }
-            // Apparently it wasn't a stylesheet that changed; be semi-smart about what we evict and when.
-            synchronized (computedStyles_) {
-                final boolean clearParents = ATTRIBUTES_AFFECTING_PARENT.contains(attribName);
-                final Iterator<Map.Entry<Node, ComputedCSSStyleDeclaration>> i = computedStyles_.entrySet().iterator();
-                while (i.hasNext()) {
-                    final Map.Entry<Node, ComputedCSSStyleDeclaration> entry = i.next();
-                    final DomNode node = entry.getKey().getDomNodeOrDie();
-                    if (changed == node
-                        || changed.getParentNode() == node.getParentNode()
-                        || changed.isAncestorOf(node)
-                        || (clearParents && node.isAncestorOf(changed))) {
-                        i.remove();
-                    }
-                }
-            }
+            // Apparently it wasn't a stylesheet that changed; only the styles of the node, of its
+            // descendants, of its siblings and possibly of its ancestors are affected.
+            final boolean clearParents = ATTRIBUTES_AFFECTING_PARENT.contains(attribName);
+            computedStyles_.nodeChanged(changed, parent, clearParents);
         }
     }
 
@@ -123,6 +123,9 @@ public class CSSRule extends SimpleScriptable {
      */
     public void jsxSet_cssText(final String cssText) {
         rule_.setCssText(cssText);
+        if (stylesheet_ != null) {
+            stylesheet_.clearRuleIndex();
+        }
     }
 
     /**
@@ -0,0 +1,270 @@
+/*
+ * Copyright (c) 2002-2012 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.javascript.host.css;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang3.StringUtils;
+import org.w3c.css.sac.AttributeCondition;
+import org.w3c.css.sac.CombinatorCondition;
+import org.w3c.css.sac.Condition;
+import org.w3c.css.sac.ConditionalSelector;
+import org.w3c.css.sac.DescendantSelector;
+import org.w3c.css.sac.ElementSelector;
+import org.w3c.css.sac.Selector;
+import org.w3c.css.sac.SelectorList;
+import org.w3c.css.sac.SiblingSelector;
+import org.w3c.dom.css.CSSRule;
+import org.w3c.dom.css.CSSRuleList;
+
+import com.gargoylesoftware.htmlunit.html.DomElement;
+import com.steadystate.css.dom.CSSMediaRuleImpl;
+import com.steadystate.css.dom.CSSStyleRuleImpl;
+
+/**
+ * Index of the rules of a CSS rule list, allowing to find quickly the rules that may apply to an element.
+ * Each selector is registered under the id, the class or the tag name required by its rightmost part;
+ * the selectors without such a requirement as well as the <tt>@import</tt> and <tt>@media</tt> rules
+ * are candidates for all elements.
+ *
+ * @version $Revision$
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+class CSSRuleIndex {
+
+    private static final Comparator<Entry> ORDER_COMPARATOR = new Comparator<Entry>() {
+        public int compare(final Entry e1, final Entry e2) {
+            return e1.order_ - e2.order_;
+        }
+    };
+
+    private final CSSRuleList rules_;
+    private final int length_;
+    private final Map<String, List<Entry>> byId_ = new HashMap<String, List<Entry>>();
+    private final Map<String, List<Entry>> byClass_ = new HashMap<String, List<Entry>>();
+    private final Map<String, List<Entry>> byTagName_ = new HashMap<String, List<Entry>>();
+    private final List<Entry> others_ = new ArrayList<Entry>();
+
+    /**
+     * A rule and, for style rules, one of its selectors.
+     */
+    static final class Entry {
+        private final int order_;
+        private final CSSRule rule_;
+        private final Selector selector_;
+        private final CSSRuleIndex nestedIndex_;
+
+        private Entry(final int order, final CSSRule rule, final Selector selector, final CSSRuleIndex nestedIndex) {
+            order_ = order;
+            rule_ = rule;
+            selector_ = selector;
+            nestedIndex_ = nestedIndex;
+        }
+
+        /**
+         * Returns the rule.
+         * @return the rule
+         */
+        CSSRule getRule() {
+            return rule_;
+        }
+
+        /**
+         * Returns the selector for a style rule.
+         * @return the selector, <tt>null</tt> if the rule is not a style rule
+         */
+        Selector getSelector() {
+            return selector_;
+        }
+
+        /**
+         * Returns the index of the rules contained in a media rule.
+         * @return the index, <tt>null</tt> if the rule is not a media rule
+         */
+        CSSRuleIndex getNestedIndex() {
+            return nestedIndex_;
+        }
+    }
+
+    /**
+     * Builds the index of the specified rules.
+     * @param rules the rules, may be <tt>null</tt>
+     */
+    CSSRuleIndex(final CSSRuleList rules) {
+        rules_ = rules;
+        if (rules == null) {
+            length_ = 0;
+            return;
+        }
+        length_ = rules.getLength();
+
+        int order = 0;
+        for (int i = 0; i < length_; i++) {
+            final CSSRule rule = rules.item(i);
+            if (rule.getType() == CSSRule.STYLE_RULE) {
+                final SelectorList selectors = ((CSSStyleRuleImpl) rule).getSelectors();
+                for (int j = 0; j < selectors.getLength(); j++) {
+                    final Selector selector = selectors.item(j);
+                    add(new Entry(order++, rule, selector, null), selector);
+                }
+            }
+            else if (rule.getType() == CSSRule.MEDIA_RULE) {
+                final CSSRuleIndex nested = new CSSRuleIndex(((CSSMediaRuleImpl) rule).getCssRules());
+                others_.add(new Entry(order++, rule, null, nested));
+            }
+            else if (rule.getType() == CSSRule.IMPORT_RULE) {
+                others_.add(new Entry(order++, rule, null, null));
+            }
+        }
+    }
+
+    /**
+     * Indicates if this index has been built for the specified rules in their current state.
+     * @param rules the rules
+     * @return <tt>false</tt> if the index needs to be rebuilt
+     */
+    boolean isValidFor(final CSSRuleList rules) {
+        return rules == rules_ && (rules == null || rules.getLength() == length_);
+    }
+
+    private void add(final Entry entry, final Selector selector) {
+        Selector rightmost = selector;
+        while (true) {
+            if (rightmost.getSelectorType() == Selector.SAC_CHILD_SELECTOR
+                    || rightmost.getSelectorType() == Selector.SAC_DESCENDANT_SELECTOR) {
+                rightmost = ((DescendantSelector) rightmost).getSimpleSelector();
+            }
+            else if (rightmost.getSelectorType() == Selector.SAC_DIRECT_ADJACENT_SELECTOR) {
+                rightmost = ((SiblingSelector) rightmost).getSiblingSelector();
+            }
+            else {
+                break;
+            }
+        }
+
+        final String tagName;
+        if (rightmost.getSelectorType() == Selector.SAC_CONDITIONAL_SELECTOR) {
+            final ConditionalSelector conditional = (ConditionalSelector) rightmost;
+            final String id = getRequiredValue(conditional.getCondition(), Condition.SAC_ID_CONDITION);
+            if (id != null) {
+                add(byId_, id, entry);
+                return;
+            }
+            final String className = getRequiredValue(conditional.getCondition(), Condition.SAC_CLASS_CONDITION);
+            if (className != null) {
+                add(byClass_, className, entry);
+                return;
+            }
+            tagName = getTagName(conditional.getSimpleSelector());
+        }
+        else {
+            tagName = getTagName(rightmost);
+        }
+
+        if (tagName != null) {
+            add(byTagName_, tagName.toLowerCase(), entry);
+        }
+        else {
+            others_.add(entry);
+        }
+    }
+
+    private static String getTagName(final Selector selector) {
+        if (selector.getSelectorType() == Selector.SAC_ELEMENT_NODE_SELECTOR) {
+            return ((ElementSelector) selector).getLocalName();
+        }
+        return null;
+    }
+
+    /**
+     * Returns the value of a condition of the specified type which must be fulfilled for the
+     * condition to be fulfilled.
+     */
+    private static String getRequiredValue(final Condition condition, final short type) {
+        if (condition.getConditionType() == type) {
+            return ((AttributeCondition) condition).getValue();
+        }
+        if (condition.getConditionType() == Condition.SAC_AND_CONDITION) {
+            final CombinatorCondition combinator = (CombinatorCondition) condition;
+            final String value = getRequiredValue(combinator.getFirstCondition(), type);
+            if (value != null) {
+                return value;
+            }
+            return getRequiredValue(combinator.getSecondCondition(), type);
+        }
+        return null;
+    }
+
+    private static void add(final Map<String, List<Entry>> map, final String key, final Entry entry) {
+        List<Entry> entries = map.get(key);
+        if (entries == null) {
+            entries = new ArrayList<Entry>();
+            map.put(key, entries);
+        }
+        entries.add(entry);
+    }
+
+    /**
+     * Returns the rules and selectors which may apply to the specified element, in document order.
+     * @param element the element
+     * @return the candidates
+     */
+    List<Entry> getCandidates(final DomElement element) {
+        final List<List<Entry>> lists = new ArrayList<List<Entry>>();
+        addIfNotEmpty(lists, others_);
+        addIfNotEmpty(lists, byTagName_.get(element.getTagName().toLowerCase()));
+
+        final String id = element.getId();
+        if (id != DomElement.ATTRIBUTE_NOT_DEFINED) {
+            addIfNotEmpty(lists, byId_.get(id));
+        }
+
+        final String classes = element.getAttribute("class");
+        if (classes != DomElement.ATTRIBUTE_NOT_DEFINED && !byClass_.isEmpty()) {
+            final Set<String> done = new HashSet<String>();
+            for (final String className : StringUtils.split(classes, ' ')) {
+                if (done.add(className)) {
+                    addIfNotEmpty(lists, byClass_.get(className));
+                }
+            }
+        }
+
+        if (lists.isEmpty()) {
+            return Collections.emptyList();
+        }
+        if (lists.size() == 1) {
+            return lists.get(0);
+        }
+        final List<Entry> candidates = new ArrayList<Entry>();
+        for (final List<Entry> list : lists) {
+            candidates.addAll(list);
+        }
+        Collections.sort(candidates, ORDER_COMPARATOR);
+        return candidates;
+    }
+
+    private static void addIfNotEmpty(final List<List<Entry>> lists, final List<Entry> entries) {
+        if (entries != null && !entries.isEmpty()) {
+            lists.add(entries);
+        }
+    }
+}
@@ -22,8 +22,6 @@ import java.text.ParseException;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.SortedSet;
-import java.util.TreeSet;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -349,6 +347,15 @@ public class CSSStyleDeclaration extends SimpleScriptable implements ScriptableW
     /** The current style element index. */
     private long currentElementIndex_;
 
+    /** The parsed <tt>style</tt> attribute of the element, in index order. */
+    private Map<String, StyleElement> styleMap_;
+
+    /** The value of the <tt>style</tt> attribute from which {@link #styleMap_} has been parsed. */
+    private String styleMapSource_;
+
+    /** Whether {@link #styleMapSource_} is the serialization of {@link #styleMap_} by this object. */
+    private boolean styleMapSerialized_;
+
     static {
         CSSColors_.put("aqua", "rgb(0, 255, 255)");
         CSSColors_.put("black", "rgb(0, 0, 0)");
@@ -589,18 +596,24 @@ public class CSSStyleDeclaration extends SimpleScriptable implements ScriptableW
             removeStyleAttribute(name);
         }
         else {
-            final Map<String, StyleElement> styleMap = getStyleMap();
+            final Map<String, StyleElement> styleMap = getParsedStyleMap();
             final StyleElement old = styleMap.get(name);
-            final long index;
             if (old != null) {
-                index = old.getIndex();
+                // the position in the map, and therefore in the attribute, is kept
+                styleMap.put(old.getName(), new StyleElement(old.getName(), value, old.getIndex()));
+                writeToElement(styleMap);
             }
             else {
-                index = getCurrentElementIndex();
+                final String key = com.gargoylesoftware.htmlunit.util.StringUtils.canonicalize(name);
+                styleMap.put(key, new StyleElement(key, value, getCurrentElementIndex()));
+                if (styleMapSerialized_ && styleMap.size() > 1) {
+                    // the attribute is our own serialization: the new property just needs to be appended
+                    writeToElement(styleMapSource_ + " " + key + ": " + value + ";");
+                }
+                else {
+                    writeToElement(styleMap);
+                }
             }
-            final StyleElement element = new StyleElement(name, value, index);
-            styleMap.put(name, element);
-            writeToElement(styleMap);
         }
     }
 
@@ -613,13 +626,16 @@ public class CSSStyleDeclaration extends SimpleScriptable implements ScriptableW
             return styleDeclaration_.removeProperty(name);
         }
 
-        final Map<String, StyleElement> styleMap = getStyleMap();
+        final Map<String, StyleElement> styleMap = getParsedStyleMap();
         final StyleElement value = styleMap.get(name);
         if (value == null) {
             return "";
         }
-        styleMap.remove(name);
-        writeToElement(styleMap);
+        // a new map is used, so that the maps derived from the previous one know they are outdated
+        final Map<String, StyleElement> newStyleMap = new LinkedHashMap<String, StyleElement>(styleMap);
+        newStyleMap.remove(name);
+        styleMap_ = newStyleMap;
+        writeToElement(newStyleMap);
         return value.getValue();
     }
 
@@ -627,19 +643,45 @@ public class CSSStyleDeclaration extends SimpleScriptable implements ScriptableW
      * Returns a sorted map containing style elements, keyed on style element name. We use a
      * {@link LinkedHashMap} map so that results are deterministic and are thus testable.
      *
+     * <p>The map is parsed from the <tt>style</tt> attribute only when the attribute has changed since the
+     * previous call, and must therefore not be modified by the callers.</p>
+     *
      * @return a sorted map containing style elements, keyed on style element name
      */
     protected Map<String, StyleElement> getStyleMap() {
-        final Map<String, StyleElement> styleMap = new LinkedHashMap<String, StyleElement>();
+        return getParsedStyleMap();
+    }
+
+    private Map<String, StyleElement> getParsedStyleMap() {
         final String styleAttribute = jsElement_.getDomNodeOrDie().getAttribute("style");
+        // any change of the attribute replaces its value, the identity check is therefore enough
+        if (styleMap_ == null || styleAttribute != styleMapSource_) {
+            styleMap_ = parseStyleAttribute(styleAttribute);
+            styleMapSource_ = styleAttribute;
+            styleMapSerialized_ = false;
+        }
+        return styleMap_;
+    }
+
+    /**
+     * Forgets the parsed <tt>style</tt> attribute, which is parsed again on next access.
+     */
+    void clearStyleMap() {
+        styleMap_ = null;
+    }
+
+    private Map<String, StyleElement> parseStyleAttribute(final String styleAttribute) {
         if (DomElement.ATTRIBUTE_NOT_DEFINED == styleAttribute || DomElement.ATTRIBUTE_VALUE_EMPTY == styleAttribute) {
-            return styleMap;
+            return new LinkedHashMap<String, StyleElement>();
         }
 
-        for (final String token : StringUtils.split(styleAttribute, ';')) {
-            final int index = token.indexOf(":");
+        final String[] tokens = StringUtils.split(styleAttribute, ';');
+        final Map<String, StyleElement> styleMap = new LinkedHashMap<String, StyleElement>(tokens.length * 4 / 3 + 1);
+        for (final String token : tokens) {
+            final int index = token.indexOf(':');
             if (index != -1) {
-                final String key = token.substring(0, index).trim().toLowerCase();
+                final String key = com.gargoylesoftware.htmlunit.util.StringUtils.canonicalize(
+                        token.substring(0, index).trim().toLowerCase());
                 String value = token.substring(index + 1).trim();
                 String priority = "";
                 if (StringUtils.endsWithIgnoreCase(value, "!important")) {
@@ -649,6 +691,8 @@ public class CSSStyleDeclaration extends SimpleScriptable implements ScriptableW
                 }
                 final StyleElement element = new StyleElement(key, value, priority,
                         SelectorSpecificity.FROM_STYLE_ATTRIBUTE, getCurrentElementIndex());
+                // the last declaration wins and the map is kept in index order
+                styleMap.remove(key);
                 styleMap.put(key, element);
             }
         }
@@ -657,8 +701,7 @@ public class CSSStyleDeclaration extends SimpleScriptable implements ScriptableW
 
     private void writeToElement(final Map<String, StyleElement> styleMap) {
         final StringBuilder buffer = new StringBuilder();
-        final SortedSet<StyleElement> sortedValues = new TreeSet<StyleElement>(styleMap.values());
-        for (final StyleElement e : sortedValues) {
+        for (final StyleElement e : styleMap.values()) {
             if (buffer.length() > 0) {
                 buffer.append(" ");
             }
@@ -667,7 +710,15 @@ public class CSSStyleDeclaration extends SimpleScriptable implements ScriptableW
             buffer.append(e.getValue());
             buffer.append(";");
         }
-        jsElement_.getDomNodeOrDie().setAttribute("style", buffer.toString());
+        writeToElement(buffer.toString());
+    }
+
+    private void writeToElement(final String styleAttribute) {
+        final DomElement domElement = jsElement_.getDomNodeOrDie();
+        domElement.setAttribute("style", styleAttribute);
+        // the map now reflects the new value of the attribute, no need to parse it again
+        styleMapSource_ = domElement.getAttribute("style");
+        styleMapSerialized_ = true;
     }
 
     /**
@@ -5196,7 +5247,9 @@ public class CSSStyleDeclaration extends SimpleScriptable implements ScriptableW
             final Map<String, StyleElement> map = getStyleMap();
             for (final String key : map.keySet()) {
                 if (key.equalsIgnoreCase(name)) {
+                    // the keys are lower case, there is no other match
                     setStyleAttribute(key, value);
+                    break;
                 }
             }
         }
@@ -84,6 +84,9 @@ public class CSSStyleRule extends CSSRule {
      */
     public void jsxSet_selectorText(final String selectorText) {
         ((org.w3c.dom.css.CSSStyleRule) getRule()).setSelectorText(selectorText);
+        if (jsxGet_parentStyleSheet() != null) {
+            jsxGet_parentStyleSheet().clearRuleIndex();
+        }
     }
 
     /**
@@ -108,6 +108,9 @@ public class CSSStyleSheet extends SimpleScriptable {
     /** The collection of rules defined in this style sheet. */
     private com.gargoylesoftware.htmlunit.javascript.host.css.CSSRuleList cssRules_;
 
+    /** The index of the rules, used to find quickly the rules applying to an element. */
+    private transient CSSRuleIndex ruleIndex_;
+
     /** The CSS import rules and their corresponding stylesheets. */
     private final Map<CSSImportRule, CSSStyleSheet> imports_ = new HashMap<CSSImportRule, CSSStyleSheet>();
 
@@ -173,28 +176,42 @@ public class CSSStyleSheet extends SimpleScriptable {
      *        the specified style
      */
     public void modifyIfNecessary(final ComputedCSSStyleDeclaration style, final Element element) {
+        modifyIfNecessary(style, element, getRuleIndex(), new HashSet<String>());
+    }
+
+    /**
+     * Returns the index of the rules of this stylesheet, building it if needed.
+     * @return the index
+     */
+    private synchronized CSSRuleIndex getRuleIndex() {
         final CSSRuleList rules = getWrappedSheet().getCssRules();
-        modifyIfNecessary(style, element, rules, new HashSet<String>());
+        if (ruleIndex_ == null || !ruleIndex_.isValidFor(rules)) {
+            ruleIndex_ = new CSSRuleIndex(rules);
+        }
+        return ruleIndex_;
     }
 
-    private void modifyIfNecessary(final ComputedCSSStyleDeclaration style, final Element element,
-        final CSSRuleList rules, final Set<String> alreadyProcessing) {
-        if (rules == null) {
-            return;
+    /**
+     * Forces the index of the rules to be rebuilt the next time it is needed, and the styles
+     * computed with the previous rules to be computed again.
+     */
+    void clearRuleIndex() {
+        synchronized (this) {
+            ruleIndex_ = null;
         }
+        getWindow().clearComputedStyles();
+    }
+
+    private void modifyIfNecessary(final ComputedCSSStyleDeclaration style, final Element element,
+        final CSSRuleIndex index, final Set<String> alreadyProcessing) {
         final DomElement e = element.getDomNodeOrDie();
-        for (int i = 0; i < rules.getLength(); i++) {
-            final CSSRule rule = rules.item(i);
+        for (final CSSRuleIndex.Entry entry : index.getCandidates(e)) {
+            final CSSRule rule = entry.getRule();
             if (rule.getType() == CSSRule.STYLE_RULE) {
-                final CSSStyleRuleImpl styleRule = (CSSStyleRuleImpl) rule;
-                final SelectorList selectors = styleRule.getSelectors();
-                for (int j = 0; j < selectors.getLength(); j++) {
-                    final Selector selector = selectors.item(j);
-                    final boolean selected = selects(selector, e);
-                    if (selected) {
-                        final org.w3c.dom.css.CSSStyleDeclaration dec = styleRule.getStyle();
-                        style.applyStyleFromSelector(dec, selector);
-                    }
+                final Selector selector = entry.getSelector();
+                if (selects(selector, e)) {
+                    final org.w3c.dom.css.CSSStyleDeclaration dec = ((CSSStyleRuleImpl) rule).getStyle();
+                    style.applyStyleFromSelector(dec, selector);
                 }
             }
             else if (rule.getType() == CSSRule.IMPORT_RULE) {
@@ -211,17 +228,15 @@ public class CSSStyleSheet extends SimpleScriptable {
                 }
 
                 if (!alreadyProcessing.contains(sheet.getUri())) {
-                    final CSSRuleList sheetRules = sheet.getWrappedSheet().getCssRules();
                     alreadyProcessing.add(getUri());
-                    sheet.modifyIfNecessary(style, element, sheetRules, alreadyProcessing);
+                    sheet.modifyIfNecessary(style, element, sheet.getRuleIndex(), alreadyProcessing);
                 }
             }
             else if (rule.getType() == CSSRule.MEDIA_RULE) {
                 final CSSMediaRuleImpl mediaRule = (CSSMediaRuleImpl) rule;
                 final String media = mediaRule.getMedia().getMediaText();
                 if (isActive(media)) {
-                    final CSSRuleList internalRules = mediaRule.getCssRules();
-                    modifyIfNecessary(style, element, internalRules, alreadyProcessing);
+                    modifyIfNecessary(style, element, entry.getNestedIndex(), alreadyProcessing);
                 }
             }
         }
@@ -262,21 +277,28 @@ public class CSSStyleSheet extends SimpleScriptable {
                 sheet = new CSSStyleSheet(element, (org.w3c.dom.css.CSSStyleSheet) fromCache, uri);
             }
             else {
-                final WebResponse response = client.loadWebResponse(request);
+                final WebResponse response = page.loadResourceResponse(request);
                 uri = response.getWebRequest().getUrl().toExternalForm();
                 client.printContentIfNecessary(response);
                 client.throwFailingHttpStatusCodeExceptionIfNecessary(response);
-                // CSS content must have downloaded OK; go ahead and build the corresponding stylesheet.
-                final InputSource source = new InputSource();
-                source.setByteStream(response.getContentAsStream());
-                source.setEncoding(response.getContentCharset());
-                sheet = new CSSStyleSheet(element, source, uri);
-                cache.cacheIfPossible(request, response, sheet.getWrappedSheet());
+                try {
+                    // CSS content must have downloaded OK; go ahead and build the corresponding stylesheet.
+                    final InputSource source = new InputSource();
+                    source.setByteStream(response.getContentAsStream());
+                    source.setEncoding(response.getContentCharset());
+                    sheet = new CSSStyleSheet(element, source, uri);
+                    cache.cacheIfPossible(request, response, sheet.getWrappedSheet());
+                }
+                finally {
+                    // only the parsed stylesheet is cached
+                    response.cleanUp();
+                }
             }
         }
         catch (final FailingHttpStatusCodeException e) {
             // Got a 404 response or something like that; behave nicely.
             LOG.error(e.getMessage());
+            e.getResponse().cleanUp();
             final InputSource source = new InputSource(new StringReader(""));
             sheet = new CSSStyleSheet(element, source, uri);
         }
@@ -479,7 +501,7 @@ public class CSSStyleSheet extends SimpleScriptable {
                 return true;
             }
             if (attribLength + 1 > conditionLength) {
-                final StringBuilder tmp = new StringBuilder(separator);
+                final StringBuilder tmp = new StringBuilder().append(separator);
                 tmp.append(condition).append(separator);
                 return attribute.contains(tmp);
             }
@@ -690,6 +712,7 @@ public class CSSStyleSheet extends SimpleScriptable {
      */
     public int jsxFunction_insertRule(final String rule, final int position) {
         try {
+            clearRuleIndex();
             return wrapped_.insertRule(rule, position);
         }
         catch (final DOMException e) {
@@ -704,6 +727,7 @@ public class CSSStyleSheet extends SimpleScriptable {
      */
     public void jsxFunction_deleteRule(final int position) {
         try {
+            clearRuleIndex();
             wrapped_.deleteRule(position);
         }
         catch (final DOMException e) {
@@ -721,6 +745,7 @@ public class CSSStyleSheet extends SimpleScriptable {
     public int jsxFunction_addRule(final String selector, final String rule) {
         final String completeRule = selector + " {" + rule + "}";
         try {
+            clearRuleIndex();
             wrapped_.insertRule(completeRule, wrapped_.getCssRules().getLength());
         }
         catch (final DOMException e) {
@@ -736,6 +761,7 @@ public class CSSStyleSheet extends SimpleScriptable {
      */
     public void jsxFunction_removeRule(final int position) {
         try {
+            clearRuleIndex();
             wrapped_.deleteRule(position);
         }
         catch (final DOMException e) {
@@ -20,6 +20,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
 import java.util.SortedMap;
@@ -104,6 +105,12 @@ public class ComputedCSSStyleDeclaration extends CSSStyleDeclaration {
      */
     private final SortedMap<String, StyleElement> localModifications_ = new TreeMap<String, StyleElement>();
 
+    /** The style map of the element merged with {@link #localModifications_}. */
+    private Map<String, StyleElement> mergedStyleMap_;
+
+    /** The style map of the element from which {@link #mergedStyleMap_} has been computed. */
+    private Map<String, StyleElement> mergedStyleMapSource_;
+
     /** Maps element types to custom display types (display types that are not "block". */
     private Map<String, String> defaultDisplays_;
 
@@ -220,6 +227,7 @@ public class ComputedCSSStyleDeclaration extends CSSStyleDeclaration {
         }
         final StyleElement element = new StyleElement(name, newValue, priority, specificity, getCurrentElementIndex());
         localModifications_.put(name, element);
+        localModificationsChanged();
     }
 
     /**
@@ -233,6 +241,13 @@ public class ComputedCSSStyleDeclaration extends CSSStyleDeclaration {
     public void setDefaultLocalStyleAttribute(final String name, final String newValue) {
         final StyleElement element = new StyleElement(name, newValue);
         localModifications_.put(name, element);
+        localModificationsChanged();
+    }
+
+    private void localModificationsChanged() {
+        mergedStyleMap_ = null;
+        // the style attribute will be parsed again, so that its elements keep precedence over the local ones
+        clearStyleMap();
     }
 
     /**
@@ -240,7 +255,13 @@ public class ComputedCSSStyleDeclaration extends CSSStyleDeclaration {
      */
     @Override
     protected Map<String, StyleElement> getStyleMap() {
-        final Map<String, StyleElement> styleMap = super.getStyleMap();
+        final Map<String, StyleElement> elementStyleMap = super.getStyleMap();
+        if (mergedStyleMap_ != null && mergedStyleMapSource_ == elementStyleMap) {
+            return mergedStyleMap_;
+        }
+        final Map<String, StyleElement> styleMap = new LinkedHashMap<String, StyleElement>(
+                (elementStyleMap.size() + localModifications_.size()) * 4 / 3 + 1);
+        styleMap.putAll(elementStyleMap);
         if (localModifications_ != null) {
             for (final StyleElement localStyleMod : localModifications_.values()) {
                 final String key = localStyleMod.getName();
@@ -272,6 +293,8 @@ public class ComputedCSSStyleDeclaration extends CSSStyleDeclaration {
                 }
             }
         }
+        mergedStyleMap_ = styleMap;
+        mergedStyleMapSource_ = elementStyleMap;
         return styleMap;
     }
 
@@ -18,6 +18,7 @@ import static com.gargoylesoftware.htmlunit.util.StringUtils.containsCaseInsensi
 import static com.gargoylesoftware.htmlunit.util.StringUtils.parseHttpDate;
 
 import java.io.IOException;
+import java.io.Serializable;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.text.SimpleDateFormat;
@@ -41,6 +42,7 @@ import net.sourceforge.htmlunit.corejs.javascript.Scriptable;
 import net.sourceforge.htmlunit.corejs.javascript.ScriptableObject;
 import net.sourceforge.htmlunit.corejs.javascript.UniqueTag;
 
+import org.apache.commons.io.input.CharSequenceReader;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -185,7 +187,9 @@ public class HTMLDocument extends Document implements ScriptableWithFallbackGett
     private HTMLElement activeElement_;
 
     /** The buffer that will be used for calls to document.write(). */
-    private final StringBuilder writeBuffer_ = new StringBuilder();
+    private StringBuilder writeBuffer_ = new StringBuilder();
+    /** The state of the scan of {@link #writeBuffer_}, to scan only the newly written content. */
+    private final WriteScanner writeScanner_ = new WriteScanner();
     private boolean writeInCurrentDocument_ = true;
     private String domain_;
     private String uniqueID_;
@@ -541,16 +545,18 @@ public class HTMLDocument extends Document implements ScriptableWithFallbackGett
             scheduleImplicitClose();
             return;
         }
-        final String bufferedContent = writeBuffer_.toString();
-        if (!canAlreadyBeParsed(bufferedContent)) {
+        final StringBuilder bufferedContent = writeBuffer_;
+        if (!writeScanner_.canBeParsed(bufferedContent)) {
             if (LOG.isDebugEnabled()) {
                 LOG.debug("write: not enough content to parse it now");
             }
             return;
         }
 
-        writeBuffer_.setLength(0);
-        page.writeInParsedStream(bufferedContent);
+        // the parsed content may write again: it goes to a new buffer
+        writeBuffer_ = new StringBuilder();
+        writeScanner_.reset();
+        page.writeInParsedStream(new CharSequenceReader(bufferedContent));
     }
 
     private void scheduleImplicitClose() {
@@ -578,98 +584,129 @@ public class HTMLDocument extends Document implements ScriptableWithFallbackGett
      * @return <code>false</code> if it not well formed
      */
     static boolean canAlreadyBeParsed(final String content) {
-        // all <script> must have their </script> because the parser doesn't close automatically this tag
-        // All tags must be complete, that is from '<' to '>'.
-        PARSING_STATUS tagState = PARSING_STATUS.OUTSIDE;
-        int tagNameBeginIndex = 0;
-        int scriptTagCount = 0;
-        boolean tagIsOpen = true;
-        char stringBoundary = 0;
-        boolean stringSkipNextChar = false;
-        int index = 0;
-        char openingQuote = 0;
-        for (final char currentChar : content.toCharArray()) {
-            switch (tagState) {
-                case OUTSIDE:
-                    if (currentChar == '<') {
-                        tagState = PARSING_STATUS.START;
-                        tagIsOpen = true;
-                    }
-                    else if (scriptTagCount > 0 && (currentChar == '\'' || currentChar == '"')) {
-                        tagState = PARSING_STATUS.IN_STRING;
-                        stringBoundary = currentChar;
-                        stringSkipNextChar = false;
-                    }
-                    break;
-                case START:
-                    if (currentChar == '/') {
-                        tagIsOpen = false;
-                        tagNameBeginIndex = index + 1;
-                    }
-                    else {
-                        tagNameBeginIndex = index;
-                    }
-                    tagState = PARSING_STATUS.IN_NAME;
-                    break;
-                case IN_NAME:
-                    if (Character.isWhitespace(currentChar) || currentChar == '>') {
-                        final String tagName = content.substring(tagNameBeginIndex, index);
-                        if ("script".equalsIgnoreCase(tagName)) {
-                            if (tagIsOpen) {
-                                scriptTagCount++;
-                            }
-                            else if (scriptTagCount > 0) {
-                                // Ignore extra close tags for now. Let the parser deal with them.
-                                scriptTagCount--;
-                            }
+        return new WriteScanner().canBeParsed(content);
+    }
+
+    /**
+     * Scans the content written with document.write() to know if it can already be parsed.
+     * The state is kept between the calls, so that only the content written since the previous
+     * call is scanned, until the scanner is {@link #reset() reset} once the content has been parsed.
+     */
+    static final class WriteScanner implements Serializable {
+        private PARSING_STATUS tagState_ = PARSING_STATUS.OUTSIDE;
+        private int tagNameBeginIndex_;
+        private int scriptTagCount_;
+        private boolean tagIsOpen_ = true;
+        private char stringBoundary_;
+        private boolean stringSkipNextChar_;
+        private char openingQuote_;
+        private int scanned_;
+
+        /**
+         * Resets the state, to scan a new content.
+         */
+        void reset() {
+            tagState_ = PARSING_STATUS.OUTSIDE;
+            tagNameBeginIndex_ = 0;
+            scriptTagCount_ = 0;
+            tagIsOpen_ = true;
+            stringBoundary_ = 0;
+            stringSkipNextChar_ = false;
+            openingQuote_ = 0;
+            scanned_ = 0;
+        }
+
+        /**
+         * Indicates if the content is a well formed HTML snippet that can already be parsed.
+         * The content has to start with the content given to the previous call, if any since the last reset.
+         *
+         * @param content the HTML snippet
+         * @return <code>false</code> if it not well formed
+         */
+        boolean canBeParsed(final CharSequence content) {
+            // all <script> must have their </script> because the parser doesn't close automatically this tag
+            // All tags must be complete, that is from '<' to '>'.
+            final int length = content.length();
+            for (int index = scanned_; index < length; index++) {
+                final char currentChar = content.charAt(index);
+                switch (tagState_) {
+                    case OUTSIDE:
+                        if (currentChar == '<') {
+                            tagState_ = PARSING_STATUS.START;
+                            tagIsOpen_ = true;
+                        }
+                        else if (scriptTagCount_ > 0 && (currentChar == '\'' || currentChar == '"')) {
+                            tagState_ = PARSING_STATUS.IN_STRING;
+                            stringBoundary_ = currentChar;
+                            stringSkipNextChar_ = false;
                         }
-                        if (currentChar == '>') {
-                            tagState = PARSING_STATUS.OUTSIDE;
+                        break;
+                    case START:
+                        if (currentChar == '/') {
+                            tagIsOpen_ = false;
+                            tagNameBeginIndex_ = index + 1;
                         }
                         else {
-                            tagState = PARSING_STATUS.INSIDE;
+                            tagNameBeginIndex_ = index;
                         }
-                    }
-                    else if (!Character.isLetter(currentChar)) {
-                        tagState = PARSING_STATUS.OUTSIDE;
-                    }
-                    break;
-                case INSIDE:
-                    if (currentChar == openingQuote) {
-                        openingQuote = 0;
-                    }
-                    else if (openingQuote == 0) {
-                        if (currentChar == '\'' || currentChar == '"') {
-                            openingQuote = currentChar;
+                        tagState_ = PARSING_STATUS.IN_NAME;
+                        break;
+                    case IN_NAME:
+                        if (Character.isWhitespace(currentChar) || currentChar == '>') {
+                            final String tagName = content.subSequence(tagNameBeginIndex_, index).toString();
+                            if ("script".equalsIgnoreCase(tagName)) {
+                                if (tagIsOpen_) {
+                                    scriptTagCount_++;
+                                }
+                                else if (scriptTagCount_ > 0) {
+                                    // Ignore extra close tags for now. Let the parser deal with them.
+                                    scriptTagCount_--;
+                                }
+                            }
+                            if (currentChar == '>') {
+                                tagState_ = PARSING_STATUS.OUTSIDE;
+                            }
+                            else {
+                                tagState_ = PARSING_STATUS.INSIDE;
+                            }
                         }
-                        else if (currentChar == '>' && openingQuote == 0) {
-                            tagState = PARSING_STATUS.OUTSIDE;
+                        else if (!Character.isLetter(currentChar)) {
+                            tagState_ = PARSING_STATUS.OUTSIDE;
                         }
-                    }
-                    break;
-                case IN_STRING:
-                    if (stringSkipNextChar) {
-                        stringSkipNextChar = false;
-                    }
-                    else {
-                        if (currentChar == stringBoundary) {
-                            tagState = PARSING_STATUS.OUTSIDE;
+                        break;
+                    case INSIDE:
+                        if (currentChar == openingQuote_) {
+                            openingQuote_ = 0;
+                        }
+                        else if (openingQuote_ == 0) {
+                            if (currentChar == '\'' || currentChar == '"') {
+                                openingQuote_ = currentChar;
+                            }
+                            else if (currentChar == '>' && openingQuote_ == 0) {
+                                tagState_ = PARSING_STATUS.OUTSIDE;
+                            }
                         }
-                        else if (currentChar == '\\') {
-                            stringSkipNextChar = true;
+                        break;
+                    case IN_STRING:
+                        if (stringSkipNextChar_) {
+                            stringSkipNextChar_ = false;
                         }
-                    }
-                    break;
-                default:
-                    // nothing
+                        else {
+                            if (currentChar == stringBoundary_) {
+                                tagState_ = PARSING_STATUS.OUTSIDE;
+                            }
+                            else if (currentChar == '\\') {
+                                stringSkipNextChar_ = true;
+                            }
+                        }
+                        break;
+                    default:
+                        // nothing
+                }
             }
-            index++;
+            scanned_ = length;
+            return scriptTagCount_ == 0 && tagState_ == PARSING_STATUS.OUTSIDE;
         }
-        if (scriptTagCount > 0 || tagState != PARSING_STATUS.OUTSIDE) {
-            return false;
-        }
-
-        return true;
     }
 
     /**
@@ -924,6 +961,7 @@ public class HTMLDocument extends Document implements ScriptableWithFallbackGett
             webResponse.setFromJavascript(true);
             writeInCurrentDocument_ = true;
             writeBuffer_.setLength(0);
+            writeScanner_.reset();
 
             final WebClient webClient = page.getWebClient();
             final WebWindow window = page.getEnclosingWindow();
@@ -136,7 +136,7 @@ public class HTMLElement extends Element implements ScriptableWithFallbackGetter
      */
     private static int UniqueID_Counter_ = 1;
 
-    private final Set<String> behaviors_ = new HashSet<String>();
+    private Set<String> behaviors_; // lazy init
     private BoxObject boxObject_; // lazy init
     private HTMLCollection all_; // has to be a member to have equality (==) working
     private int scrollLeft_;
@@ -1232,7 +1232,10 @@ public class HTMLElement extends Element implements ScriptableWithFallbackGetter
      */
     public int jsxFunction_addBehavior(final String behavior) {
         // if behavior already defined, then nothing to do
-        if (behaviors_.contains(behavior)) {
+        if (behaviors_ == null) {
+            behaviors_ = new HashSet<String>();
+        }
+        else if (behaviors_.contains(behavior)) {
             return 0;
         }
 
@@ -1304,17 +1307,23 @@ public class HTMLElement extends Element implements ScriptableWithFallbackGetter
                 delete("doComponentRequest");
                 delete("getComponentVersion");
                 delete("isComponentInstalled");
-                behaviors_.remove(BEHAVIOR_CLIENT_CAPS);
+                if (behaviors_ != null) {
+                    behaviors_.remove(BEHAVIOR_CLIENT_CAPS);
+                }
                 break;
             case BEHAVIOR_ID_HOMEPAGE:
                 delete("isHomePage");
                 delete("setHomePage");
                 delete("navigateHomePage");
-                behaviors_.remove(BEHAVIOR_HOMEPAGE);
+                if (behaviors_ != null) {
+                    behaviors_.remove(BEHAVIOR_HOMEPAGE);
+                }
                 break;
             case BEHAVIOR_ID_DOWNLOAD:
                 delete("startDownload");
-                behaviors_.remove(BEHAVIOR_DOWNLOAD);
+                if (behaviors_ != null) {
+                    behaviors_.remove(BEHAVIOR_DOWNLOAD);
+                }
                 break;
             default:
                 LOG.warn("Unexpected behavior id: " + id + ". Ignoring.");
@@ -22,6 +22,7 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CancellationException;
 
 import net.sourceforge.htmlunit.corejs.javascript.Context;
 import net.sourceforge.htmlunit.corejs.javascript.ContextAction;
@@ -41,6 +42,7 @@ import com.gargoylesoftware.htmlunit.HttpMethod;
 import com.gargoylesoftware.htmlunit.WebClient;
 import com.gargoylesoftware.htmlunit.WebRequest;
 import com.gargoylesoftware.htmlunit.WebResponse;
+import com.gargoylesoftware.htmlunit.WebResponseFuture;
 import com.gargoylesoftware.htmlunit.html.HtmlPage;
 import com.gargoylesoftware.htmlunit.javascript.JavaScriptEngine;
 import com.gargoylesoftware.htmlunit.javascript.SimpleScriptable;
@@ -94,6 +96,7 @@ public class XMLHttpRequest extends SimpleScriptable {
     private WebRequest webRequest_;
     private boolean async_;
     private int threadID_;
+    private transient volatile WebResponseFuture asyncResponse_;
     private WebResponse webResponse_;
     private String overriddenMimeType_;
     private HtmlPage containingPage_;
@@ -363,6 +366,10 @@ public class XMLHttpRequest extends SimpleScriptable {
      */
     public void jsxFunction_abort() {
         getWindow().getWebWindow().getJobManager().stopJob(threadID_);
+        if (asyncResponse_ != null) {
+            asyncResponse_.cancel(true);
+            asyncResponse_ = null;
+        }
     }
 
     /**
@@ -478,16 +485,24 @@ public class XMLHttpRequest extends SimpleScriptable {
         final HtmlPage page = (HtmlPage) getWindow().getWebWindow().getEnclosedPage();
         final boolean synchron = ajaxController.processSynchron(page, webRequest_, async_);
         if (synchron) {
-            doSend(Context.getCurrentContext());
+            doSend(Context.getCurrentContext(), null);
         }
         else {
-            // Create and start a thread in which to execute the request.
+            // Start the download now if allowed, the job then only waits for the response to handle it
+            final WebResponseFuture response;
+            if (client.getOptions().isLoadResponsesAsynchronously()) {
+                response = client.loadWebResponseAsync(webRequest_);
+            }
+            else {
+                response = null;
+            }
+            asyncResponse_ = response;
             final Object startingScope = getWindow();
             final ContextFactory cf = client.getJavaScriptEngine().getContextFactory();
             final ContextAction action = new ContextAction() {
                 public Object run(final Context cx) {
                     cx.putThreadLocal(JavaScriptEngine.KEY_STARTING_SCOPE, startingScope);
-                    doSend(cx);
+                    doSend(cx, response);
                     return null;
                 }
             };
@@ -522,39 +537,77 @@ public class XMLHttpRequest extends SimpleScriptable {
     /**
      * The real send job.
      * @param context the current context
+     * @param asyncResponse the response being downloaded for an asynchronous request, <tt>null</tt> otherwise
      */
-    private void doSend(final Context context) {
+    private void doSend(final Context context, final WebResponseFuture asyncResponse) {
         final WebClient wc = getWindow().getWebWindow().getWebClient();
         try {
             setState(STATE_LOADED, context);
-            final WebResponse webResponse = wc.loadWebResponse(webRequest_);
+            final WebResponse webResponse;
+            if (asyncResponse == null) {
+                webResponse = wc.loadWebResponse(webRequest_);
+            }
+            else {
+                webResponse = asyncResponse.getWebResponse();
+                if (isAborted(asyncResponse)) {
+                    // the response was already there when abort() has been called
+                    webResponse.cleanUp();
+                    return;
+                }
+            }
             if (LOG.isDebugEnabled()) {
                 LOG.debug("Web response loaded successfully.");
             }
             if (overriddenMimeType_ == null) {
-                webResponse_ = webResponse;
+                setWebResponse(webResponse);
             }
             else {
-                webResponse_ = new WebResponseWrapper(webResponse) {
+                setWebResponse(new WebResponseWrapper(webResponse) {
                     @Override
                     public String getContentType() {
                         return overriddenMimeType_;
                     }
-                };
+                });
             }
             setState(STATE_INTERACTIVE, context);
             setState(STATE_COMPLETED, context);
         }
+        catch (final CancellationException e) {
+            // abort() has been called, for instance by the onreadystatechange handler: this is not an error
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Request aborted: " + webRequest_.getUrl());
+            }
+        }
         catch (final IOException e) {
             if (LOG.isDebugEnabled()) {
                 LOG.debug("IOException: returning a network error response.", e);
             }
-            webResponse_ = new NetworkErrorWebResponse(webRequest_);
+            setWebResponse(new NetworkErrorWebResponse(webRequest_));
             setState(STATE_COMPLETED, context);
             processError(context);
         }
     }
 
+    /**
+     * Sets the response of the last request, cleaning up the response of the previous one.
+     * @param webResponse the new response
+     */
+    private void setWebResponse(final WebResponse webResponse) {
+        if (webResponse_ != null) {
+            webResponse_.cleanUp();
+        }
+        webResponse_ = webResponse;
+    }
+
+    /**
+     * Indicates if the specified asynchronous download has been aborted, or replaced by a new request.
+     * @param asyncResponse the response being downloaded
+     * @return <tt>true</tt> if the download is not the current one anymore
+     */
+    private boolean isAborted(final WebResponseFuture asyncResponse) {
+        return asyncResponse != asyncResponse_;
+    }
+
     /**
      * Sets the specified header to the specified value. The <tt>open</tt> method must be
      * called before this method, or an error will occur.
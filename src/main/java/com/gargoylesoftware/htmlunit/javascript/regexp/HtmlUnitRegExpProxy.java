@@ -15,7 +15,10 @@
 package com.gargoylesoftware.htmlunit.javascript.regexp;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
@@ -45,6 +48,19 @@ public class HtmlUnitRegExpProxy extends RegExpImpl {
     private static final Log LOG = LogFactory.getLog(HtmlUnitRegExpProxy.class);
 
     private static final Pattern REPLACE_PATTERN = Pattern.compile("\\$\\$");
+
+    /** The maximal number of compiled patterns kept in the cache. */
+    private static final int MAX_CACHED_PATTERNS = 1000;
+    private static final Map<String, Pattern> PATTERN_CACHE =
+        new LinkedHashMap<String, Pattern>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<String, Pattern> eldest) {
+                return size() > MAX_CACHED_PATTERNS;
+            }
+        };
+    private static final AtomicLong PATTERN_CACHE_HITS = new AtomicLong();
+    private static final AtomicLong PATTERN_CACHE_MISSES = new AtomicLong();
+
     private final RegExpProxy wrapped_;
 
     /**
@@ -89,10 +105,7 @@ public class HtmlUnitRegExpProxy extends RegExpImpl {
                 try {
                     final NativeRegExp regexp = (NativeRegExp) arg0;
                     final RegExpData reData = new RegExpData(regexp);
-                    final String regex = reData.getJavaPattern();
-                    final int flags = reData.getJavaFlags();
-                    final Pattern pattern = Pattern.compile(regex, flags);
-                    final Matcher matcher = pattern.matcher(thisString);
+                    final Matcher matcher = reData.getPattern().matcher(thisString);
                     return doReplacement(thisString, replacement, matcher, reData.hasFlag('g'));
                 }
                 catch (final PatternSyntaxException e) {
@@ -114,8 +127,7 @@ public class HtmlUnitRegExpProxy extends RegExpImpl {
                 reData = new RegExpData(Context.toString(arg0));
             }
 
-            final Pattern pattern = Pattern.compile(reData.getJavaPattern(), reData.getJavaFlags());
-            final Matcher matcher = pattern.matcher(thisString);
+            final Matcher matcher = reData.getPattern().matcher(thisString);
 
             final boolean found = matcher.find();
             if (RA_SEARCH == actionType) {
@@ -396,11 +408,51 @@ public class HtmlUnitRegExpProxy extends RegExpImpl {
             return jsRegExpToJavaRegExp(jsSource_);
         }
 
+        /**
+         * Returns the compiled Java Pattern, from the cache if it has already been compiled.
+         * @return the Java Pattern
+         */
+        Pattern getPattern() {
+            final int flags = getJavaFlags();
+            final String key = flags + "/" + jsSource_;
+            Pattern pattern;
+            synchronized (PATTERN_CACHE) {
+                pattern = PATTERN_CACHE.get(key);
+            }
+            if (pattern != null) {
+                PATTERN_CACHE_HITS.incrementAndGet();
+                return pattern;
+            }
+
+            PATTERN_CACHE_MISSES.incrementAndGet();
+            pattern = Pattern.compile(getJavaPattern(), flags);
+            synchronized (PATTERN_CACHE) {
+                PATTERN_CACHE.put(key, pattern);
+            }
+            return pattern;
+        }
+
         boolean hasFlag(final char c) {
             return jsFlags_.indexOf(c) != -1;
         }
     }
 
+    /**
+     * Returns the number of times a compiled pattern has been found in the cache.
+     * @return the number of cache hits
+     */
+    public static long getPatternCacheHitCount() {
+        return PATTERN_CACHE_HITS.get();
+    }
+
+    /**
+     * Returns the number of times a pattern had to be translated and compiled.
+     * @return the number of cache misses
+     */
+    public static long getPatternCacheMissCount() {
+        return PATTERN_CACHE_MISSES.get();
+    }
+
     /**
      * Transform a JavaScript regular expression to a Java regular expression
      * @param re the JavaScript regular expression to transform
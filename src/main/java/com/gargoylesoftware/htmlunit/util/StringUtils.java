@@ -43,6 +43,9 @@ public final class StringUtils {
         Pattern.compile("rgb\\s*?\\(\\s*?(\\d{1,3})\\s*?,\\s*?(\\d{1,3})\\s*?,\\s*?(\\d{1,3})\\s*?\\)");
     private static final Log LOG = LogFactory.getLog(StringUtils.class);
 
+    /** The strings returned by {@link #canonicalize(String)}, per hash code slot. */
+    private static final String[] CANONICAL_STRINGS = new String[1024];
+
     /**
      * Disallow instantiation of this class.
      */
@@ -293,4 +296,23 @@ public final class StringUtils {
                 new String[] {"\\", "$"}, new String[]{"\\\\", "\\$"});
         return toReplace;
     }
+
+    /**
+     * Returns a canonical instance of the specified string, so that the frequently used names
+     * (like attribute or property names) are shared instead of being duplicated in each object.
+     * Unlike {@link String#intern()}, the number of retained strings is bounded: a string only
+     * replaces the one previously kept for the same hash code slot.
+     *
+     * @param s the string
+     * @return an equal string, possibly shared
+     */
+    public static String canonicalize(final String s) {
+        final int slot = s.hashCode() & (CANONICAL_STRINGS.length - 1);
+        final String canonical = CANONICAL_STRINGS[slot];
+        if (s.equals(canonical)) {
+            return canonical;
+        }
+        CANONICAL_STRINGS[slot] = s;
+        return s;
+    }
 }
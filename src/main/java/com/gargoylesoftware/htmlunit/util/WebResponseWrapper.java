@@ -101,6 +101,15 @@ public class WebResponseWrapper extends WebResponse {
         return wrappedWebResponse_.getContentType();
     }
 
+    /**
+     * {@inheritDoc}
+     * The default behavior of this method is to return getContentLength() on the wrapped webResponse object.
+     */
+    @Override
+    public long getContentLength() {
+        return wrappedWebResponse_.getContentLength();
+    }
+
     /**
      * {@inheritDoc}
      * The default behavior of this method is to return getLoadTime() on the wrapped webResponse object.
@@ -154,4 +163,31 @@ public class WebResponseWrapper extends WebResponse {
     public WebRequest getWebRequest() {
         return wrappedWebResponse_.getWebRequest();
     }
+
+    /**
+     * {@inheritDoc}
+     * The default behavior of this method is to call cleanUp() on the wrapped webResponse object.
+     */
+    @Override
+    public void cleanUp() {
+        wrappedWebResponse_.cleanUp();
+    }
+
+    /**
+     * {@inheritDoc}
+     * The default behavior of this method is to return retain() on the wrapped webResponse object.
+     */
+    @Override
+    public boolean retain() {
+        return wrappedWebResponse_.retain();
+    }
+
+    /**
+     * {@inheritDoc}
+     * The default behavior of this method is to call release() on the wrapped webResponse object.
+     */
+    @Override
+    public void release() {
+        wrappedWebResponse_.release();
+    }
 }
@@ -15,7 +15,9 @@
 package com.gargoylesoftware.htmlunit;
 
 import static com.gargoylesoftware.htmlunit.util.StringUtils.formatHttpDate;
+import static org.junit.Assert.assertSame;
 
+import java.io.File;
 import java.io.InputStream;
 import java.net.URL;
 import java.util.ArrayList;
@@ -25,6 +27,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.time.DateUtils;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -34,6 +37,8 @@ import com.gargoylesoftware.htmlunit.BrowserRunner.Browser;
 import com.gargoylesoftware.htmlunit.BrowserRunner.Browsers;
 import com.gargoylesoftware.htmlunit.html.HtmlPage;
 import com.gargoylesoftware.htmlunit.util.NameValuePair;
+import com.gargoylesoftware.htmlunit.util.WebResponseWrapper;
+import com.steadystate.css.dom.CSSStyleSheetImpl;
 
 /**
  * Tests for {@link Cache}.
@@ -194,6 +199,117 @@ public class CacheTest extends SimpleWebTestCase {
         assertEquals(2, client.getCache().getSize());
     }
 
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    @Browsers(Browser.NONE)
+    public void leastRecentlyUsedEvicted() throws Exception {
+        final Cache cache = new Cache();
+        cache.setMaxSize(2);
+        final CSSStyleSheetImpl sheet = new CSSStyleSheetImpl();
+
+        cache.cache("a", sheet);
+        cache.cache("b", sheet);
+        assertSame(sheet, cache.getCachedStyleSheet("a"));
+        cache.cache("c", sheet);
+
+        assertEquals(2, cache.getSize());
+        assertSame(sheet, cache.getCachedStyleSheet("a"));
+        assertNull(cache.getCachedStyleSheet("b"));
+        assertSame(sheet, cache.getCachedStyleSheet("c"));
+
+        assertEquals(3L, cache.getHitCount());
+        assertEquals(1L, cache.getMissCount());
+        assertEquals(1L, cache.getEvictionCount());
+    }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    @Browsers(Browser.NONE)
+    public void maxWeightMaintained() throws Exception {
+        final Cache cache = new Cache();
+        final CSSStyleSheetImpl sheet = new CSSStyleSheetImpl();
+
+        cache.cache("0123456789", sheet);
+        cache.cache("abcdefghij", sheet);
+        assertEquals(40L, cache.getWeight());
+        assertEquals(40L, cache.getWeight(Cache.Kind.STYLESHEET));
+        assertEquals(0L, cache.getWeight(Cache.Kind.SCRIPT));
+
+        cache.setMaxWeight(30);
+        assertEquals(1, cache.getSize());
+        assertEquals(20L, cache.getWeight());
+        assertNull(cache.getCachedStyleSheet("0123456789"));
+        assertSame(sheet, cache.getCachedStyleSheet("abcdefghij"));
+
+        cache.clear();
+        assertEquals(0, cache.getSize());
+        assertEquals(0L, cache.getWeight());
+    }
+
+    /**
+     * A response removed from the cache must stay readable by the pages which still use it,
+     * its content being cleaned up by the last one.
+     * @throws Exception if the test fails
+     */
+    @Test
+    @Browsers(Browser.NONE)
+    public void evictedResponseStillReadable() throws Exception {
+        final File file = File.createTempFile("htmlunit", ".tmp");
+        FileUtils.writeStringToFile(file, "hello", "ISO-8859-1");
+        final List<NameValuePair> headers =
+            Collections.singletonList(new NameValuePair("Last-Modified", "Sun, 15 Jul 2007 20:46:27 GMT"));
+        final WebResponseData data =
+            new WebResponseData(new DownloadedContent.OnFile(file, true), 200, "OK", headers);
+        final WebRequest request = new WebRequest(getDefaultUrl());
+        final WebResponse response = new WebResponse(data, request, 0);
+
+        final Cache cache = new Cache();
+        cache.cacheIfPossible(request, response, response);
+        assertEquals(1, cache.getSize());
+        assertTrue(response.retain());
+        final WebResponse used = new WebResponseFromCache(response, request);
+
+        // the page which loaded the response, possibly more than once
+        response.cleanUp();
+        response.cleanUp();
+        cache.clear();
+        assertTrue(file.exists());
+        assertEquals("hello", used.getContentAsString("ISO-8859-1"));
+
+        used.cleanUp();
+        used.cleanUp();
+        assertFalse(file.exists());
+        assertFalse(response.retain());
+    }
+
+    /**
+     * Cleaning up a wrapper must clean up the wrapped response, once.
+     * @throws Exception if the test fails
+     */
+    @Test
+    @Browsers(Browser.NONE)
+    public void wrappedResponseCleanedUp() throws Exception {
+        final File file = File.createTempFile("htmlunit", ".tmp");
+        final WebResponseData data =
+            new WebResponseData(new DownloadedContent.OnFile(file, true), 200, "OK",
+                Collections.<NameValuePair>emptyList());
+        final WebResponse response = new WebResponse(data, new WebRequest(getDefaultUrl()), 0);
+        assertTrue(response.retain());
+
+        final WebResponse wrapper = new WebResponseWrapper(response);
+        wrapper.cleanUp();
+        wrapper.cleanUp();
+        response.cleanUp();
+        assertTrue(file.exists());
+
+        response.release();
+        assertFalse(file.exists());
+    }
+
     /**
      * Test that content retrieved with XHR is cached when right headers are here.
      * @throws Exception if the test fails
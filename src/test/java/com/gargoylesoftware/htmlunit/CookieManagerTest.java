@@ -19,6 +19,7 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.http.Header;
 import org.apache.http.cookie.CookieOrigin;
@@ -100,6 +101,46 @@ public class CookieManagerTest extends WebDriverTestCase {
         assertEquals(1, mgr.getCookies().size());
     }
 
+    /**
+     * Verifies the selection of the cookies applicable to an URL.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    @Browsers(Browser.NONE)
+    public void getCookiesForUrl() throws Exception {
+        final CookieManager mgr = new CookieManager();
+        mgr.addCookie(new Cookie(".example.com", "a", "1"));
+        mgr.addCookie(new Cookie("other.com", "b", "2"));
+        mgr.addCookie(new Cookie("www.example.com", "c", "3", "/sub", null, false));
+        mgr.addCookie(new Cookie("www.example.com", "d", "4", "/", null, true));
+        mgr.addCookie(new Cookie("myexample.com", "e", "5"));
+
+        final URL url = new URL("http://www.example.com/sub/page.html");
+        assertEquals("[a=1, c=3]", names(mgr.getCookies(url)));
+        assertEquals("[a=1, c=3, d=4]", names(mgr.getCookies(new URL("https://www.example.com/sub/"))));
+        assertEquals("[a=1]", names(mgr.getCookies(new URL("http://example.com/sub"))));
+        assertEquals("[b=2]", names(mgr.getCookies(new URL("http://other.com/"))));
+
+        // the cached selection has to reflect the modifications
+        mgr.addCookie(new Cookie("example.com", "f", "6", "/", new Date(System.currentTimeMillis() + 200), false));
+        assertEquals("[a=1, c=3, f=6]", names(mgr.getCookies(url)));
+        mgr.removeCookie(new Cookie(".example.com", "a", "1"));
+        assertEquals("[c=3, f=6]", names(mgr.getCookies(url)));
+
+        // expired cookies are discarded
+        Thread.sleep(300);
+        assertEquals("[c=3]", names(mgr.getCookies(url)));
+        assertEquals(4, mgr.getCookies().size());
+    }
+
+    private static String names(final Set<Cookie> cookies) {
+        final List<String> names = new ArrayList<String>();
+        for (final Cookie cookie : cookies) {
+            names.add(cookie.getName() + '=' + cookie.getValue());
+        }
+        return names.toString();
+    }
+
     /**
      * @throws Exception if the test fails
      */
@@ -0,0 +1,223 @@
+/*
+ * Copyright (c) 2002-2012 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+
+import com.gargoylesoftware.htmlunit.BrowserRunner.Browser;
+import com.gargoylesoftware.htmlunit.BrowserRunner.Browsers;
+import com.gargoylesoftware.htmlunit.util.NameValuePair;
+import com.gargoylesoftware.htmlunit.util.WebConnectionWrapper;
+
+/**
+ * Tests for {@link DiskCache}.
+ *
+ * @version $Revision$
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+@RunWith(BrowserRunner.class)
+public class DiskCacheTest extends SimpleWebTestCase {
+
+    /**
+     * Utility for temporary folders.
+     * Has to be public due to JUnit's constraints for @Rule.
+     */
+    @Rule
+    public final TemporaryFolder tmpFolderProvider_ = new TemporaryFolder();
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    @Browsers(Browser.NONE)
+    public void freshContentReusedByNewInstance() throws Exception {
+        final File directory = tmpFolderProvider_.newFolder("cache");
+        final URL url = new URL(URL_FIRST, "foo.js");
+
+        final List<NameValuePair> headers = new ArrayList<NameValuePair>();
+        headers.add(new NameValuePair("Cache-Control", "max-age=3600"));
+        final MockWebConnection connection = new MockWebConnection();
+        connection.setResponse(url, "var x = 1;", 200, "OK", JAVASCRIPT_MIME_TYPE, headers);
+
+        final DiskCache diskCache = new DiskCache(directory);
+        WebResponse response = diskCache.getResponse(new WebRequest(url), connection);
+        assertEquals("var x = 1;", response.getContentAsString());
+        assertEquals(1, connection.getRequestCount());
+        assertEquals(1, diskCache.getSize());
+
+        final MockWebConnection emptyConnection = new MockWebConnection();
+        final DiskCache newDiskCache = new DiskCache(directory);
+        response = newDiskCache.getResponse(new WebRequest(url), emptyConnection);
+        assertEquals("var x = 1;", response.getContentAsString());
+        assertEquals("max-age=3600", response.getResponseHeaderValue("Cache-Control"));
+        assertEquals(0, emptyConnection.getRequestCount());
+    }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    @Browsers(Browser.NONE)
+    public void staleContentRevalidated() throws Exception {
+        final File directory = tmpFolderProvider_.newFolder("cache");
+        final URL url = new URL(URL_FIRST, "foo.css");
+
+        final List<NameValuePair> headers = new ArrayList<NameValuePair>();
+        headers.add(new NameValuePair("Cache-Control", "no-cache"));
+        headers.add(new NameValuePair("ETag", "\"abc\""));
+        final MockWebConnection connection = new MockWebConnection();
+        connection.setResponse(url, ".x { color: red }", 200, "OK", "text/css", headers);
+
+        final List<String> sentEtags = new ArrayList<String>();
+        final WebConnection wrapper = new WebConnectionWrapper(connection) {
+            @Override
+            public WebResponse getResponse(final WebRequest request) throws IOException {
+                sentEtags.add(request.getAdditionalHeaders().get("If-None-Match"));
+                return super.getResponse(request);
+            }
+        };
+
+        final DiskCache diskCache = new DiskCache(directory);
+        diskCache.getResponse(new WebRequest(url), wrapper);
+
+        connection.setResponse(url, "", 304, "Not Modified", "text/css", headers);
+        final WebRequest request = new WebRequest(url);
+        final WebResponse response = diskCache.getResponse(request, wrapper);
+        assertEquals(200, response.getStatusCode());
+        assertEquals(".x { color: red }", response.getContentAsString());
+        assertEquals(2, connection.getRequestCount());
+        assertEquals(new String[] {null, "\"abc\""}, sentEtags);
+        assertFalse(request.isAdditionalHeader("If-None-Match"));
+    }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    @Browsers(Browser.NONE)
+    public void noStore() throws Exception {
+        final URL url = new URL(URL_FIRST, "foo.js");
+
+        final List<NameValuePair> headers = new ArrayList<NameValuePair>();
+        headers.add(new NameValuePair("Cache-Control", "no-store, max-age=3600"));
+        final MockWebConnection connection = new MockWebConnection();
+        connection.setResponse(url, "var x = 1;", 200, "OK", JAVASCRIPT_MIME_TYPE, headers);
+
+        final DiskCache diskCache = new DiskCache(tmpFolderProvider_.newFolder("cache"));
+        diskCache.getResponse(new WebRequest(url), connection);
+        assertEquals(0, diskCache.getSize());
+    }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    @Browsers(Browser.NONE)
+    public void varyAndCredentials() throws Exception {
+        final URL url = new URL(URL_FIRST, "foo.js");
+        final URL url2 = new URL(URL_FIRST, "bar.js");
+        final URL url3 = new URL(URL_FIRST, "baz.js");
+
+        final List<NameValuePair> headers = new ArrayList<NameValuePair>();
+        headers.add(new NameValuePair("Cache-Control", "max-age=3600"));
+        headers.add(new NameValuePair("Vary", "Accept-Language"));
+        final List<NameValuePair> encodingHeaders = new ArrayList<NameValuePair>();
+        encodingHeaders.add(new NameValuePair("Cache-Control", "max-age=3600"));
+        encodingHeaders.add(new NameValuePair("Vary", "Accept-Encoding"));
+        final MockWebConnection connection = new MockWebConnection();
+        connection.setResponse(url, "var x = 1;", 200, "OK", JAVASCRIPT_MIME_TYPE, headers);
+        connection.setResponse(url2, "var x = 2;", 200, "OK", JAVASCRIPT_MIME_TYPE, encodingHeaders);
+        connection.setResponse(url3, "var x = 3;", 200, "OK", JAVASCRIPT_MIME_TYPE, encodingHeaders);
+
+        final DiskCache diskCache = new DiskCache(tmpFolderProvider_.newFolder("cache"));
+        diskCache.getResponse(new WebRequest(url), connection);
+        assertEquals(0, diskCache.getSize());
+
+        diskCache.getResponse(new WebRequest(url2), connection);
+        assertEquals(1, diskCache.getSize());
+
+        final WebRequest request = new WebRequest(url3);
+        request.setAdditionalHeader("Authorization", "Basic dXNlcjpwYXNz");
+        diskCache.getResponse(request, connection);
+        assertEquals(1, diskCache.getSize());
+    }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    @Browsers(Browser.NONE)
+    public void maxSize() throws Exception {
+        final File directory = tmpFolderProvider_.newFolder("cache");
+        final URL url = new URL(URL_FIRST, "foo.js");
+        final URL url2 = new URL(URL_FIRST, "bar.js");
+
+        final List<NameValuePair> headers = new ArrayList<NameValuePair>();
+        headers.add(new NameValuePair("Cache-Control", "max-age=3600"));
+        final MockWebConnection connection = new MockWebConnection();
+        connection.setResponse(url, "var x = 1;", 200, "OK", JAVASCRIPT_MIME_TYPE, headers);
+        connection.setResponse(url2, "var y = 2;", 200, "OK", JAVASCRIPT_MIME_TYPE, headers);
+
+        final DiskCache diskCache = new DiskCache(directory);
+        diskCache.setMaxSize(15);
+        diskCache.getResponse(new WebRequest(url), connection).cleanUp();
+        diskCache.getResponse(new WebRequest(url2), connection).cleanUp();
+        assertEquals(1, diskCache.getSize());
+
+        // the least recently stored entry has been removed
+        diskCache.getResponse(new WebRequest(url2), connection);
+        assertEquals(2, connection.getRequestCount());
+        diskCache.getResponse(new WebRequest(url), connection);
+        assertEquals(3, connection.getRequestCount());
+    }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    @Browsers(Browser.NONE)
+    public void replacedContentReadableUntilCleanUp() throws Exception {
+        final File directory = tmpFolderProvider_.newFolder("cache");
+        final URL url = new URL(URL_FIRST, "foo.js");
+
+        final List<NameValuePair> headers = new ArrayList<NameValuePair>();
+        headers.add(new NameValuePair("Cache-Control", "max-age=3600"));
+        final MockWebConnection connection = new MockWebConnection();
+        connection.setResponse(url, "var x = 1;", 200, "OK", JAVASCRIPT_MIME_TYPE, headers);
+
+        final DiskCache diskCache = new DiskCache(directory);
+        diskCache.getResponse(new WebRequest(url), connection).cleanUp();
+        final WebResponse stored = diskCache.getResponse(new WebRequest(url), connection);
+        assertEquals(1, connection.getRequestCount());
+
+        connection.setResponse(url, "var x = 2;", 200, "OK", JAVASCRIPT_MIME_TYPE, headers);
+        diskCache.clear();
+        diskCache.getResponse(new WebRequest(url), connection);
+        assertEquals("var x = 1;", stored.getContentAsString());
+
+        final int files = directory.list().length;
+        stored.cleanUp();
+        assertEquals(files - 1, directory.list().length);
+    }
+}
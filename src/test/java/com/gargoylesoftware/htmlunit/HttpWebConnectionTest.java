@@ -18,15 +18,19 @@ import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.Writer;
 import java.lang.reflect.Method;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import javax.servlet.Servlet;
 import javax.servlet.ServletException;
@@ -35,11 +39,13 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
 import org.apache.http.ProtocolVersion;
 import org.apache.http.StatusLine;
+import org.apache.http.conn.ClientConnectionManager;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.entity.mime.content.InputStreamBody;
 import org.apache.http.impl.client.AbstractHttpClient;
@@ -214,6 +220,40 @@ public class HttpWebConnectionTest extends WebServerTestCase {
         assertEquals(new ByteArrayInputStream(content.getBytes()), response.getContentAsStream());
     }
 
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void downloadContent() throws Exception {
+        final byte[] content = "hello world".getBytes();
+
+        // announced length
+        DownloadedContent downloaded = HttpWebConnection.downloadContent(new ByteArrayInputStream(content), 20, 11);
+        Assert.assertTrue(downloaded instanceof DownloadedContent.InMemory);
+        Assert.assertArrayEquals(content, IOUtils.toByteArray(downloaded.getInputStream()));
+
+        // wrong announced length
+        downloaded = HttpWebConnection.downloadContent(new ByteArrayInputStream(content), 20, 5);
+        Assert.assertArrayEquals(content, IOUtils.toByteArray(downloaded.getInputStream()));
+        downloaded = HttpWebConnection.downloadContent(new ByteArrayInputStream(content), 20, 15);
+        Assert.assertArrayEquals(content, IOUtils.toByteArray(downloaded.getInputStream()));
+
+        // unknown length
+        final byte[] bigContent = new byte[20000];
+        bigContent[19999] = 1;
+        downloaded = HttpWebConnection.downloadContent(new ByteArrayInputStream(bigContent), 30000, -1);
+        Assert.assertTrue(downloaded instanceof DownloadedContent.InMemory);
+        Assert.assertArrayEquals(bigContent, IOUtils.toByteArray(downloaded.getInputStream()));
+
+        // too big for memory
+        downloaded = HttpWebConnection.downloadContent(new ByteArrayInputStream(bigContent), 10000, -1);
+        Assert.assertTrue(downloaded instanceof DownloadedContent.OnFile);
+        Assert.assertEquals(20000, ((DownloadedContent.OnFile) downloaded).length());
+        Assert.assertArrayEquals(bigContent, IOUtils.toByteArray(downloaded.getInputStream()));
+        downloaded.cleanUp();
+        Assert.assertEquals(0, ((DownloadedContent.OnFile) downloaded).length());
+    }
+
     /**
      * Tests Jetty.
      * @throws Exception on failure
@@ -397,6 +437,112 @@ public class HttpWebConnectionTest extends WebServerTestCase {
         assertTrue(page.asText().contains("key1=value1"));
     }
 
+    /**
+     * Connections sharing a connection manager must not share their cookies.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void sharedConnectionManager() throws Exception {
+        final Map<String, Class<? extends Servlet>> servlets = new HashMap<String, Class<? extends Servlet>>();
+        servlets.put("/test1", Cookie1Servlet.class);
+        servlets.put("/test2", Cookie2Servlet.class);
+        startWebServer("./", null, servlets);
+
+        final WebClient client1 = getWebClient();
+        final WebClient client2 = new WebClient(getBrowserVersion());
+        final ClientConnectionManager connectionManager =
+            HttpWebConnection.createConnectionManager(client1.getOptions());
+        try {
+            client1.setWebConnection(new HttpWebConnection(client1, connectionManager));
+            client2.setWebConnection(new HttpWebConnection(client2, connectionManager));
+
+            HtmlPage page = client1.getPage("http://localhost:" + PORT + "/test1");
+            assertTrue(page.asText().contains("key1=value1"));
+
+            page = client2.getPage("http://localhost:" + PORT + "/test2");
+            assertTrue(page.asText().contains("No Cookies"));
+
+            // closing a client doesn't shut down the shared connection manager
+            client2.closeAllWindows();
+            page = client1.getPage("http://localhost:" + PORT + "/test2");
+            assertTrue(page.asText().contains("key1=value1"));
+        }
+        finally {
+            client2.closeAllWindows();
+            connectionManager.shutdown();
+        }
+    }
+
+    /**
+     * The temporary file holding an external script too big to be kept in memory must be deleted
+     * once the script has been compiled.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void largeScriptTemporaryFileDeleted() throws Exception {
+        final Map<String, Class<? extends Servlet>> servlets = new HashMap<String, Class<? extends Servlet>>();
+        servlets.put("/page", LargeScriptPageServlet.class);
+        servlets.put("/script.js", LargeScriptServlet.class);
+        startWebServer("./", null, servlets);
+
+        final Set<String> tempFiles = listTempFiles();
+        final List<String> collectedAlerts = new ArrayList<String>();
+        final WebClient client = getWebClient();
+        client.setAlertHandler(new CollectingAlertHandler(collectedAlerts));
+        client.getPage("http://localhost:" + PORT + "/page");
+        assertEquals(new String[] {"loaded"}, collectedAlerts);
+        assertEquals(tempFiles, listTempFiles());
+    }
+
+    private static Set<String> listTempFiles() {
+        final String[] names = new File(System.getProperty("java.io.tmpdir")).list(new FilenameFilter() {
+            public boolean accept(final File dir, final String name) {
+                return name.startsWith("htmlunit") && name.endsWith(".tmp");
+            }
+        });
+        return new HashSet<String>(Arrays.asList(names));
+    }
+
+    /**
+     * Servlet for {@link #largeScriptTemporaryFileDeleted()}.
+     */
+    public static class LargeScriptPageServlet extends HttpServlet {
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected void doGet(final HttpServletRequest request, final HttpServletResponse response) throws IOException {
+            response.setContentType("text/html");
+            final Writer writer = response.getWriter();
+            writer.write("<html><head><script src='script.js'></script></head>"
+                + "<body onload='alert(loaded)'></body></html>");
+            writer.close();
+        }
+    }
+
+    /**
+     * Servlet for {@link #largeScriptTemporaryFileDeleted()}.
+     */
+    public static class LargeScriptServlet extends HttpServlet {
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected void doGet(final HttpServletRequest request, final HttpServletResponse response) throws IOException {
+            response.setContentType("application/javascript");
+            final Writer writer = response.getWriter();
+            // bigger than the default maximum kept in memory
+            final String comment = "// " + StringUtils.repeat('x', 1000) + "\n";
+            for (int i = 0; i < 600; i++) {
+                writer.write(comment);
+            }
+            writer.write("var loaded = 'loaded';\n");
+            writer.close();
+        }
+    }
+
     /**
      * Servlet for {@link #cookiesEnabledAfterDisable()}.
      */
@@ -2235,4 +2235,34 @@ public class WebClientTest extends SimpleWebTestCase {
 
         loadPage(html);
     }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    @Browsers(Browser.NONE)
+    public void loadWebResponseAsync() throws Exception {
+        final URL url1 = new URL(URL_FIRST, "a.txt");
+        final URL url2 = new URL(URL_FIRST, "b.txt");
+        final MockWebConnection webConnection = getMockWebConnection();
+        webConnection.setResponse(url1, "a", "text/plain");
+        webConnection.setResponse(url2, "b", "text/plain");
+
+        final WebClient webClient = getWebClientWithMockWebConnection();
+        final WebResponseFuture future1 = webClient.loadWebResponseAsync(new WebRequest(url1));
+        final WebResponseFuture future2 = webClient.loadWebResponseAsync(new WebRequest(url2));
+        final WebResponseFuture future3 = webClient.loadWebResponseAsync(new WebRequest(new URL(URL_FIRST, "d")));
+
+        assertEquals("b", future2.getWebResponse().getContentAsString());
+        assertEquals("a", future1.getWebResponse().getContentAsString());
+        assertEquals(url1, future1.getWebRequest().getUrl());
+        try {
+            future3.getWebResponse();
+            fail("IllegalStateException expected");
+        }
+        catch (final IllegalStateException e) {
+            // expected, no response configured
+        }
+        assertEquals(3, webConnection.getRequestCount());
+    }
 }
@@ -111,6 +111,38 @@ public class WebResponseDataTest extends WebServerTestCase {
         assertEquals("Hello Compressed World!", page.asText());
     }
 
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void deflateCompressionDecodedOnDownload() throws Exception {
+        startWebServer("src/test/resources/pjl-comp-filter", null);
+        final WebRequest request = new WebRequest(new URL("http://localhost:"
+            + PORT + "/index.html"));
+        request.setAdditionalHeader("Accept-Encoding", "deflate");
+        final WebClient webClient = getWebClient();
+        webClient.getOptions().setDecodeContentOnDownload(true);
+        final HtmlPage page = webClient.getPage(request);
+        assertEquals("Hello Compressed World!", page.asText());
+        assertEquals("deflate", page.getWebResponse().getResponseHeaderValue("Content-Encoding"));
+    }
+
+    /**
+     * Content decoded while downloading must not be decoded again.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void decodedContent() throws Exception {
+        final List<NameValuePair> headers = new ArrayList<NameValuePair>();
+        headers.add(new NameValuePair("Content-Encoding", "gzip"));
+
+        final DownloadedContent content = new DownloadedContent.Decoded(
+                new DownloadedContent.InMemory("Plain Content".getBytes()), 5);
+        final WebResponseData data = new WebResponseData(content, HttpStatus.SC_OK, "OK", headers);
+        assertEquals("Plain Content", new String(data.getBody(), "UTF-8"));
+        assertEquals(13L, data.getContentLength());
+    }
+
     /**
      * @throws Exception if the test fails
      */
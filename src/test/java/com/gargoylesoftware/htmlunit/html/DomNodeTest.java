@@ -18,6 +18,7 @@ import static org.junit.Assert.assertSame;
 import static org.junit.Assert.fail;
 
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 
 import org.junit.Assert;
@@ -27,6 +28,8 @@ import org.xml.sax.helpers.AttributesImpl;
 
 import com.gargoylesoftware.htmlunit.BrowserRunner;
 import com.gargoylesoftware.htmlunit.BrowserRunner.Alerts;
+import com.gargoylesoftware.htmlunit.BrowserRunner.Browser;
+import com.gargoylesoftware.htmlunit.BrowserRunner.Browsers;
 import com.gargoylesoftware.htmlunit.ElementNotFoundException;
 import com.gargoylesoftware.htmlunit.WebClient;
 import com.gargoylesoftware.htmlunit.SimpleWebTestCase;
@@ -764,4 +767,24 @@ public class DomNodeTest extends SimpleWebTestCase {
         assertTrue(page.getElementById("d3").isDisplayed());
     }
 
+    /**
+     * The attribute names are shared by the elements instead of being duplicated in each of them.
+     * @throws Exception if the test fails
+     */
+    @Test
+    @Browsers(Browser.NONE)
+    public void attributeNamesShared() throws Exception {
+        final String content = "<html><head></head><body>\n"
+            + "<div id='d1' class='c'>text</div>\n"
+            + "<div id='d2' class='c'>text</div>\n"
+            + "</body></html>";
+        getWebClient().getOptions().setJavaScriptEnabled(false);
+        final HtmlPage page = loadPage(content);
+
+        final Iterator<String> names1 = page.getElementById("d1").getAttributesMap().keySet().iterator();
+        final Iterator<String> names2 = page.getElementById("d2").getAttributesMap().keySet().iterator();
+        assertSame(names1.next(), names2.next());
+        assertSame(names1.next(), names2.next());
+        assertFalse(names1.hasNext());
+    }
 }
@@ -607,4 +607,33 @@ public class HTMLParserTest extends SimpleWebTestCase {
         final HtmlPage page = loadPageWithAlerts(html);
         assertNotNull(page);
     }
+
+    /**
+     * Fragments parsed one after the other reuse the same builder, plain text doesn't need it.
+     * @throws Exception failure
+     */
+    @Test
+    @Alerts({ "3", "B", "I", "plain text", "1", "1:<b>x</b>", "2:<b>x</b>", "P", "a < b" })
+    public void parseFragments() throws Exception {
+        final String html = "<html><head><script>\n"
+            + "function test() {\n"
+            + "  var d = document.getElementById('d');\n"
+            + "  d.innerHTML = '<b>1</b><i>2</i>text';\n"
+            + "  alert(d.childNodes.length);\n"
+            + "  alert(d.firstChild.tagName);\n"
+            + "  alert(d.childNodes[1].tagName);\n"
+            + "  d.innerHTML = 'plain text';\n"
+            + "  alert(d.innerHTML);\n"
+            + "  alert(d.childNodes.length);\n"
+            + "  for (var i = 1; i <= 2; i++) {\n"
+            + "    d.innerHTML = '<b>x</b>';\n"
+            + "    alert(i + ':' + d.innerHTML.toLowerCase());\n"
+            + "  }\n"
+            + "  d.innerHTML = '<p>a &lt; b</p>';\n"
+            + "  alert(d.firstChild.tagName);\n"
+            + "  alert(d.firstChild.firstChild.data);\n"
+            + "}\n"
+            + "</script></head><body onload='test()'><div id='d'></div></body></html>";
+        loadPageWithAlerts(html);
+    }
 }
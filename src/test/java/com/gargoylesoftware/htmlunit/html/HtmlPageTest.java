@@ -20,6 +20,7 @@ import static org.junit.Assert.assertSame;
 import static org.junit.Assert.fail;
 
 import java.io.IOException;
+import java.io.StringWriter;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
@@ -1780,6 +1781,29 @@ public class HtmlPageTest extends SimpleWebTestCase {
         page.asText();
     }
 
+    /**
+     * The text written to a writer is the same as the one returned by asText(), including the hidden elements.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void asTextWriter() throws Exception {
+        final StringBuilder htmlContent = new StringBuilder("<html><head><title>test</title></head><body>\n");
+        for (int i = 0; i < 2000; i++) {
+            htmlContent.append("<div>line ").append(i).append(" <span style='display: none'>hidden</span>")
+                .append("<p style='visibility: hidden'>p <b style='visibility: visible'>b</b></p></div>\n");
+        }
+        htmlContent.append("<textarea>a  b\nc</textarea></body></html>");
+
+        final HtmlPage page = loadPage(htmlContent.toString());
+        final String text = page.asText();
+        assertFalse(text.contains("hidden"));
+        assertTrue(text.contains("line 1999"));
+
+        final StringWriter writer = new StringWriter();
+        page.asText(writer);
+        assertEquals(text, writer.toString());
+    }
+
     /**
      * @throws Exception if the test fails
      */
@@ -1839,4 +1863,79 @@ public class HtmlPageTest extends SimpleWebTestCase {
         clonedPage.getByXPath("//p");
     }
 
+    /**
+     * Prefetched scripts must be executed in document order and downloaded only once.
+     * @throws Exception if the test fails
+     */
+    @Test
+    @Alerts({ "a", "inline", "b" })
+    public void prefetchResources() throws Exception {
+        final String html = "<html><head>\n"
+            + "<script src='a.js'></script>\n"
+            + "<script>alert('inline');</script>\n"
+            + "<!-- <script src='c.js'></script> -->\n"
+            + "<script src='b.js'></script>\n"
+            + "</head><body></body></html>";
+
+        final MockWebConnection webConnection = getMockWebConnection();
+        webConnection.setResponse(new URL(getDefaultUrl(), "a.js"), "alert('a');", JAVASCRIPT_MIME_TYPE);
+        webConnection.setResponse(new URL(getDefaultUrl(), "b.js"), "alert('b');", JAVASCRIPT_MIME_TYPE);
+        getWebClient().getOptions().setPrefetchResources(true);
+
+        loadPageWithAlerts(html);
+        assertEquals(3, webConnection.getRequestCount());
+    }
+
+    /**
+     * Markup inside of inline scripts, raw text elements and noscript must not be prefetched.
+     * @throws Exception if the test fails
+     */
+    @Test
+    @Alerts({ "inline", "b" })
+    public void prefetchResourcesSkipsRawText() throws Exception {
+        final String html = "<html><head>\n"
+            + "<script>var s = '<script src=\"c.js\">'; alert('inline');</script>\n"
+            + "<noscript><link rel='stylesheet' href='d.css'></noscript>\n"
+            + "<script src='b.js'></script>\n"
+            + "</head><body><textarea><link rel='stylesheet' href='f.css'></textarea></body></html>";
+
+        final MockWebConnection webConnection = getMockWebConnection();
+        webConnection.setResponse(new URL(getDefaultUrl(), "b.js"), "alert('b');", JAVASCRIPT_MIME_TYPE);
+        getWebClient().getOptions().setPrefetchResources(true);
+
+        loadPageWithAlerts(html);
+        assertEquals(2, webConnection.getRequestCount());
+    }
+
+    /**
+     * Checking whether a resource needs to be prefetched must not be counted in the cache statistics.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void prefetchResourcesCacheStatistics() throws Exception {
+        final String html = "<html><head>\n"
+            + "<script src='a.js'></script>\n"
+            + "<script src='b.js'></script>\n"
+            + "</head><body></body></html>";
+
+        assertEquals(loadAndCountCacheMisses(html, false), loadAndCountCacheMisses(html, true));
+    }
+
+    private long loadAndCountCacheMisses(final String html, final boolean prefetch) throws Exception {
+        final WebClient client = new WebClient();
+        client.getOptions().setPrefetchResources(prefetch);
+        final MockWebConnection webConnection = new MockWebConnection();
+        webConnection.setResponse(getDefaultUrl(), html);
+        webConnection.setResponse(new URL(getDefaultUrl(), "a.js"), "var a;", JAVASCRIPT_MIME_TYPE);
+        webConnection.setResponse(new URL(getDefaultUrl(), "b.js"), "var b;", JAVASCRIPT_MIME_TYPE);
+        client.setWebConnection(webConnection);
+        try {
+            client.getPage(getDefaultUrl());
+            assertEquals(3, webConnection.getRequestCount());
+            return client.getCache().getMissCount();
+        }
+        finally {
+            client.closeAllWindows();
+        }
+    }
 }
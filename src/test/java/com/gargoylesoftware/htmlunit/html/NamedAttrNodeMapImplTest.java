@@ -181,4 +181,41 @@ public class NamedAttrNodeMapImplTest {
         Assert.assertEquals("Key2", entry.getKey());
         Assert.assertEquals("attr2", entry.getValue().getNodeName());
     }
+
+    /**
+     * Test that replacing an attribute keeps its position and that removing one shifts the following ones.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void replaceAndRemove() throws Exception {
+        final DomElement dom = new HtmlBreak("", "", null, null);
+
+        final NamedAttrNodeMapImpl map = new NamedAttrNodeMapImpl(dom, false);
+        for (int i = 0; i < 6; i++) {
+            map.put("Key" + i, new DomAttr(null, "", "attr" + i, null, false));
+        }
+        Assert.assertEquals(6, map.size());
+        Assert.assertNotNull(map.put("KEY1", new DomAttr(null, "", "attr1b", null, false)));
+        Assert.assertEquals(6, map.getLength());
+        Assert.assertEquals("attr1b", map.item(1).getNodeName());
+
+        Assert.assertEquals("attr2", map.remove("key2").getNodeName());
+        Assert.assertNull(map.remove("key2"));
+        Assert.assertEquals("attr3", map.item(2).getNodeName());
+        Assert.assertNull(map.item(5));
+
+        final Iterator<Map.Entry<String, DomAttr>> attrs = map.entrySet().iterator();
+        while (attrs.hasNext()) {
+            if ("key4".equals(attrs.next().getKey())) {
+                attrs.remove();
+            }
+        }
+        Assert.assertEquals(4, map.size());
+        Assert.assertFalse(map.containsKey("key4"));
+        Assert.assertEquals("attr5", map.item(3).getNodeName());
+
+        map.clear();
+        Assert.assertTrue(map.isEmpty());
+        Assert.assertNull(map.item(0));
+    }
 }
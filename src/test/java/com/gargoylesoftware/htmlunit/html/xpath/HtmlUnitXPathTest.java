@@ -28,6 +28,7 @@ import org.junit.runner.RunWith;
 import com.gargoylesoftware.htmlunit.BrowserRunner;
 import com.gargoylesoftware.htmlunit.BrowserRunner.Alerts;
 import com.gargoylesoftware.htmlunit.SimpleWebTestCase;
+import com.gargoylesoftware.htmlunit.html.DomElement;
 import com.gargoylesoftware.htmlunit.html.DomNode;
 import com.gargoylesoftware.htmlunit.html.DomText;
 import com.gargoylesoftware.htmlunit.html.HtmlBody;
@@ -290,4 +291,65 @@ public class HtmlUnitXPathTest extends SimpleWebTestCase {
         div.setAttribute("class", "design");
         Assert.assertSame(div, page.getFirstByXPath("//*[@class = 'design']"));
     }
+
+    /**
+     * The same expression evaluated several times has to reflect the changes of the DOM.
+     * @throws Exception if test fails
+     */
+    @Test
+    public void sameExpressionAfterDomChanges() throws Exception {
+        final String content = "<html><head><title>foo</title></head>\n"
+            + "<body>\n"
+            + "<div id='d1' class='item'></div>\n"
+            + "</body></html>";
+
+        final HtmlPage page = loadPage(content);
+        final String xpath = "//div[@class='item']";
+        assertEquals(1, page.getByXPath(xpath).size());
+
+        final HtmlElement div2 = (HtmlElement) page.createElement("div");
+        div2.setAttribute("class", "item");
+        page.getBody().appendChild(div2);
+        assertEquals(2, page.getByXPath(xpath).size());
+        Assert.assertSame(page.getHtmlElementById("d1"), page.getFirstByXPath(xpath));
+
+        page.getHtmlElementById("d1").removeAttribute("class");
+        Assert.assertSame(div2, page.getFirstByXPath(xpath));
+
+        div2.remove();
+        assertNull(page.getFirstByXPath(xpath));
+        assertEquals(0, page.getByXPath(xpath).size());
+    }
+
+    /**
+     * Changes not reported as HTML attribute events (attributes of non HTML elements, attribute
+     * and text values) have to be reflected too.
+     * @throws Exception if test fails
+     */
+    @Test
+    public void sameExpressionAfterNodeModifications() throws Exception {
+        final String content = "<html><head><title>foo</title></head>\n"
+            + "<body><div id='d1' class='item'>hello</div></body></html>";
+
+        final HtmlPage page = loadPage(content);
+        final DomElement element = new DomElement("urn:x", "x:item", page, null);
+        page.getBody().appendChild(element);
+        assertEquals(0, page.getByXPath("//*[@x]").size());
+
+        element.setAttributeNS(null, "x", "1");
+        Assert.assertSame(element, page.getFirstByXPath("//*[@x]"));
+
+        element.removeAttribute("x");
+        assertEquals(0, page.getByXPath("//*[@x]").size());
+
+        final HtmlElement div = page.getHtmlElementById("d1");
+        assertEquals(1, page.getByXPath("//div[@class='item']").size());
+        div.getAttributeNode("class").setValue("other");
+        assertEquals(0, page.getByXPath("//div[@class='item']").size());
+
+        assertEquals(1, page.getByXPath("//div[text()='hello']").size());
+        ((DomText) div.getFirstChild()).setData("bye");
+        assertEquals(0, page.getByXPath("//div[text()='hello']").size());
+        Assert.assertSame(div, page.getFirstByXPath("//div[text()='bye']"));
+    }
 }
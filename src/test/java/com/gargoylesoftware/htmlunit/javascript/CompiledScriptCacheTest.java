@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2002-2012 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.javascript;
+
+import static org.junit.Assert.fail;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.gargoylesoftware.htmlunit.BrowserRunner;
+import com.gargoylesoftware.htmlunit.BrowserRunner.Browser;
+import com.gargoylesoftware.htmlunit.BrowserRunner.Browsers;
+import com.gargoylesoftware.htmlunit.CollectingAlertHandler;
+import com.gargoylesoftware.htmlunit.MockWebConnection;
+import com.gargoylesoftware.htmlunit.ScriptException;
+import com.gargoylesoftware.htmlunit.SimpleWebTestCase;
+import com.gargoylesoftware.htmlunit.WebClient;
+import com.gargoylesoftware.htmlunit.html.HtmlPage;
+
+/**
+ * Tests for {@link CompiledScriptCache}.
+ *
+ * @version $Revision$
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+@RunWith(BrowserRunner.class)
+public class CompiledScriptCacheTest extends SimpleWebTestCase {
+
+    /**
+     * An inline script is compiled only once for several clients, even if the pages aren't cacheable.
+     * @throws Exception if the test fails
+     */
+    @Test
+    @Browsers(Browser.NONE)
+    public void inlineScriptSharedByClients() throws Exception {
+        final String html = "<html><head>\n"
+            + "<script>var id = 'compiledScriptCacheTest'; alert(id);</script>\n"
+            + "</head><body></body></html>";
+
+        CompiledScriptCache.clear();
+        final long hits = CompiledScriptCache.getHitCount();
+        final List<String> collectedAlerts = new ArrayList<String>();
+        for (int i = 0; i < 2; i++) {
+            final WebClient client = new WebClient();
+            try {
+                final MockWebConnection connection = new MockWebConnection();
+                connection.setDefaultResponse(html);
+                client.setWebConnection(connection);
+                client.setAlertHandler(new CollectingAlertHandler(collectedAlerts));
+                client.getPage(URL_FIRST);
+                client.getPage(URL_SECOND);
+            }
+            finally {
+                client.closeAllWindows();
+            }
+        }
+
+        assertEquals(new String[] {"compiledScriptCacheTest", "compiledScriptCacheTest",
+            "compiledScriptCacheTest", "compiledScriptCacheTest"}, collectedAlerts);
+        assertTrue(CompiledScriptCache.getHitCount() - hits >= 2);
+        assertTrue(CompiledScriptCache.getSize() > 0);
+        assertTrue(CompiledScriptCache.getWeight() > 0);
+
+        CompiledScriptCache.clear();
+        assertEquals(0, CompiledScriptCache.getSize());
+        assertEquals(0, CompiledScriptCache.getWeight());
+    }
+
+    /**
+     * An inline script and an event handler are compiled only once for pages with different URLs.
+     * @throws Exception if the test fails
+     */
+    @Test
+    @Browsers(Browser.NONE)
+    public void inlineScriptSharedByPages() throws Exception {
+        final String html = "<html><head>\n"
+            + "<script>var id = 'inlineScriptSharedByPages'; alert(id);</script>\n"
+            + "</head><body>\n"
+            + "<button id='b' onclick=\"alert('inlineScriptSharedByPages handler')\">click</button>\n"
+            + "</body></html>";
+
+        CompiledScriptCache.clear();
+        final List<String> collectedAlerts = new ArrayList<String>();
+        final WebClient client = getWebClient();
+        final MockWebConnection connection = new MockWebConnection();
+        connection.setDefaultResponse(html);
+        client.setWebConnection(connection);
+        client.setAlertHandler(new CollectingAlertHandler(collectedAlerts));
+
+        final HtmlPage page1 = client.getPage(URL_FIRST);
+        page1.getHtmlElementById("b").click();
+        final long hits = CompiledScriptCache.getHitCount();
+        final long misses = CompiledScriptCache.getMissCount();
+        final HtmlPage page2 = client.getPage(URL_SECOND);
+        page2.getHtmlElementById("b").click();
+
+        assertEquals(new String[] {"inlineScriptSharedByPages", "inlineScriptSharedByPages handler",
+            "inlineScriptSharedByPages", "inlineScriptSharedByPages handler"}, collectedAlerts);
+        assertEquals(hits + 2, CompiledScriptCache.getHitCount());
+        assertEquals(misses, CompiledScriptCache.getMissCount());
+    }
+
+    /**
+     * The errors of a shared inline script are reported with the source name of the page in which they occur.
+     * @throws Exception if the test fails
+     */
+    @Test
+    @Browsers(Browser.NONE)
+    public void sharedScriptErrorReportsPageSourceName() throws Exception {
+        final String html = "<html><head>\n"
+            + "<script>unknownFunctionOfSharedScript();</script>\n"
+            + "</head><body></body></html>";
+
+        CompiledScriptCache.clear();
+        final WebClient client = getWebClient();
+        final MockWebConnection connection = new MockWebConnection();
+        connection.setDefaultResponse(html);
+        client.setWebConnection(connection);
+
+        for (final URL url : new URL[] {URL_FIRST, URL_SECOND}) {
+            try {
+                client.getPage(url);
+                fail("ScriptException expected");
+            }
+            catch (final ScriptException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("(script in " + url + " from (2, 9)"));
+            }
+        }
+        assertEquals(1, CompiledScriptCache.getSize());
+    }
+}
@@ -1069,10 +1069,49 @@ public class JavaScriptEngineTest extends SimpleWebTestCase {
      */
     @Test
     public void timeout() throws Exception {
+        timeout(-1);
+    }
+
+    /**
+     * The timeout has to be enforced as well when the scripts are compiled to bytecode.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void timeout_compiledMode() throws Exception {
+        timeout(9);
+    }
+
+    /**
+     * The position of a DOM exception has to be reported as well when the scripts are compiled to bytecode.
+     * @throws Exception if the test fails
+     */
+    @Test
+    @Browsers(Browser.FF)
+    @Alerts({ "6", "§§URL§§" })
+    public void domExceptionLocation_compiledMode() throws Exception {
+        final String html = "<html><head><title>foo</title><script>\n"
+            + "function test() {\n"
+            + "  var htmlNode = document.documentElement;\n"
+            + "  var body = document.body;\n"
+            + "  try {\n"
+            + "    body.appendChild(htmlNode);\n"
+            + "  } catch(e) {\n"
+            + "    alert(e.lineNumber);\n"
+            + "    alert(e.filename);\n"
+            + "  }\n"
+            + "}\n"
+            + "</script></head><body onload='test()'></body></html>";
+
+        getWebClient().getOptions().setJavaScriptOptimizationLevel(9);
+        loadPageWithAlerts(html);
+    }
+
+    private void timeout(final int optimizationLevel) throws Exception {
         final WebClient client = getWebClient();
         final long timeout = 2000;
         final long oldTimeout = client.getJavaScriptTimeout();
         client.setJavaScriptTimeout(timeout);
+        client.getOptions().setJavaScriptOptimizationLevel(optimizationLevel);
 
         try {
             client.getOptions().setThrowExceptionOnScriptError(false);
@@ -14,6 +14,7 @@
  */
 package com.gargoylesoftware.htmlunit.javascript;
 
+import java.net.URL;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
 
@@ -119,4 +120,35 @@ public class ProxyAutoConfigTest extends SimpleWebTestCase {
         assertEquals("com org net edu gov ", value);
     }
 
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void resultsReused() throws Exception {
+        final String content = "var calls = 0;\n"
+            + "function FindProxyForURL(url, host) {\n"
+            + "  calls++;\n"
+            + "  return 'DIRECT; ' + calls;\n"
+            + "}\n";
+        final ProxyAutoConfig config = new ProxyAutoConfig(content);
+        assertEquals("DIRECT; 1", config.findProxyForURL(URL_FIRST));
+        assertEquals("DIRECT; 1", config.findProxyForURL(new URL(URL_FIRST, "foo.js")));
+        assertEquals("DIRECT; 2", config.findProxyForURL(new URL("http://htmlunit.sourceforge.net/")));
+    }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void resultsReusedPerUrl() throws Exception {
+        final String content = "function FindProxyForURL(url, host) {\n"
+            + "  if (shExpMatch(url, '*.js')) {\n"
+            + "    return 'PROXY localhost:8080';\n"
+            + "  }\n"
+            + "  return 'DIRECT';\n"
+            + "}\n";
+        final ProxyAutoConfig config = new ProxyAutoConfig(content);
+        assertEquals("DIRECT", config.findProxyForURL(URL_FIRST));
+        assertEquals("PROXY localhost:8080", config.findProxyForURL(new URL(URL_FIRST, "foo.js")));
+    }
 }
@@ -233,4 +233,40 @@ public class JavaScriptJobManagerTest extends SimpleWebTestCase {
 
         Assert.assertEquals("No new alerts should have happened", finalValue, collectedAlerts.size());
     }
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void virtualTime() throws Exception {
+        final String content = "<html>\n"
+            + "<head>\n"
+            + "  <script>\n"
+            + "    var start = new Date().getTime();\n"
+            + "    var count = 0;\n"
+            + "    function test() {\n"
+            + "      setTimeout(function() { alert(new Date().getTime() - start >= 30000); }, 30000);\n"
+            + "      var id = setInterval(function() {\n"
+            + "        alert('tick' + (++count));\n"
+            + "        if (count == 3) {\n"
+            + "          clearInterval(id);\n"
+            + "        }\n"
+            + "      }, 5000);\n"
+            + "    }\n"
+            + "  </script>\n"
+            + "</head>\n"
+            + "<body onload='test()'>\n"
+            + "</body>\n"
+            + "</html>";
+
+        getWebClient().getOptions().setUseVirtualTime(true);
+        final List<String> collectedAlerts = Collections.synchronizedList(new ArrayList<String>());
+        startTimedTest();
+        loadPage(content, collectedAlerts);
+        assertEquals(1, getWebClient().waitForBackgroundJavaScriptStartingBefore(20000));
+        assertEquals(new String[] {"tick1", "tick2", "tick3"}, collectedAlerts);
+        assertEquals(0, getWebClient().waitForBackgroundJavaScript(60000));
+        assertEquals(new String[] {"tick1", "tick2", "tick3", "true"}, collectedAlerts);
+        assertMaxTestRunTime(10000);
+    }
 }
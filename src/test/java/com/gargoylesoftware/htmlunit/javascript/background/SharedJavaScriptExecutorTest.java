@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2002-2012 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.javascript.background;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.gargoylesoftware.htmlunit.BrowserRunner;
+import com.gargoylesoftware.htmlunit.BrowserRunner.Browser;
+import com.gargoylesoftware.htmlunit.BrowserRunner.Browsers;
+import com.gargoylesoftware.htmlunit.CollectingAlertHandler;
+import com.gargoylesoftware.htmlunit.MockWebConnection;
+import com.gargoylesoftware.htmlunit.SimpleWebTestCase;
+import com.gargoylesoftware.htmlunit.WebClient;
+
+/**
+ * Tests for {@link SharedJavaScriptExecutor}.
+ *
+ * @version $Revision$
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+@RunWith(BrowserRunner.class)
+public class SharedJavaScriptExecutorTest extends SimpleWebTestCase {
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    @Browsers(Browser.NONE)
+    public void timersOfSeveralClients() throws Exception {
+        final String html = "<html><head><script>\n"
+            + "  var count = 0;\n"
+            + "  function tick() {\n"
+            + "    alert(++count);\n"
+            + "    if (count < 3) {\n"
+            + "      setTimeout(tick, 20);\n"
+            + "    }\n"
+            + "  }\n"
+            + "</script></head>\n"
+            + "<body onload='setTimeout(tick, 20)'></body></html>";
+
+        final List<WebClient> clients = new ArrayList<WebClient>();
+        final List<List<String>> alerts = new ArrayList<List<String>>();
+        for (int i = 0; i < 3; i++) {
+            final WebClient client = new WebClient();
+            client.getOptions().setUseSharedJavaScriptExecutor(true);
+            final MockWebConnection connection = new MockWebConnection();
+            connection.setDefaultResponse(html);
+            client.setWebConnection(connection);
+            final List<String> collectedAlerts = Collections.synchronizedList(new ArrayList<String>());
+            client.setAlertHandler(new CollectingAlertHandler(collectedAlerts));
+            client.getPage(URL_FIRST);
+            clients.add(client);
+            alerts.add(collectedAlerts);
+        }
+
+        try {
+            for (int i = 0; i < clients.size(); i++) {
+                final WebClient client = clients.get(i);
+                assertEquals(0, client.waitForBackgroundJavaScript(5000));
+                assertEquals(new String[] {"1", "2", "3"}, alerts.get(i));
+                for (final Thread thread : Thread.getAllStackTraces().keySet()) {
+                    assertFalse(thread.getName().equals("JS executor for " + client));
+                }
+            }
+        }
+        finally {
+            for (final WebClient client : clients) {
+                client.closeAllWindows();
+            }
+        }
+    }
+
+    /**
+     * Chained timers must keep firing after the first execution, also when more jobs are due
+     * than executed in a single run.
+     * @throws Exception if the test fails
+     */
+    @Test
+    @Browsers(Browser.NONE)
+    public void chainedTimersAndManyJobs() throws Exception {
+        final String html = "<html><head><script>\n"
+            + "  var count = 0;\n"
+            + "  var done = 0;\n"
+            + "  function tick() {\n"
+            + "    alert(++count);\n"
+            + "    if (count < 4) {\n"
+            + "      setTimeout(tick, 20);\n"
+            + "    }\n"
+            + "    else {\n"
+            + "      alert(done);\n"
+            + "    }\n"
+            + "  }\n"
+            + "  function test() {\n"
+            + "    for (var i = 0; i < 250; i++) {\n"
+            + "      setTimeout(function() { done++; }, 0);\n"
+            + "    }\n"
+            + "    setTimeout(tick, 20);\n"
+            + "  }\n"
+            + "</script></head>\n"
+            + "<body onload='test()'></body></html>";
+
+        final WebClient client = new WebClient();
+        client.getOptions().setUseSharedJavaScriptExecutor(true);
+        final MockWebConnection connection = new MockWebConnection();
+        connection.setDefaultResponse(html);
+        client.setWebConnection(connection);
+        final List<String> collectedAlerts = Collections.synchronizedList(new ArrayList<String>());
+        client.setAlertHandler(new CollectingAlertHandler(collectedAlerts));
+        try {
+            client.getPage(URL_FIRST);
+            assertEquals(0, client.waitForBackgroundJavaScript(5000));
+            assertEquals(new String[] {"1", "2", "3", "4", "250"}, collectedAlerts);
+        }
+        finally {
+            client.closeAllWindows();
+        }
+    }
+}
@@ -16,10 +16,16 @@ package com.gargoylesoftware.htmlunit.javascript.configuration;
 
 import static org.junit.Assert.fail;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
 import org.junit.Assert;
 import org.junit.Test;
 
+import com.gargoylesoftware.htmlunit.BrowserVersion;
 import com.gargoylesoftware.htmlunit.SimpleWebTestCase;
+import com.gargoylesoftware.htmlunit.WebClient;
 
 /**
  * Tests for {@link JavaScriptConfiguration}.
@@ -180,6 +186,33 @@ public class ClassConfigurationTest extends SimpleWebTestCase {
         }
     }
 
+    /**
+     * The values of the constants are read once per browser version and shared by the windows of all the clients.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void constantValuesSharedByWindows() throws Exception {
+        final String html = "<html><body><script>alert(Node.ELEMENT_NODE)</script></body></html>";
+        final BrowserVersion browserVersion = BrowserVersion.getDefault();
+        final List<String> collectedAlerts = new ArrayList<String>();
+
+        loadPage(browserVersion, html, collectedAlerts, URL_FIRST);
+        final Map<String, Object> values = JavaScriptConfiguration.getInstance(browserVersion)
+            .getClassConfiguration("Node").getConstantValues();
+        final WebClient client = new WebClient(browserVersion);
+        try {
+            loadPage(client, html, collectedAlerts, URL_SECOND);
+        }
+        finally {
+            client.closeAllWindows();
+        }
+
+        assertEquals(new String[] {"1", "1"}, collectedAlerts);
+        Assert.assertSame(values, JavaScriptConfiguration.getInstance(browserVersion)
+            .getClassConfiguration("Node").getConstantValues());
+        assertEquals(Short.valueOf(org.w3c.dom.Node.ELEMENT_NODE), values.get("ELEMENT_NODE"));
+    }
+
     /**
      * Test class.
      */
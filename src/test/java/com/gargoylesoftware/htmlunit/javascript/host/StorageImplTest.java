@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2002-2012 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.javascript.host;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.ObjectInputStream;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import com.gargoylesoftware.htmlunit.BrowserRunner;
+import com.gargoylesoftware.htmlunit.BrowserRunner.Browser;
+import com.gargoylesoftware.htmlunit.BrowserRunner.Browsers;
+import com.gargoylesoftware.htmlunit.SimpleWebTestCase;
+
+/**
+ * Tests for {@link StorageImpl}.
+ *
+ * @version $Revision$
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+@RunWith(BrowserRunner.class)
+public class StorageImplTest extends SimpleWebTestCase {
+
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    @Browsers(Browser.FF)
+    @SuppressWarnings("unchecked")
+    public void persistedLocalStorage() throws Exception {
+        final String html
+            = "<html><head></head><body>\n"
+            + "<script>\n"
+            + "  localStorage.hello = 'world';\n"
+            + "  localStorage.setItem('hi', 'there');\n"
+            + "  sessionStorage.setItem('session', 'only');\n"
+            + "</script>\n"
+            + "</body></html>";
+
+        final File directory = File.createTempFile("htmlunit", ".storage");
+        assertTrue(directory.delete());
+        try {
+            getWebClient().getOptions().setStorageDirectory(directory);
+            loadPage(html);
+            StorageImpl.flushAll();
+
+            final File[] files = directory.listFiles();
+            assertEquals(1, files.length);
+            assertTrue(files[0].getName().startsWith("local_storage_"));
+
+            final ObjectInputStream in = new ObjectInputStream(new FileInputStream(files[0]));
+            try {
+                final Map<String, String> content = (Map<String, String>) in.readObject();
+                assertEquals(2, content.size());
+                assertEquals("world", content.get("hello"));
+                assertEquals("there", content.get("hi"));
+            }
+            finally {
+                IOUtils.closeQuietly(in);
+            }
+        }
+        finally {
+            FileUtils.deleteDirectory(directory);
+        }
+    }
+}
@@ -716,4 +716,37 @@ public class Window2Test extends WebDriverTestCase {
         loadPageWithAlerts2(html);
     }
 
+    /**
+     * Changing an element must invalidate the computed styles of its descendants and of its siblings.
+     * @throws Exception if the test fails
+     */
+    @Test
+    @Alerts({ "block", "inline", "none", "none", "block", "block" })
+    public void getComputedStyle_invalidation() throws Exception {
+        final String html
+            = "<html><head>\n"
+            + "<style>.hidden div { display: none } .x + span { display: none }</style>\n"
+            + "</head><body>\n"
+            + "<div id='p'><div id='c'>c</div></div><div id='o'>o</div><span id='s'>s</span>\n"
+            + "<script>\n"
+            + "  var getStyle = function(e) {\n"
+            + "    return window.getComputedStyle ? window.getComputedStyle(e,'') : e.currentStyle;\n"
+            + "  };\n"
+            + "  var p = document.getElementById('p');\n"
+            + "  var c = document.getElementById('c');\n"
+            + "  var o = document.getElementById('o');\n"
+            + "  var s = document.getElementById('s');\n"
+            + "  alert(getStyle(c).display);\n"
+            + "  alert(getStyle(s).display);\n"
+            + "  p.className = 'hidden';\n"
+            + "  o.className = 'x';\n"
+            + "  alert(getStyle(c).display);\n"
+            + "  alert(getStyle(s).display);\n"
+            + "  p.className = '';\n"
+            + "  alert(getStyle(c).display);\n"
+            + "  alert(getStyle(o).display);\n"
+            + "</script></body></html>";
+        loadPageWithAlerts2(html);
+    }
+
 }
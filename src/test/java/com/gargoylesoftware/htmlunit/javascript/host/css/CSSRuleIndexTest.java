@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2002-2012 Gargoyle Software Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.gargoylesoftware.htmlunit.javascript.host.css;
+
+import static org.junit.Assert.assertSame;
+
+import java.io.StringReader;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.w3c.css.sac.InputSource;
+import org.w3c.dom.css.CSSRuleList;
+
+import com.gargoylesoftware.htmlunit.BrowserRunner;
+import com.gargoylesoftware.htmlunit.BrowserRunner.Browser;
+import com.gargoylesoftware.htmlunit.BrowserRunner.Browsers;
+import com.gargoylesoftware.htmlunit.SimpleWebTestCase;
+import com.gargoylesoftware.htmlunit.html.DomElement;
+import com.gargoylesoftware.htmlunit.html.HtmlPage;
+import com.steadystate.css.parser.CSSOMParser;
+import com.steadystate.css.parser.SACParserCSS21;
+
+/**
+ * Tests for {@link CSSRuleIndex}.
+ *
+ * @version $Revision$
+ * @author <a href="mailto:agent@local">agent</a>
+ */
+@RunWith(BrowserRunner.class)
+public class CSSRuleIndexTest extends SimpleWebTestCase {
+
+    /**
+     * Only the rules whose rightmost selector may match the element are candidates, in document order,
+     * instead of all the rules of the style sheet.
+     * @throws Exception if the test fails
+     */
+    @Test
+    @Browsers(Browser.NONE)
+    public void candidates() throws Exception {
+        final StringBuilder css = new StringBuilder();
+        css.append("* { color: black }\n");
+        css.append("div { color: red }\n");
+        css.append("#main { color: blue }\n");
+        css.append("p.c3 span { color: green }\n");
+        for (int i = 0; i < 500; i++) {
+            css.append(".c").append(i).append(" { color: yellow }\n");
+        }
+        final CSSRuleList rules = new CSSOMParser(new SACParserCSS21())
+            .parseStyleSheet(new InputSource(new StringReader(css.toString())), null, null).getCssRules();
+        assertEquals(504, rules.getLength());
+
+        final HtmlPage page = loadPage("<html><body><div id='main' class='c3 c7 c3'></div></body></html>");
+        final DomElement div = page.getHtmlElementById("main");
+
+        final CSSRuleIndex index = new CSSRuleIndex(rules);
+        final List<CSSRuleIndex.Entry> candidates = index.getCandidates(div);
+        final int[] expected = {0, 1, 2, 7, 11};
+        assertEquals(expected.length, candidates.size());
+        for (int i = 0; i < expected.length; i++) {
+            assertSame(rules.item(expected[i]), candidates.get(i).getRule());
+        }
+
+        assertTrue(index.isValidFor(rules));
+        assertFalse(index.isValidFor(null));
+    }
+}
@@ -23,8 +23,10 @@ import org.w3c.css.sac.CSSException;
 import com.gargoylesoftware.htmlunit.BrowserRunner;
 import com.gargoylesoftware.htmlunit.BrowserRunner.NotYetImplemented;
 import com.gargoylesoftware.htmlunit.SimpleWebTestCase;
+import com.gargoylesoftware.htmlunit.html.DomElement;
 import com.gargoylesoftware.htmlunit.html.DomNode;
 import com.gargoylesoftware.htmlunit.html.DomNodeList;
+import com.gargoylesoftware.htmlunit.html.HtmlElement;
 import com.gargoylesoftware.htmlunit.html.HtmlPage;
 
 /**
@@ -67,4 +69,63 @@ public class CSSSelectorTest extends SimpleWebTestCase {
         final HtmlPage page = loadPage(html);
         page.querySelectorAll("td:gt(4)");
     }
+
+    /**
+     * An invalid selector must be reported each time, even when it comes from the cache.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void invalidTwice() throws Exception {
+        final HtmlPage page = loadPage("<html><body></body></html>");
+        for (int i = 0; i < 2; i++) {
+            try {
+                page.querySelectorAll("td:gt(4)");
+                Assert.fail("CSSException expected");
+            }
+            catch (final CSSException e) {
+                // expected
+            }
+        }
+    }
+
+    /**
+     * Elements matching several selectors must be returned once, in document order.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void documentOrderWithoutDuplicates() throws Exception {
+        final String html = "<html><body>\n"
+            + "<p id='p1' class='a'>1</p><div id='d1' class='a'><p id='p2'>2</p></div><p id='p3' class='a'>3</p>\n"
+            + "</body></html>";
+
+        final HtmlPage page = loadPage(html);
+        final DomNodeList<DomNode> nodes = page.querySelectorAll(".a, p");
+        Assert.assertEquals(4, nodes.size());
+        Assert.assertEquals("p1", ((DomElement) nodes.get(0)).getId());
+        Assert.assertEquals("d1", ((DomElement) nodes.get(1)).getId());
+        Assert.assertEquals("p2", ((DomElement) nodes.get(2)).getId());
+        Assert.assertEquals("p3", ((DomElement) nodes.get(3)).getId());
+        Assert.assertSame(nodes.get(0), page.querySelector(".a, p"));
+    }
+
+    /**
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void byId() throws Exception {
+        final String html = "<html><body>\n"
+            + "<div id='d1'><span id='s1'>1</span></div><div id='d2'></div>\n"
+            + "</body></html>";
+
+        final HtmlPage page = loadPage(html);
+        Assert.assertSame(page.getElementById("s1"), page.querySelector("#s1"));
+        Assert.assertSame(page.getElementById("s1"), page.querySelector("span#s1"));
+        Assert.assertNull(page.querySelector("div#s1"));
+
+        final HtmlElement d1 = page.getHtmlElementById("d1");
+        final HtmlElement d2 = page.getHtmlElementById("d2");
+        Assert.assertEquals(1, d1.querySelectorAll("#s1").size());
+        Assert.assertEquals(0, d2.querySelectorAll("#s1").size());
+        Assert.assertEquals(0, d1.querySelectorAll("#d1").size());
+    }
 }
@@ -85,6 +85,36 @@ public class CSSStyleDeclarationTest extends WebDriverTestCase {
             driver.findElement(By.id("div1")).getAttribute("style"));
     }
 
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    @Browsers(Browser.FF)
+    @Alerts({ "color: black; top: 1px;", "color: black; top: 1px; left: 2px;", "color: black; top: 3px; left: 2px;",
+        "top: 3px; left: 2px;", "red", "" })
+    public void style_ModifiedSeveralTimes() throws Exception {
+        final String html
+            = "<html><head><title>First</title><script>\n"
+            + "function doTest() {\n"
+            + "    var node = document.getElementById('div1');\n"
+            + "    var style = node.style;\n"
+            + "    style.top = '1px';\n"
+            + "    alert(node.getAttribute('style'));\n"
+            + "    style.left = '2px';\n"
+            + "    alert(node.getAttribute('style'));\n"
+            + "    style.top = '3px';\n"
+            + "    alert(node.getAttribute('style'));\n"
+            + "    style.color = '';\n"
+            + "    alert(node.getAttribute('style'));\n"
+            + "    node.setAttribute('style', 'color: red');\n"
+            + "    alert(style.color);\n"
+            + "    alert(style.top);\n"
+            + "}\n</script></head>\n"
+            + "<body onload='doTest()'><div id='div1' style='color:black'>foo</div></body></html>";
+
+        loadPageWithAlerts2(html);
+    }
+
     /**
      * @throws Exception if the test fails
      */
@@ -704,6 +704,46 @@ public class CSSStyleSheetTest extends WebDriverTestCase {
         mediaRule("print, projection, tv");
     }
 
+    /**
+     * Rules indexed under different ids, classes and tag names must still be applied in document order.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    @Alerts({ "inline", "none", "block", "inline" })
+    public void rulesOrderAndModification() throws Exception {
+        final String html
+            = "<html><head>\n"
+            + "<style>\n"
+            + "  .a { display: none }\n"
+            + "  .b { display: inline }\n"
+            + "  span { display: block }\n"
+            + "  span.c { display: none }\n"
+            + "</style>\n"
+            + "</head><body>\n"
+            + "<div id='d' class='b  a'>hello</div>\n"
+            + "<span id='s' class='c'>world</span>\n"
+            + "<script>\n"
+            + "  var getStyle = function(e) {\n"
+            + "    return window.getComputedStyle ? window.getComputedStyle(e,'') : e.currentStyle; \n"
+            + "  };\n"
+            + "  var d = document.getElementById('d');\n"
+            + "  var s = document.getElementById('s');\n"
+            + "  alert(getStyle(d).display);\n"
+            + "  alert(getStyle(s).display);\n"
+            + "  var sheet = document.styleSheets[0];\n"
+            + "  if (sheet.insertRule) {\n"
+            + "    sheet.insertRule('#d { display: block }', 4);\n"
+            + "    sheet.insertRule('#s { display: inline }', 5);\n"
+            + "  } else {\n"
+            + "    sheet.addRule('#d', 'display: block');\n"
+            + "    sheet.addRule('#s', 'display: inline');\n"
+            + "  }\n"
+            + "  alert(getStyle(d).display);\n"
+            + "  alert(getStyle(s).display);\n"
+            + "</script></body></html>";
+        loadPageWithAlerts2(html);
+    }
+
     private void mediaRule(final String media) throws Exception {
         final String html
             = "<html><head>\n"
@@ -772,6 +772,25 @@ public class HTMLDocumentTest extends WebDriverTestCase {
         assertTrue(HTMLDocument.canAlreadyBeParsed("<script>var test ='abc';</script><p>it's fun</p>"));
     }
 
+    /**
+     * Content written one character at a time is scanned incrementally.
+     */
+    @Test
+    @Browsers(Browser.NONE)
+    public void canAlreadyBeParsedIncrementally() {
+        final String content = "<script>var test ='</script>';</script><p class='a>b'>it's fun</p>";
+        final HTMLDocument.WriteScanner scanner = new HTMLDocument.WriteScanner();
+        final StringBuilder buffer = new StringBuilder();
+        for (int i = 0; i < content.length(); i++) {
+            buffer.append(content.charAt(i));
+            assertEquals(HTMLDocument.canAlreadyBeParsed(buffer.toString()), scanner.canBeParsed(buffer));
+        }
+        assertTrue(scanner.canBeParsed(buffer));
+
+        scanner.reset();
+        assertFalse(scanner.canBeParsed("<scr"));
+    }
+
     /**
      * Regression test for a bug introduced by the document proxy and detected by the Dojo JavaScript library tests.
      * @throws Exception if an error occurs
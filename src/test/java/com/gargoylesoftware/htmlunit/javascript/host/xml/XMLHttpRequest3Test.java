@@ -17,6 +17,7 @@ package com.gargoylesoftware.htmlunit.javascript.host.xml;
 import static org.junit.Assert.assertSame;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -192,6 +193,70 @@ public class XMLHttpRequest3Test extends WebServerTestCase {
         }
     }
 
+    /**
+     * Calling abort() from the onreadystatechange handler while the response is being downloaded
+     * stops the request without reporting an error.
+     * @throws Exception if the test fails
+     */
+    @Test
+    public void abortInOnReadyStateChange() throws Exception {
+        final String html =
+              "<html>\n"
+            + "<head>\n"
+            + "<title>XMLHttpRequest Test</title>\n"
+            + "<script>\n"
+            + "var request;\n"
+            + "function testAsync() {\n"
+            + "  if (window.XMLHttpRequest)\n"
+            + "    request = new XMLHttpRequest();\n"
+            + "  else if (window.ActiveXObject)\n"
+            + "    request = new ActiveXObject('Microsoft.XMLHTTP');\n"
+            + "  request.onreadystatechange = onReadyStateChange;\n"
+            + "  request.onerror = function() { alert('" + MSG_PROCESSING_ERROR + "'); };\n"
+            + "  request.open('GET', '" + URL_SECOND + "', true);\n"
+            + "  request.send('');\n"
+            + "}\n"
+            + "function onReadyStateChange() {\n"
+            + "  alert(request.readyState);\n"
+            + "  if (request.readyState == 2) {\n"
+            + "    request.abort();\n"
+            + "    alert('aborted');\n"
+            + "  }\n"
+            + "}\n"
+            + "</script>\n"
+            + "</head>\n"
+            + "<body onload='testAsync()'>\n"
+            + "</body>\n"
+            + "</html>";
+
+        final WebClient client = getWebClient();
+        client.getOptions().setLoadResponsesAsynchronously(true);
+        final List<String> collectedAlerts = Collections.synchronizedList(new ArrayList<String>());
+        client.setAlertHandler(new CollectingAlertHandler(collectedAlerts));
+        final MockWebConnection conn = new MockWebConnection() {
+            @Override
+            public WebResponse getResponse(final WebRequest request) throws IOException {
+                if (URL_SECOND.equals(request.getUrl())) {
+                    try {
+                        Thread.sleep(2000);
+                    }
+                    catch (final InterruptedException e) {
+                        throw new InterruptedIOException("Download cancelled");
+                    }
+                }
+                return super.getResponse(request);
+            }
+        };
+        conn.setResponse(URL_FIRST, html);
+        conn.setResponse(URL_SECOND, "<xml/>", "text/xml");
+        client.setWebConnection(conn);
+        client.getPage(URL_FIRST);
+
+        assertEquals(0, client.waitForBackgroundJavaScriptStartingBefore(1000));
+        final String[] alerts = {LOADING, LOADING, LOADED, "aborted"};
+        assertEquals(alerts, collectedAlerts);
+    }
+
     /**
      * Asynchronous callback should be called in "main" js thread and not parallel to other js execution.
      * See https://sourceforge.net/tracker/index.php?func=detail&aid=1508377&group_id=47038&atid=448266.
@@ -25,7 +25,9 @@ import com.gargoylesoftware.htmlunit.BrowserRunner;
 import com.gargoylesoftware.htmlunit.BrowserRunner.Alerts;
 import com.gargoylesoftware.htmlunit.BrowserRunner.Browser;
 import com.gargoylesoftware.htmlunit.BrowserRunner.Browsers;
+import com.gargoylesoftware.htmlunit.WebClient;
 import com.gargoylesoftware.htmlunit.WebDriverTestCase;
+import com.gargoylesoftware.htmlunit.html.HtmlPage;
 
 /**
  * Tests for {@link HtmlUnitRegExpProxy}.
@@ -302,6 +304,31 @@ public class HtmlUnitRegExpProxyTest extends WebDriverTestCase {
         assertEquals("(a)(b)[\\\\2c]", HtmlUnitRegExpProxy.jsRegExpToJavaRegExp("(a)(b)[\\\\2c]"));
     }
 
+    /**
+     * @throws Exception if the test fails
+     */
+    @Test
+    @Browsers(Browser.NONE)
+    public void patternCache() throws Exception {
+        final WebClient client = new WebClient();
+        try {
+            final HtmlPage page = client.getPage("about:blank");
+            final long hits = HtmlUnitRegExpProxy.getPatternCacheHitCount();
+            final long misses = HtmlUnitRegExpProxy.getPatternCacheMissCount();
+            final Object result = page.executeJavaScript("var s = 'abbc';\n"
+                + "for (var i = 0; i < 10; i++) {\n"
+                + "  s = s.replace(/b+x?y?z?/g, 'b');\n"
+                + "}\n"
+                + "s;").getJavaScriptResult();
+            assertEquals("abc", result);
+            assertTrue(HtmlUnitRegExpProxy.getPatternCacheMissCount() - misses <= 1);
+            assertTrue(HtmlUnitRegExpProxy.getPatternCacheHitCount() - hits >= 9);
+        }
+        finally {
+            client.closeAllWindows();
+        }
+    }
+
     /**
      * Verifies that character without need are "un-escaped".
      * @see #backslash()